@@ -0,0 +1,158 @@
+// auto_threshold.java
+import java.util.Locale;
+
+/**
+ * เลือก threshold อัตโนมัติจาก histogram 256 ช่องที่มีอยู่แล้ว (ไม่แตะพิกเซล)
+ * ใช้ตารางผลรวมสะสม ω(k) = Σ h, μ(k) = Σ i·h จึงคิดทุก candidate ได้ใน O(256) / O(256²)
+ *
+ * ค่าที่คืนใช้ความหมายเดียวกับ threshold / threshold_between:
+ * - T: ขาว = gray >= T
+ * - {T1, T2}: ในช่วง = T1 <= gray <= T2
+ */
+public final class auto_threshold {
+
+    public enum Method {
+        OTSU, TRIANGLE;
+
+        /** "otsu" / "triangle" (ไม่สนตัวพิมพ์) */
+        public static Method parse(String s) {
+            try { return valueOf(s.trim().toUpperCase(Locale.ROOT)); }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown auto threshold method: " + s + " (use otsu|triangle)");
+            }
+        }
+    }
+
+    private auto_threshold() {}
+
+    public static int single(Method m, int[] hist) {
+        return single(m, toLong(hist));
+    }
+
+    /** histogram แบบ long (ภาพใหญ่ที่ช่องเดียวเกิน 2^31 พิกเซลได้ เช่นโหมด streaming) */
+    public static int single(Method m, long[] hist) {
+        return (m == Method.TRIANGLE) ? triangle(hist) : otsu(hist);
+    }
+
+    private static long[] toLong(int[] hist) {
+        long[] h = new long[hist.length];
+        for (int i = 0; i < hist.length; i++) h[i] = hist[i];
+        return h;
+    }
+
+    // ===== ตารางสะสม: W[k] = Σ_{i<k} h[i], S[k] = Σ_{i<k} i·h[i] (k = 0..256) =====
+    private static long[][] cumulative(long[] hist) {
+        if (hist.length != 256) throw new IllegalArgumentException("Histogram must have 256 bins, got " + hist.length);
+        long[] W = new long[257], S = new long[257];
+        for (int i = 0; i < 256; i++) {
+            W[i + 1] = W[i] + hist[i];
+            S[i + 1] = S[i] + i * hist[i];
+        }
+        return new long[][]{W, S};
+    }
+
+    /**
+     * Otsu: แบ่งเป็น [0..k] กับ [k+1..255] ที่ความแปรปรวนระหว่างกลุ่มมากที่สุด -> T = k + 1
+     * ภาพมีระดับเดียว (แบ่งไม่ได้) -> T = ระดับนั้น (ทั้งภาพเป็นขาว)
+     */
+    public static int otsu(int[] hist) {
+        return otsu(toLong(hist));
+    }
+
+    public static int otsu(long[] hist) {
+        long[][] c = cumulative(hist);
+        long[] W = c[0], S = c[1];
+        double N = W[256], total = S[256];
+        if (N == 0) return 128;
+
+        double best = -1;
+        int bestK = -1;
+        for (int k = 0; k < 255; k++) {
+            double w0 = W[k + 1], w1 = N - w0;
+            if (w0 == 0 || w1 == 0) continue;
+            // σ_B² · N² = (μ_T·ω0 - μ0)² / (ω0·ω1) ในหน่วยจำนวนพิกเซล
+            double d = total * w0 - S[k + 1] * N;
+            double v = d / w0 * d / w1;
+            if (v > best) { best = v; bestK = k; }
+        }
+        return (bestK < 0) ? lowestLevel(hist) : bestK + 1;
+    }
+
+    /**
+     * multi-Otsu 3 กลุ่ม [0..a], [a+1..b], [b+1..255] (O(256²)) -> {T1, T2} = {a + 1, b}
+     * คือแถบกลางของ threshold_between (T1 == T2 ได้ ถ้าแถบกลางมีระดับเดียว)
+ * แบ่งไม่ได้ -> {ระดับต่ำสุด, ระดับสูงสุด} (ภาพระดับเดียว -> T1 == T2)
+     */
+    public static int[] multiOtsu(int[] hist) {
+        return multiOtsu(toLong(hist));
+    }
+
+    public static int[] multiOtsu(long[] hist) {
+        long[][] c = cumulative(hist);
+        long[] W = c[0], S = c[1];
+        if (W[256] == 0) return new int[]{85, 170};
+
+        // max Σ μ_k² / ω_k เทียบเท่ากับ max ความแปรปรวนระหว่างกลุ่ม
+        double best = -1;
+        int bestA = -1, bestB = -1;
+        for (int a = 0; a < 254; a++) {
+            long w0 = W[a + 1];
+            if (w0 == 0) continue;
+            double t0 = (double) S[a + 1] * S[a + 1] / w0;
+            for (int b = a + 1; b < 255; b++) {
+                long w1 = W[b + 1] - W[a + 1], w2 = W[256] - W[b + 1];
+                if (w1 == 0 || w2 == 0) continue;
+                double s1 = S[b + 1] - S[a + 1], s2 = S[256] - S[b + 1];
+                double v = t0 + s1 * s1 / w1 + s2 * s2 / w2;
+                if (v > best) { best = v; bestA = a; bestB = b; }
+            }
+        }
+        if (bestA < 0) return new int[]{lowestLevel(hist), highestLevel(hist)};
+        return new int[]{bestA + 1, bestB};
+    }
+
+    /**
+     * Triangle (Zack): ลากเส้นจากยอด histogram ไปยังปลายหางที่ยาวกว่า
+     * ระดับที่ห่างจากเส้นมากที่สุด k คือรอยแบ่ง
+     * - หางด้านมืด: วัตถุ = [0..k] -> T = k + 1
+     * - หางด้านสว่าง: วัตถุ = [k..255] -> T = k
+     */
+    public static int triangle(int[] hist) {
+        return triangle(toLong(hist));
+    }
+
+    public static int triangle(long[] hist) {
+        if (hist.length != 256) throw new IllegalArgumentException("Histogram must have 256 bins, got " + hist.length);
+        int lo = lowestLevel(hist), hi = highestLevel(hist);
+        if (lo < 0) return 128;
+        if (lo == hi) return lo;
+
+        int peak = lo;
+        for (int i = lo; i <= hi; i++) if (hist[i] > hist[peak]) peak = i;
+
+        boolean darkTail = (peak - lo) >= (hi - peak);
+        int end = darkTail ? Math.max(lo - 1, 0) : Math.min(hi + 1, 255);
+        if (end == peak) return darkTail ? peak + 1 : peak;
+
+        // ระยะตั้งฉากจากจุด (i, h[i]) ถึงเส้น (end, h[end])-(peak, h[peak]) ตัดตัวหารคงที่ออก
+        long dx = peak - end, dy = hist[peak] - hist[end];
+        long bestD = -1;
+        int k = end;
+        int from = Math.min(end, peak), to = Math.max(end, peak);
+        for (int i = from; i <= to; i++) {
+            long d = Math.abs(dy * (i - end) - dx * (hist[i] - hist[end]));
+            if (d > bestD) { bestD = d; k = i; }
+        }
+        return darkTail ? k + 1 : k;
+    }
+
+    private static int lowestLevel(long[] hist) {
+        for (int i = 0; i < 256; i++) if (hist[i] > 0) return i;
+        return -1;
+    }
+
+    private static int highestLevel(long[] hist) {
+        for (int i = 255; i >= 0; i--) if (hist[i] > 0) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,197 @@
+// bit_mask.java
+import java.awt.image.BufferedImage;
+
+/**
+ * ภาพ binary แบบ 1 บิตต่อพิกเซลบน long[] (เล็กกว่า TYPE_BYTE_GRAY 8 เท่า)
+ * แถว i เริ่มที่ words[i * wordsPerRow]; พิกเซล j อยู่บิต (j & 63) ของ word (j >>> 6)
+ * บิตที่เกินความกว้างใน word สุดท้ายของแถวเป็น 0 เสมอ
+ */
+public final class bit_mask {
+    public final int width, height, wordsPerRow;
+    public final long[] words;
+
+    public bit_mask(int width, int height) {
+        this.width = width; this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+    }
+
+    public boolean get(int i, int j) {
+        return (words[i * wordsPerRow + (j >>> 6)] & (1L << j)) != 0;
+    }
+
+    public void set(int i, int j, boolean on) {
+        int k = i * wordsPerRow + (j >>> 6);
+        if (on) words[k] |= 1L << j; else words[k] &= ~(1L << j);
+    }
+
+    /** บิตที่ใช้จริงใน word สุดท้ายของแถว */
+    public long tailMask() {
+        int r = width & 63;
+        return (r == 0) ? -1L : (1L << r) - 1;
+    }
+
+    /** ภาพกลับสี: NOT ทีละ word */
+    public bit_mask not() {
+        bit_mask out = new bit_mask(width, height);
+        long tail = tailMask();
+        for (int i = 0; i < height; i++) {
+            int b = i * wordsPerRow;
+            for (int k = 0; k < wordsPerRow; k++) out.words[b + k] = ~words[b + k];
+            if (wordsPerRow > 0) out.words[b + wordsPerRow - 1] &= tail;
+        }
+        return out;
+    }
+
+    /** จำนวนพิกเซลที่เป็น 1 */
+    public long area() {
+        long a = 0;
+        for (long w : words) a += Long.bitCount(w);
+        return a;
+    }
+
+    /**
+     * mask ของ lo <= gray <= hi (รวมปลาย) สร้างในรอบเดียว
+     * hist != null -> นับ histogram 256 ช่องของ g ไปพร้อมกัน
+     */
+    public static bit_mask range(gray_image g, int lo, int hi, int[] hist) {
+        bit_mask m = new bit_mask(g.width, g.height);
+        range(g, lo, hi, hist, m.words, 0);
+        return m;
+    }
+
+    /**
+     * เหมือน range(g, lo, hi, hist) แต่เขียนลง out ตั้งแต่ word off (แถวละ (g.width + 63) >>> 6 word)
+     * ไว้เติมแถบหนึ่งของ mask ที่ใหญ่กว่าโดยไม่ต้องสร้าง mask ชั่วคราว
+     */
+    public static void range(gray_image g, int lo, int hi, int[] hist, long[] out, int off) {
+        final int I = g.height, J = g.width, wpr = (J + 63) >>> 6;
+        final byte[] d = g.data;
+        for (int u = 0; u < I; u++) {
+            int p = g.offset + u * g.stride, b = off + u * wpr;
+            long word = 0;
+            for (int v = 0; v < J; v++) {
+                int gray = d[p + v] & 0xFF;
+                if (hist != null) hist[gray]++;
+                if (gray >= lo && gray <= hi) word |= 1L << v;
+                if ((v & 63) == 63) { out[b + (v >>> 6)] = word; word = 0; }
+            }
+            if ((J & 63) != 0) out[b + (J >>> 6)] = word;
+        }
+    }
+
+    /** gray_image 0/255 (1 -> 255) */
+    public gray_image toGray() {
+        gray_image g = new gray_image(width, height);
+        byte[] o = g.data;
+        for (int i = 0; i < height; i++) {
+            int b = i * wordsPerRow, q = i * width;
+            for (int j = 0; j < width; j++) {
+                if ((words[b + (j >>> 6)] & (1L << j)) != 0) o[q + j] = (byte) 255;
+            }
+        }
+        return g;
+    }
+
+    /** TYPE_BYTE_GRAY 0/255 เหมือนภาพ threshold เดิม (ไว้เขียน PNG/วาดภาพ) */
+    public BufferedImage toBufferedImage() {
+        return toGray().toBufferedImage();
+    }
+
+    // ---------- ผลรวมรายแถวจากตาราง 8 บิต (ใช้โดย geopros / moment_sums) ----------
+
+    // ต่อ byte ค่า b: จำนวนบิต และ Σpos, Σpos², Σpos³ ของบิตที่เป็น 1 (pos = 0..7)
+    private static final int[] CNT = new int[256], S1 = new int[256], S2 = new int[256], S3 = new int[256];
+    static {
+        for (int b = 0; b < 256; b++) {
+            for (int t = 0; t < 8; t++) {
+                if ((b & (1 << t)) != 0) { CNT[b]++; S1[b] += t; S2[b] += t * t; S3[b] += t * t * t; }
+            }
+        }
+    }
+
+    /**
+     * ผลรวมของพิกเซล 1 ในแถว i: out = {Σ1, Σj, Σj², Σj³}
+     * invert = true -> คิดบนพิกเซล 0 แทน (ไม่ต้องสร้างภาพกลับสี)
+     * Σj³ ของทั้งแถวล้น long เมื่อกว้างเกิน ~78k; ภาพกว้างใช้ blockSums
+     */
+    public void rowSums(int i, boolean invert, long[] out) {
+        blockSums(i, 0, wordsPerRow, invert, out);
+    }
+
+    /**
+     * เหมือน rowSums แต่เฉพาะ word k0..k1-1 ของแถว i และ j นับจากคอลัมน์ k0 * 64
+     * (ช่วงละไม่เกิน 64 word ไม่มีทางล้น)
+     */
+    public void blockSums(int i, int k0, int k1, boolean invert, long[] out) {
+        long c = 0, s1 = 0, s2 = 0, s3 = 0;
+        int b = i * wordsPerRow;
+        long tail = tailMask();
+        for (int k = k0; k < k1; k++) {
+            long w = invert ? ~words[b + k] : words[b + k];
+            if (k == wordsPerRow - 1) w &= tail;
+            if (w == 0) continue;
+            for (int t = 0; t < 8; t++, w >>>= 8) {
+                int by = (int) (w & 0xFF);
+                if (by == 0) continue;
+                long n = CNT[by], base = ((long) (k - k0) << 6) + (t << 3);
+                c  += n;
+                s1 += n * base + S1[by];
+                s2 += n * base * base + 2 * base * S1[by] + S2[by];
+                s3 += n * base * base * base + 3 * base * base * S1[by] + 3 * base * S2[by] + S3[by];
+            }
+        }
+        out[0] = c; out[1] = s1; out[2] = s2; out[3] = s3;
+    }
+
+    /** จำนวน run ของบิต 1 ในแถว i (นับบิตที่เป็นจุดเริ่ม run ทีละ word) */
+    public int runCount(int i) {
+        int b = i * wordsPerRow, n = 0;
+        long carry = 0;
+        for (int k = 0; k < wordsPerRow; k++) {
+            long w = words[b + k];
+            n += Long.bitCount(w & ~((w << 1) | carry));
+            carry = w >>> 63;
+        }
+        return n;
+    }
+
+    /** คอลัมน์แรก >= from ในแถว i ที่เป็น 1 (ไม่มี -> width); ข้าม word ที่เป็น 0 ทั้ง word */
+    public int nextSet(int i, int from) {
+        if (from >= width) return width;
+        int b = i * wordsPerRow, k = from >>> 6;
+        long w = words[b + k] & (-1L << from);
+        while (w == 0) {
+            if (++k == wordsPerRow) return width;
+            w = words[b + k];
+        }
+        return (k << 6) + Long.numberOfTrailingZeros(w);
+    }
+
+    /** คอลัมน์แรก >= from ในแถว i ที่เป็น 0 (ไม่มี -> width); ใช้คู่กับ nextSet เพื่อไล่ run ของ 1 */
+    public int nextClear(int i, int from) {
+        if (from >= width) return width;
+        int b = i * wordsPerRow, k = from >>> 6;
+        long w = ~words[b + k] & (-1L << from);
+        while (w == 0) {
+            if (++k == wordsPerRow) return width;
+            w = ~words[b + k];
+        }
+        return Math.min(width, (k << 6) + Long.numberOfTrailingZeros(w));
+    }
+
+    /** คอลัมน์แรก/สุดท้ายที่เป็น 1 ในแถว i ({-1, -1} ถ้าไม่มี); invert เหมือน rowSums */
+    public void rowExtent(int i, boolean invert, int[] out) {
+        int first = -1, last = -1;
+        int b = i * wordsPerRow;
+        long tail = tailMask();
+        for (int k = 0; k < wordsPerRow; k++) {
+            long w = invert ? ~words[b + k] : words[b + k];
+            if (k == wordsPerRow - 1) w &= tail;
+            if (w == 0) continue;
+            if (first < 0) first = (k << 6) + Long.numberOfTrailingZeros(w);
+            last = (k << 6) + 63 - Long.numberOfLeadingZeros(w);
+        }
+        out[0] = first; out[1] = last;
+    }
+}
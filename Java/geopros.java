@@ -39,8 +39,19 @@ public class geopros {
 
     /** คำนวณสองมุมมองในรอบเดียว เพื่อความเร็ว */
     public static BothResult measureBoth(BufferedImage bin, int thr) {
-        final int I = bin.getHeight();
-        final int J = bin.getWidth();
+        return measureBoth(gray_image.of(bin), thr);
+    }
+
+    /** ภาพเทาที่ map จากไฟล์: สร้าง mask ทีละแถบจาก mapping แล้ววัดจาก bit_mask */
+    public static BothResult measureBoth(mapped_gray bin, int thr) {
+        return measureBoth(bin.range(thr, 255, null));
+    }
+
+    /** เหมือน measureBoth(BufferedImage, thr) แต่สแกน byte[] ของ gray_image ตรง ๆ */
+    public static BothResult measureBoth(gray_image bin, int thr) {
+        final int I = bin.height;
+        final int J = bin.width;
+        final byte[] d = bin.data;
 
         long Aw = 0, m10w = 0, m01w = 0;
         int minIw = Integer.MAX_VALUE, minJw = Integer.MAX_VALUE;
@@ -51,8 +62,9 @@ public class geopros {
         int maxIb = -1, maxJb = -1;
 
         for (int i = 0; i < I; i++) {
+            int p = bin.offset + i * bin.stride;
             for (int j = 0; j < J; j++) {
-                int gray = bin.getRGB(j, i) & 0xFF; // assume R=G=B
+                int gray = d[p + j] & 0xFF;
                 if (gray >= thr) { // ขาวเป็นวัตถุ
                     Aw++; m10w += j; m01w += i;
                     if (i < minIw) minIw = i;
@@ -69,15 +81,119 @@ public class geopros {
             }
         }
 
-        Result rw = (Aw == 0)
-            ? new Result(0, Double.NaN, Double.NaN, -1, -1, -1, -1)
-            : new Result(Aw, (double)m10w / Aw, (double)m01w / Aw, minIw, minJw, maxIw, maxJw);
+        return new BothResult(result(Aw, m10w, m01w, minIw, minJw, maxIw, maxJw),
+                              result(Ab, m10b, m01b, minIb, minJb, maxIb, maxJb));
+    }
 
-        Result rb = (Ab == 0)
-            ? new Result(0, Double.NaN, Double.NaN, -1, -1, -1, -1)
-            : new Result(Ab, (double)m10b / Ab, (double)m01b / Ab, minIb, minJb, maxIb, maxJb);
+    /** bit_mask: ขาว = บิต 1, ดำ = บิต 0 (นับทีละ word/byte ไม่ต้องดูทีละพิกเซล) */
+    public static BothResult measureBoth(bit_mask m) {
+        return new Accumulator().add(m, 0).both();
+    }
+
+    /**
+     * rle_mask: ขาว = run, ดำ = ช่องว่างระหว่าง run; Σj ของ run [s, e) จากสูตรปิด
+     * ขอบของดำในแต่ละแถวได้จาก run แรก/สุดท้าย จึงไม่ต้องดูทีละพิกเซล
+     */
+    public static BothResult measureBoth(rle_mask m) {
+        final int I = m.height, J = m.width;
+        final int[] rs = m.rowStart, runs = m.runs;
+        long Aw = 0, m10w = 0, m01w = 0;
+        int minIw = Integer.MAX_VALUE, minJw = Integer.MAX_VALUE, maxIw = -1, maxJw = -1;
+        long Ab = 0, m10b = 0, m01b = 0;
+        int minIb = Integer.MAX_VALUE, minJb = Integer.MAX_VALUE, maxIb = -1, maxJb = -1;
+        final long rowSum = (long) J * (J - 1) / 2;   // Σj ของทั้งแถว
+
+        for (int i = 0; i < I; i++) {
+            int k0 = rs[i], k1 = rs[i + 1];
+            long a = 0, sj = 0;
+            for (int k = k0; k < k1; k++) {
+                long s = runs[2 * k], e = runs[2 * k + 1];
+                a += e - s;
+                sj += (s + e - 1) * (e - s) / 2;
+            }
+            if (a > 0) { // ขาวเป็นวัตถุ
+                Aw += a; m10w += sj; m01w += (long) i * a;
+                if (i < minIw) minIw = i;
+                if (i > maxIw) maxIw = i;
+                if (runs[2 * k0] < minJw) minJw = runs[2 * k0];
+                if (runs[2 * k1 - 1] - 1 > maxJw) maxJw = runs[2 * k1 - 1] - 1;
+            }
+            if (a < J) { // ดำเป็นวัตถุ
+                Ab += J - a; m10b += rowSum - sj; m01b += (long) i * (J - a);
+                int first = (a == 0 || runs[2 * k0] > 0) ? 0 : runs[2 * k0 + 1];
+                int last = (a == 0 || runs[2 * k1 - 1] < J) ? J - 1 : runs[2 * k1 - 2] - 1;
+                if (i < minIb) minIb = i;
+                if (i > maxIb) maxIb = i;
+                if (first < minJb) minJb = first;
+                if (last > maxJb) maxJb = last;
+            }
+        }
+        return new BothResult(result(Aw, m10w, m01w, minIw, minJw, maxIw, maxJw),
+                              result(Ab, m10b, m01b, minIb, minJb, maxIb, maxJb));
+    }
+
+    /**
+     * สะสม geoprops ทีละแถบของภาพ (เช่นโหมด streaming) ผลเท่ากับ measureBoth ของทั้งภาพ
+     * row0 = แถวของภาพเต็มที่ตรงกับแถว 0 ของแถบ
+     */
+    public static final class Accumulator {
+        private long Aw, m10w, m01w;
+        private int minIw = Integer.MAX_VALUE, minJw = Integer.MAX_VALUE, maxIw = -1, maxJw = -1;
+        private long Ab, m10b, m01b;
+        private int minIb = Integer.MAX_VALUE, minJb = Integer.MAX_VALUE, maxIb = -1, maxJb = -1;
 
-        return new BothResult(rw, rb);
+        private final long[] s = new long[4];
+        private final int[] ext = new int[2];
+
+        public Accumulator add(bit_mask m, int row0) {
+            for (int r = 0; r < m.height; r++) {
+                int i = row0 + r;
+                m.rowSums(r, false, s);
+                if (s[0] > 0) { // ขาวเป็นวัตถุ
+                    Aw += s[0]; m10w += s[1]; m01w += (long) i * s[0];
+                    m.rowExtent(r, false, ext);
+                    if (i < minIw) minIw = i;
+                    if (i > maxIw) maxIw = i;
+                    if (ext[0] < minJw) minJw = ext[0];
+                    if (ext[1] > maxJw) maxJw = ext[1];
+                }
+                m.rowSums(r, true, s);
+                if (s[0] > 0) { // ดำเป็นวัตถุ
+                    Ab += s[0]; m10b += s[1]; m01b += (long) i * s[0];
+                    m.rowExtent(r, true, ext);
+                    if (i < minIb) minIb = i;
+                    if (i > maxIb) maxIb = i;
+                    if (ext[0] < minJb) minJb = ext[0];
+                    if (ext[1] > maxJb) maxJb = ext[1];
+                }
+            }
+            return this;
+        }
+
+        public BothResult both() {
+            return new BothResult(result(Aw, m10w, m01w, minIw, minJw, maxIw, maxJw),
+                                  result(Ab, m10b, m01b, minIb, minJb, maxIb, maxJb));
+        }
+    }
+
+    /**
+     * แยกบิต 1 ของ m เป็น connected components (connectivity = 4 หรือ 8) แทนการนับเป็นวัตถุเดียว
+     * ได้ตาราง area / centroid / bbox (และ central moments อันดับ 2 ถ้า moments) ต่อ component
+     */
+    public static geopros_components components(bit_mask m, int connectivity, boolean moments) {
+        return geopros_components.of(m, connectivity, moments);
+    }
+
+    /** เหมือน components(bit_mask, ...) แต่ใช้ run ของ rle_mask ตรง ๆ */
+    public static geopros_components components(rle_mask m, int connectivity, boolean moments) {
+        return geopros_components.of(m, connectivity, moments);
+    }
+
+    // area 0 -> ไม่มีวัตถุ (centroid NaN, bbox -1)
+    static Result result(long A, long m10, long m01, int minI, int minJ, int maxI, int maxJ) {
+        return (A == 0)
+            ? new Result(0, Double.NaN, Double.NaN, -1, -1, -1, -1)
+            : new Result(A, (double)m10 / A, (double)m01 / A, minI, minJ, maxI, maxJ);
     }
 
     /** สลับผล white <-> black (ไว้ใช้กรณีพิเศษ เช่นอยากเรียก .black แต่ได้ความหมายของ white เดิม) */
@@ -0,0 +1,214 @@
+// geopros_components.java
+import java.util.Arrays;
+
+/**
+ * connected components ของ bit_mask หรือ rle_mask (1 = วัตถุ) แบบ 4 หรือ 8 ทิศ
+ * ไล่ทีละแถวเป็น run ของบิต 1 (ข้าม word ที่เป็น 0 ทั้ง word) แล้วเชื่อม run ที่แตะ run ของแถวก่อนหน้าด้วย union-find
+ * ผลรวมของแต่ละ run (area, Σj, Σi, bbox และ Σj², Σij, Σi² ถ้าขอ moments) คิดจากสูตรปิดตอนเจอ run
+ * แล้วพับเข้า root ตอนจบ: เวลาเป็นเชิงเส้นตามจำนวน word + จำนวน run ไม่มี recursion
+ * และหน่วยความจำตามจำนวน run (ไม่มี label map ต่อพิกเซล)
+ * component เรียงตามพิกเซลแรกแบบ raster (บนลงล่าง ซ้ายไปขวา)
+ */
+public final class geopros_components {
+    public final int connectivity;                 // 4 หรือ 8
+    public final int count;                        // จำนวน component
+    public final long[] area;
+    public final double[] cx, cy;                  // centroid (x = คอลัมน์ j, y = แถว i)
+    public final int[] minI, minJ, maxI, maxJ;     // bounding box [min..max] รวมขอบ
+    public final double[] mu20, mu11, mu02;        // central moments อันดับ 2, p = แถว i, q = คอลัมน์ j (null ถ้าไม่ได้ขอ)
+
+    private geopros_components(int connectivity, int count, long[] area, double[] cx, double[] cy,
+                               int[] minI, int[] minJ, int[] maxI, int[] maxJ,
+                               double[] mu20, double[] mu11, double[] mu02) {
+        this.connectivity = connectivity; this.count = count;
+        this.area = area; this.cx = cx; this.cy = cy;
+        this.minI = minI; this.minJ = minJ; this.maxI = maxI; this.maxJ = maxJ;
+        this.mu20 = mu20; this.mu11 = mu11; this.mu02 = mu02;
+    }
+
+    /** component k ในรูปเดียวกับ geopros.Result */
+    public geopros.Result get(int k) {
+        return new geopros.Result(area[k], cx[k], cy[k], minI[k], minJ[k], maxI[k], maxJ[k]);
+    }
+
+    /** มุมเอียงของแกนหลักของ component k จากแกน j (เรเดียน, จาก central moments); NaN ถ้าไม่ได้ขอ moments */
+    public double orientation(int k) {
+        return (mu20 == null) ? Double.NaN : 0.5 * Math.atan2(2 * mu11[k], mu02[k] - mu20[k]);
+    }
+
+    /**
+     * label บิต 1 ของ m; connectivity = 4 หรือ 8
+     * moments -> เก็บ Σj², Σij, Σi² ต่อ component ด้วย (long: ล้นเมื่อ area * กว้าง² เกิน ~9.2e18)
+     */
+    public static geopros_components of(bit_mask m, int connectivity, boolean moments) {
+        if (connectivity != 4 && connectivity != 8)
+            throw new IllegalArgumentException("connectivity must be 4 or 8: " + connectivity);
+        Labeler L = new Labeler(connectivity == 8 ? 1 : 0, moments);
+        for (int i = 0; i < m.height; i++) {
+            for (int s = m.nextSet(i, 0); s < m.width; ) {
+                int e = m.nextClear(i, s) - 1;
+                L.run(i, s, e);
+                s = (e + 2 < m.width) ? m.nextSet(i, e + 2) : m.width;
+            }
+            L.endRow();
+        }
+        return L.finish(connectivity);
+    }
+
+    /** เหมือน of(bit_mask, ...) แต่ใช้ run ของ rle_mask ตรง ๆ */
+    public static geopros_components of(rle_mask m, int connectivity, boolean moments) {
+        if (connectivity != 4 && connectivity != 8)
+            throw new IllegalArgumentException("connectivity must be 4 or 8: " + connectivity);
+        Labeler L = new Labeler(connectivity == 8 ? 1 : 0, moments);
+        for (int i = 0; i < m.height; i++) {
+            for (int k = m.rowStart[i]; k < m.rowStart[i + 1]; k++) L.run(i, m.runs[2 * k], m.runs[2 * k + 1] - 1);
+            L.endRow();
+        }
+        return L.finish(connectivity);
+    }
+
+    // ======================= union-find ของ run =======================
+
+    private static final class Labeler {
+        final int reach;            // 8 ทิศ: run ที่ห่างกันทแยง 1 คอลัมน์ก็ถือว่าแตะกัน
+        final boolean moments;
+
+        // ต่อ label ชั่วคราว (1 label ต่อ run ที่ไม่ได้ต่อจาก run ของแถวก่อน)
+        int n = 0;
+        int[] parent = new int[1024];
+        long[] area = new long[1024], sj = new long[1024], si = new long[1024];
+        long[] sjj, sij, sii;
+        int[] mnI = new int[1024], mnJ = new int[1024], mxI = new int[1024], mxJ = new int[1024];
+
+        // run ของแถวก่อนหน้า / แถวนี้: [s, e] รวมปลาย และ label
+        int prevN = 0, curN = 0;
+        int p = 0;   // run แรกของแถวก่อนที่อาจแตะ run ถัดไปของแถวนี้
+        int[] prevS = new int[64], prevE = new int[64], prevL = new int[64];
+        int[] curS = new int[64], curE = new int[64], curL = new int[64];
+
+        Labeler(int reach, boolean moments) {
+            this.reach = reach; this.moments = moments;
+            if (moments) { sjj = new long[1024]; sij = new long[1024]; sii = new long[1024]; }
+        }
+
+        // run [s, e] (รวมปลาย) ของแถว i เรียงซ้ายไปขวา
+        void run(int i, int s, int e) {
+            while (p < prevN && prevE[p] + reach < s) p++;
+            int label = -1;
+            for (int k = p; k < prevN && prevS[k] <= e + reach; k++) {
+                label = (label < 0) ? find(prevL[k]) : union(label, prevL[k]);
+            }
+            if (label < 0) label = newLabel();
+            addRun(label, i, s, e);
+            pushCur(s, e, label);
+        }
+
+        void endRow() {
+            int[] t;
+            t = prevS; prevS = curS; curS = t;
+            t = prevE; prevE = curE; curE = t;
+            t = prevL; prevL = curL; curL = t;
+            prevN = curN;
+            curN = 0;
+            p = 0;
+        }
+
+        // ผลรวมของ run [s, e] บนแถว i จากสูตรปิด
+        void addRun(int l, int i, int s, int e) {
+            long len = e - s + 1, sumJ = (long) (s + e) * len / 2;
+            area[l] += len; sj[l] += sumJ; si[l] += len * i;
+            if (i < mnI[l]) mnI[l] = i;
+            if (i > mxI[l]) mxI[l] = i;
+            if (s < mnJ[l]) mnJ[l] = s;
+            if (e > mxJ[l]) mxJ[l] = e;
+            if (moments) {
+                sjj[l] += sq(e) - sq(s - 1);
+                sij[l] += sumJ * i;
+                sii[l] += len * i * i;
+            }
+        }
+
+        // Σ_{j=0..x} j²
+        static long sq(long x) {
+            return (x <= 0) ? 0 : x * (x + 1) * (2 * x + 1) / 6;
+        }
+
+        int newLabel() {
+            if (n == parent.length) grow(n * 2);
+            parent[n] = n;
+            mnI[n] = Integer.MAX_VALUE; mnJ[n] = Integer.MAX_VALUE; mxI[n] = -1; mxJ[n] = -1;
+            return n++;
+        }
+
+        void pushCur(int s, int e, int l) {
+            if (curN == curS.length) {
+                curS = Arrays.copyOf(curS, curN * 2);
+                curE = Arrays.copyOf(curE, curN * 2);
+                curL = Arrays.copyOf(curL, curN * 2);
+            }
+            curS[curN] = s; curE[curN] = e; curL[curN] = l;
+            curN++;
+        }
+
+        // path halving
+        int find(int x) {
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]];
+                x = parent[x];
+            }
+            return x;
+        }
+
+        // root = label ที่น้อยกว่า (= run ที่เจอก่อน) ลำดับ component จึงเป็นแบบ raster
+        int union(int a, int b) {
+            a = find(a); b = find(b);
+            if (a == b) return a;
+            if (a < b) { parent[b] = a; return a; }
+            parent[a] = b;
+            return b;
+        }
+
+        void grow(int cap) {
+            parent = Arrays.copyOf(parent, cap);
+            area = Arrays.copyOf(area, cap); sj = Arrays.copyOf(sj, cap); si = Arrays.copyOf(si, cap);
+            mnI = Arrays.copyOf(mnI, cap); mnJ = Arrays.copyOf(mnJ, cap);
+            mxI = Arrays.copyOf(mxI, cap); mxJ = Arrays.copyOf(mxJ, cap);
+            if (moments) { sjj = Arrays.copyOf(sjj, cap); sij = Arrays.copyOf(sij, cap); sii = Arrays.copyOf(sii, cap); }
+        }
+
+        // พับผลของทุก label เข้า root (root < ลูกเสมอ จึงวนจากท้ายครั้งเดียวพอ) แล้วเรียงเลข component ใหม่
+        geopros_components finish(int connectivity) {
+            for (int k = n - 1; k >= 0; k--) {
+                int r = find(k);
+                if (r == k) continue;
+                area[r] += area[k]; sj[r] += sj[k]; si[r] += si[k];
+                mnI[r] = Math.min(mnI[r], mnI[k]); mnJ[r] = Math.min(mnJ[r], mnJ[k]);
+                mxI[r] = Math.max(mxI[r], mxI[k]); mxJ[r] = Math.max(mxJ[r], mxJ[k]);
+                if (moments) { sjj[r] += sjj[k]; sij[r] += sij[k]; sii[r] += sii[k]; }
+            }
+            int c = 0;
+            for (int k = 0; k < n; k++) if (parent[k] == k) c++;
+            long[] A = new long[c];
+            double[] X = new double[c], Y = new double[c];
+            int[] i0 = new int[c], j0 = new int[c], i1 = new int[c], j1 = new int[c];
+            double[] u20 = moments ? new double[c] : null, u11 = moments ? new double[c] : null,
+                     u02 = moments ? new double[c] : null;
+            int q = 0;
+            for (int k = 0; k < n; k++) {
+                if (parent[k] != k) continue;
+                long a = area[k];
+                A[q] = a;
+                X[q] = (double) sj[k] / a;
+                Y[q] = (double) si[k] / a;
+                i0[q] = mnI[k]; j0[q] = mnJ[k]; i1[q] = mxI[k]; j1[q] = mxJ[k];
+                if (moments) {
+                    u20[q] = sii[k] - Y[q] * si[k];   // Σ(i - cy)²
+                    u11[q] = sij[k] - X[q] * si[k];   // Σ(i - cy)(j - cx)
+                    u02[q] = sjj[k] - X[q] * sj[k];   // Σ(j - cx)²
+                }
+                q++;
+            }
+            return new geopros_components(connectivity, c, A, X, Y, i0, j0, i1, j1, u20, u11, u02);
+        }
+    }
+}
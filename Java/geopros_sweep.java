@@ -0,0 +1,202 @@
+// geopros_sweep.java
+import java.awt.image.BufferedImage;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+/**
+ * geopros ของทุก threshold จากการสแกนภาพรอบเดียว
+ * เก็บต่อระดับเทา g: จำนวนพิกเซล, Σj, Σi และ bounding box ของพิกเซลที่มีค่า g
+ * จากนั้น white(T) = ระดับ T..255, black(T) = 0..T-1 และแถบ [T1,T2] ได้จาก prefix/suffix
+ * ไม่ต้องแตะพิกเซลอีก (ความหมายเดียวกับ geopros.measureBoth: ขาว = gray >= T)
+ */
+public final class geopros_sweep {
+    public final long[] count = new long[256];   // = histogram
+    private final long[] m10 = new long[256], m01 = new long[256];   // Σj, Σi ต่อระดับ
+    private final int[] minI = new int[256], minJ = new int[256], maxI = new int[256], maxJ = new int[256];
+
+    // ตัวสะสม: [k] = ระดับ 0..k-1 (prefix) หรือ k..255 (suffix), k = 0..256
+    private final long[] preA = new long[257], pre10 = new long[257], pre01 = new long[257];
+    private final int[][] preBox = new int[257][], sufBox = new int[257][];   // {minI, minJ, maxI, maxJ}
+
+    private geopros_sweep() {}
+
+    /** สแกนภาพเทาครั้งเดียว */
+    public static geopros_sweep of(gray_image g) {
+        geopros_sweep s = new geopros_sweep();
+        java.util.Arrays.fill(s.minI, Integer.MAX_VALUE);
+        java.util.Arrays.fill(s.minJ, Integer.MAX_VALUE);
+        java.util.Arrays.fill(s.maxI, -1);
+        java.util.Arrays.fill(s.maxJ, -1);
+
+        final byte[] d = g.data;
+        final int J = g.width;
+        final long[] cnt = s.count, sj = s.m10, si = s.m01;
+        final int[] mnI = s.minI, mnJ = s.minJ, mxI = s.maxI, mxJ = s.maxJ;
+        long[] rowCnt = new long[256];
+        for (int i = 0; i < g.height; i++) {
+            int p = g.offset + i * g.stride;
+            for (int j = 0; j < J; j++) {
+                int v = d[p + j] & 0xFF;
+                rowCnt[v]++;
+                sj[v] += j;
+                if (j < mnJ[v]) mnJ[v] = j;
+                if (j > mxJ[v]) mxJ[v] = j;
+            }
+            // แถว i: อัปเดต Σi และขอบบน/ล่างครั้งเดียวต่อระดับที่พบในแถวนี้
+            for (int v = 0; v < 256; v++) {
+                long c = rowCnt[v];
+                if (c == 0) continue;
+                cnt[v] += c;
+                si[v] += c * i;
+                if (mnI[v] == Integer.MAX_VALUE) mnI[v] = i;
+                mxI[v] = i;
+                rowCnt[v] = 0;
+            }
+        }
+        s.accumulate();
+        return s;
+    }
+
+    /** เหมือน of(gray_image) โดยอ่านระดับเทาแบบ getRGB & 0xFF (เหมือน threshold) */
+    public static geopros_sweep of(BufferedImage img) {
+        return of(gray_image.of(img));
+    }
+
+    /** ตารางต่อระดับ (ไว้เก็บลง result_cache); prefix/suffix สร้างใหม่ตอน read */
+    void write(DataOutput out) throws IOException {
+        for (int v = 0; v < 256; v++) {
+            out.writeLong(count[v]); out.writeLong(m10[v]); out.writeLong(m01[v]);
+            out.writeInt(minI[v]); out.writeInt(minJ[v]); out.writeInt(maxI[v]); out.writeInt(maxJ[v]);
+        }
+    }
+
+    static geopros_sweep read(DataInput in) throws IOException {
+        geopros_sweep s = new geopros_sweep();
+        for (int v = 0; v < 256; v++) {
+            s.count[v] = in.readLong(); s.m10[v] = in.readLong(); s.m01[v] = in.readLong();
+            s.minI[v] = in.readInt(); s.minJ[v] = in.readInt(); s.maxI[v] = in.readInt(); s.maxJ[v] = in.readInt();
+        }
+        s.accumulate();
+        return s;
+    }
+
+    private void accumulate() {
+        int[] box = {Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1};
+        preBox[0] = box.clone();
+        for (int k = 0; k < 256; k++) {
+            preA[k + 1] = preA[k] + count[k];
+            pre10[k + 1] = pre10[k] + m10[k];
+            pre01[k + 1] = pre01[k] + m01[k];
+            grow(box, k);
+            preBox[k + 1] = box.clone();
+        }
+        box = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1};
+        sufBox[256] = box.clone();
+        for (int k = 255; k >= 0; k--) {
+            grow(box, k);
+            sufBox[k] = box.clone();
+        }
+    }
+
+    private void grow(int[] box, int v) {
+        if (count[v] == 0) return;
+        if (minI[v] < box[0]) box[0] = minI[v];
+        if (minJ[v] < box[1]) box[1] = minJ[v];
+        if (maxI[v] > box[2]) box[2] = maxI[v];
+        if (maxJ[v] > box[3]) box[3] = maxJ[v];
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        return new int[]{Math.min(a[0], b[0]), Math.min(a[1], b[1]), Math.max(a[2], b[2]), Math.max(a[3], b[3])};
+    }
+
+    // ระดับ lo..hi-1 (ครึ่งเปิด) ผ่าน prefix
+    private geopros.Result levels(int lo, int hi, int[] box) {
+        return geopros.result(preA[hi] - preA[lo], pre10[hi] - pre10[lo], pre01[hi] - pre01[lo],
+                              box[0], box[1], box[2], box[3]);
+    }
+
+    // ======================= คำถามแบบ O(1) / O(256) =======================
+
+    /** เท่ากับ geopros.measureBoth(ภาพ, T): white = gray >= T, black = gray < T (T = 0..256) */
+    public geopros.BothResult at(int T) {
+        if (T < 0 || T > 256) throw new IllegalArgumentException("T must be 0..256, got " + T);
+        return new geopros.BothResult(levels(T, 256, sufBox[T]), levels(0, T, preBox[T]));
+    }
+
+    /**
+     * แถบ T1..T2 (รวมปลาย) แบบ threshold_between: white = ในช่วง, black = นอกช่วง
+     * bbox ของในช่วงรวมจากระดับในแถบ (O(T2-T1)), นอกช่วง = prefix ∪ suffix
+     */
+    public geopros.BothResult band(int T1, int T2) {
+        if (T1 < 0 || T2 > 255 || T1 > T2)
+            throw new IllegalArgumentException("Band must satisfy 0 <= T1 <= T2 <= 255, got " + T1 + ".." + T2);
+        int[] box = {Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1};
+        for (int k = T1; k <= T2; k++) grow(box, k);
+        return new geopros.BothResult(levels(T1, T2 + 1, box), outside(T1, T2));
+    }
+
+    private geopros.Result outside(int T1, int T2) {
+        int[] box = union(preBox[T1], sufBox[T2 + 1]);
+        long A = preA[T1] + (preA[256] - preA[T2 + 1]);
+        long s10 = pre10[T1] + (pre10[256] - pre10[T2 + 1]);
+        long s01 = pre01[T1] + (pre01[256] - pre01[T2 + 1]);
+        return geopros.result(A, s10, s01, box[0], box[1], box[2], box[3]);
+    }
+
+    /** ผลของทุก T = 0..256 (index = T) */
+    public geopros.BothResult[] all() {
+        geopros.BothResult[] out = new geopros.BothResult[257];
+        for (int T = 0; T <= 256; T++) out[T] = at(T);
+        return out;
+    }
+
+    /** ผลของทุกแถบ [T1][T2] (T1 <= T2, ช่องอื่นเป็น null) รวม O(256²) ด้วยการขยาย bbox ทีละระดับ */
+    public geopros.BothResult[][] allBands() {
+        geopros.BothResult[][] out = new geopros.BothResult[256][256];
+        for (int T1 = 0; T1 < 256; T1++) {
+            int[] box = {Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1};
+            for (int T2 = T1; T2 < 256; T2++) {
+                grow(box, T2);
+                out[T1][T2] = new geopros.BothResult(levels(T1, T2 + 1, box), outside(T1, T2));
+            }
+        }
+        return out;
+    }
+
+    // ======================= CLI: ตารางของทุก T =======================
+
+    public static void main(String[] args) throws Exception {
+        String path = (args.length > 0) ? args[0] : "equalized.png";
+        geopros_sweep s = of(image_codec.readGray(new File(path)));
+        if (args.length > 1) {
+            try (PrintWriter pw = new PrintWriter(args[1], "UTF-8")) { s.writeTable(pw); }
+            System.out.println("Saved sweep table: " + args[1]);
+        } else {
+            PrintWriter pw = new PrintWriter(new PrintStream(System.out, true, "UTF-8"));
+            s.writeTable(pw);
+            pw.flush();
+        }
+    }
+
+    /** ตาราง TSV: T, ผลของ white (gray>=T) และ black (gray<T) */
+    public void writeTable(PrintWriter pw) {
+        pw.println("T\tareaW\tcxW\tcyW\tminIW\tminJW\tmaxIW\tmaxJW\tareaB\tcxB\tcyB\tminIB\tminJB\tmaxIB\tmaxJB");
+        for (int T = 0; T <= 256; T++) {
+            geopros.BothResult br = at(T);
+            pw.print(T);
+            row(pw, br.white);
+            row(pw, br.black);
+            pw.println();
+        }
+    }
+
+    private static void row(PrintWriter pw, geopros.Result r) {
+        pw.printf(java.util.Locale.ROOT, "\t%d\t%.4f\t%.4f\t%d\t%d\t%d\t%d",
+                  r.area, r.cx, r.cy, r.minI, r.minJ, r.maxI, r.maxJ);
+    }
+}
@@ -0,0 +1,380 @@
+// gray_image.java
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * ภาพเทา 8 บิตบน byte[] แบบแบน (row-major, stride) ให้ทุก kernel สแกนอาร์เรย์ตรง ๆ
+ * แทน getRGB/setRGB ทีละพิกเซล
+ *
+ * ค่าที่เก็บคือระดับเทาเดียวกับที่โค้ดเดิมเห็นผ่าน getRGB (ไม่ใช่ byte ดิบใน raster):
+ * TYPE_BYTE_GRAY ของ Java เก็บเป็น linear gray ดังนั้น adapter ทั้งสองทางแปลงผ่าน LUT 256 ช่อง
+ * ที่สร้างจาก ColorModel จริง ผลจึงเท่ากับ getRGB/setRGB ทุกบิต
+ */
+public final class gray_image {
+    public final int width, height;
+    public final int stride;   // ระยะห่างระหว่างแถว (byte)
+    public final int offset;   // ตำแหน่งพิกเซล (0,0) ใน data
+    public final byte[] data;
+
+    /** พิกเซลสูงสุดของภาพทั้งภาพบน heap (byte[] เดียว และ histogram แบบ int[] ที่นับทั้งภาพ) */
+    public static final long MAX_PIXELS = Integer.MAX_VALUE;
+
+    public gray_image(int width, int height) {
+        this(new byte[checkedSize(width, height)], width, height, width, 0);
+    }
+
+    /** width * height เป็น int; เกิน MAX_PIXELS -> IllegalArgumentException แทน int ล้นแล้วได้ขนาดอาร์เรย์ผิด */
+    public static int checkedSize(int width, int height) {
+        long n = (long) width * height;
+        if (width < 0 || height < 0)
+            throw new IllegalArgumentException("Bad gray_image size: " + width + "x" + height);
+        if (n > MAX_PIXELS)
+            throw new IllegalArgumentException("Image " + width + "x" + height + " = " + n + " pixels does not fit on the heap (max "
+                                               + MAX_PIXELS + "); use --stream");
+        return (int) n;
+    }
+
+    public gray_image(byte[] data, int width, int height, int stride, int offset) {
+        if (width < 0 || height < 0 || stride < width)
+            throw new IllegalArgumentException("Bad gray_image geometry: " + width + "x" + height + " stride=" + stride);
+        if (height > 0 && offset + (long) (height - 1) * stride + width > data.length)
+            throw new IllegalArgumentException("gray_image data too small");
+        this.data = data; this.width = width; this.height = height;
+        this.stride = stride; this.offset = offset;
+    }
+
+    public int get(int i, int j) { return data[offset + i * stride + j] & 0xFF; }
+
+    public void set(int i, int j, int v) { data[offset + i * stride + j] = (byte) v; }
+
+    /** ภาพใหม่ที่ได้จาก LUT 256 ช่อง: out = lut[in] */
+    public gray_image map(int[] lut) {
+        byte[] l = new byte[256];
+        for (int k = 0; k < 256; k++) l[k] = (byte) lut[k];
+        gray_image out = new gray_image(width, height);
+        byte[] d = data, o = out.data;
+        for (int i = 0; i < height; i++) {
+            int p = offset + i * stride, q = i * width;
+            for (int j = 0; j < width; j++) o[q + j] = l[d[p + j] & 0xFF];
+        }
+        return out;
+    }
+
+    // ======================= BufferedImage -> gray_image =======================
+
+    /** ระดับเทาแบบ getRGB(x, y) & 0xFF (ที่ threshold/geopros ใช้; ภาพเทา R=G=B) */
+    public static gray_image of(BufferedImage img) {
+        return convert(img, false);
+    }
+
+    /**
+     * luma แบบ histogram: fixed-point 16 บิต (19595R + 38470G + 7471B) >> 16
+     * น้ำหนัก Rec.601 (0.299, 0.587, 0.114) ที่รวมกันได้ 65536 พอดี -> พิกเซลเทา (v, v, v) ได้ v เสมอ
+     */
+    public static gray_image luma(BufferedImage img) {
+        return convert(img, true);
+    }
+
+    /** R == G == B ทุกพิกเซลหรือไม่ (ภาพเทาแบนด์เดียวตอบได้จาก LUT ไม่ต้องสแกน) */
+    public static boolean isGray(BufferedImage img) {
+        int[] lut = gray8Lut(img);
+        if (lut != null) {
+            for (int rgb : lut) if (!isGrayRgb(rgb)) return false;
+            return true;
+        }
+        int w = img.getWidth(), h = img.getHeight();
+        int[] row = new int[w];
+        for (int i = 0; i < h; i++) {
+            img.getRGB(0, i, w, 1, row, 0, w);
+            for (int j = 0; j < w; j++) if (!isGrayRgb(row[j])) return false;
+        }
+        return true;
+    }
+
+    private static gray_image convert(BufferedImage img, boolean luma) {
+        gray_image out = new gray_image(img.getWidth(), img.getHeight());
+        new converter(img, luma).rows(0, out.height, out.data, null, null, false);
+        return out;
+    }
+
+    /**
+     * แปลง BufferedImage -> ระดับเทาทีละช่วงแถว: เลือกเส้นทางตามชนิด raster และเตรียม LUT ไว้ครั้งเดียว
+     * เรียก rows(...) จากหลาย thread พร้อมกันได้ (แต่ละช่วงแถวเขียนคนละส่วนของ o)
+     */
+    static final class converter {
+        private static final int LUT = 0, INT = 1, BGR = 2, GENERIC = 3;
+        final int width, height;
+        private final BufferedImage img;
+        private final boolean luma;
+        private final int kind;
+        private byte[] lut;            // LUT: sample -> ระดับเทา
+        private int[] rgbLut;          // LUT: sample -> getRGB
+        private boolean lutGray;       // LUT: ทุก sample เป็นเทา (ความหมายเดียวกับ isGray)
+        private boolean lutIdentity;   // LUT: sample s แสดงเป็น (s, s, s) -> ระดับเทา = sample
+        private byte[] bd;
+        private int[] id, bo;
+        private int base, ss, ps;
+
+        converter(BufferedImage img, boolean luma) {
+            this.img = img; this.luma = luma;
+            this.width = img.getWidth(); this.height = img.getHeight();
+            Raster r = img.getRaster();
+            boolean plain = r.getMinX() == 0 && r.getMinY() == 0
+                    && r.getSampleModelTranslateX() == 0 && r.getSampleModelTranslateY() == 0;
+            int type = img.getType();
+            rgbLut = plain ? gray8Lut(img) : null;
+
+            if (rgbLut != null) {
+                // --- 8-bit แบนด์เดียว (TYPE_BYTE_GRAY / PNG เทา / palette 8 บิต): LUT จาก ColorModel ---
+                kind = LUT;
+                lut = new byte[256];
+                lutGray = true;
+                lutIdentity = true;
+                for (int s = 0; s < 256; s++) {
+                    lut[s] = (byte) (luma ? lumaOf(rgbLut[s]) : (rgbLut[s] & 0xFF));
+                    lutGray &= isGrayRgb(rgbLut[s]);
+                    lutIdentity &= (rgbLut[s] & 0xFFFFFF) == s * 0x010101;
+                }
+                ComponentSampleModel sm = (ComponentSampleModel) r.getSampleModel();
+                DataBufferByte db = (DataBufferByte) r.getDataBuffer();
+                bd = db.getData();
+                base = db.getOffset() + sm.getBandOffsets()[0];
+                ss = sm.getScanlineStride(); ps = sm.getPixelStride();
+            } else if (plain && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                    && r.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+                // --- TYPE_INT_RGB / TYPE_INT_ARGB: getRGB คืนค่า int ใน raster ตรง ๆ ---
+                kind = INT;
+                SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) r.getSampleModel();
+                DataBufferInt db = (DataBufferInt) r.getDataBuffer();
+                id = db.getData();
+                ss = sm.getScanlineStride(); base = db.getOffset();
+            } else if (plain && (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)) {
+                // --- TYPE_3BYTE_BGR / TYPE_4BYTE_ABGR (sRGB 8 บิต, ไม่ premultiplied) ---
+                kind = BGR;
+                ComponentSampleModel sm = (ComponentSampleModel) r.getSampleModel();
+                DataBufferByte db = (DataBufferByte) r.getDataBuffer();
+                bd = db.getData();
+                bo = sm.getBandOffsets();    // band 0..2 = R, G, B
+                base = db.getOffset();
+                ss = sm.getScanlineStride(); ps = sm.getPixelStride();
+            } else {
+                // --- อื่น ๆ: getRGB ทีละแถว (ความหมายเดียวกับ getRGB ทีละพิกเซล) ---
+                kind = GENERIC;
+            }
+        }
+
+        /**
+         * ภาพเทาที่ raster เก็บระดับเทาตรง ๆ (palette (s, s, s) เช่น PGM ที่อ่านผ่าน image_codec)
+         * -> gray_image ที่ใช้ byte[] ของ raster ร่วมกันโดยไม่แปลง (ห้ามแก้); แบบอื่นคืน null
+         */
+        gray_image view() {
+            if (kind != LUT || !lutIdentity || ps != 1) return null;
+            return new gray_image(bd, width, height, ss, base);
+        }
+
+        /**
+         * แถว from..to-1 -> o[i * width + j]; hist != null -> นับ histogram ของผลไปพร้อมกัน (แถวยังอยู่ใน cache)
+         * rgb != null -> นับ histogram ของ R, G, B ลง rgb[0..2] ด้วย
+         * checkGray -> คืนว่าทุกพิกเซลในช่วงมี R == G == B หรือไม่ (ภาพ LUT ตอบจาก LUT ไม่ต้องสแกน)
+         */
+        boolean rows(int from, int to, byte[] o, int[] hist, int[][] rgb, boolean checkGray) {
+            final int w = width;
+            boolean gray = (kind == LUT) ? lutGray : checkGray;
+            int[] row = (kind == GENERIC) ? new int[w] : null;
+            // LUT: นับตาม sample แล้วแตกเป็น luma / R, G, B ทีหลังใน O(256)
+            int[] hs = (kind == LUT && (hist != null || rgb != null)) ? new int[256] : null;
+            for (int i = from; i < to; i++) {
+                int q = i * w;
+                int ng;
+                switch (kind) {
+                    case LUT:
+                        lutRow(i, o, q, hs);
+                        ng = 0;
+                        break;
+                    case INT:
+                        ng = intRow(i, o, q);
+                        if (rgb != null) countRgb(id, base + i * ss, w, rgb);
+                        break;
+                    case BGR:
+                        ng = bgrRow(i, o, q, rgb);
+                        break;
+                    default:
+                        img.getRGB(0, i, w, 1, row, 0, w);
+                        ng = rgbRow(row, 0, o, q);
+                        if (rgb != null) countRgb(row, 0, w, rgb);
+                }
+                if (ng != 0) gray = false;
+                if (hist != null && hs == null) count(o, q, w, hist);
+            }
+            if (hs != null) {
+                for (int s = 0; s < 256; s++) {
+                    int c = hs[s];
+                    if (c == 0) continue;
+                    if (hist != null) hist[lut[s] & 0xFF] += c;
+                    if (rgb != null) {
+                        int x = rgbLut[s];
+                        rgb[0][(x >> 16) & 0xFF] += c;
+                        rgb[1][(x >> 8) & 0xFF] += c;
+                        rgb[2][x & 0xFF] += c;
+                    }
+                }
+            }
+            return gray;
+        }
+
+        // hs != null -> นับ sample ไปพร้อมกัน
+        private void lutRow(int i, byte[] o, int q, int[] hs) {
+            final byte[] d = bd, l = lut;
+            final int w = width, s = ps;
+            int p = base + i * ss;
+            if (hs != null) { for (int j = 0; j < w; j++, p += s) { int v = d[p] & 0xFF; hs[v]++; o[q + j] = l[v]; } return; }
+            if (s == 1) { for (int j = 0; j < w; j++) o[q + j] = l[d[p + j] & 0xFF]; return; }
+            for (int j = 0; j < w; j++, p += s) o[q + j] = l[d[p] & 0xFF];
+        }
+
+        // คืนค่า != 0 ถ้ามีพิกเซลที่ R, G, B ไม่เท่ากัน
+        private int intRow(int i, byte[] o, int q) {
+            return rgbRow(id, base + i * ss, o, q);
+        }
+
+        private int rgbRow(int[] d, int p, byte[] o, int q) {
+            final int w = width;
+            int ng = 0;
+            if (luma) {
+                for (int j = 0; j < w; j++) {
+                    int x = d[p + j];
+                    o[q + j] = (byte) lumaOf(x);
+                    ng |= (x ^ (x >>> 8)) & 0xFFFF;
+                }
+            } else {
+                for (int j = 0; j < w; j++) {
+                    int x = d[p + j];
+                    o[q + j] = (byte) x;
+                    ng |= (x ^ (x >>> 8)) & 0xFFFF;
+                }
+            }
+            return ng;
+        }
+
+        private int bgrRow(int i, byte[] o, int q, int[][] rgb) {
+            final byte[] d = bd;
+            final int w = width, s = ps, r0 = bo[0], g0 = bo[1], b0 = bo[2];
+            int p = base + i * ss, ng = 0;
+            for (int j = 0; j < w; j++, p += s) {
+                int rr = d[p + r0] & 0xFF, gg = d[p + g0] & 0xFF, bb = d[p + b0] & 0xFF;
+                o[q + j] = (byte) (luma ? lumaOf(rr, gg, bb) : bb);
+                ng |= (rr ^ gg) | (gg ^ bb);
+            }
+            if (rgb != null) {
+                int[] hr = rgb[0], hg = rgb[1], hb = rgb[2];
+                p = base + i * ss;
+                for (int j = 0; j < w; j++, p += s) {
+                    hr[d[p + r0] & 0xFF]++; hg[d[p + g0] & 0xFF]++; hb[d[p + b0] & 0xFF]++;
+                }
+            }
+            return ng;
+        }
+
+        private static void countRgb(int[] d, int p, int w, int[][] rgb) {
+            int[] hr = rgb[0], hg = rgb[1], hb = rgb[2];
+            for (int j = p, end = p + w; j < end; j++) {
+                int x = d[j];
+                hr[(x >> 16) & 0xFF]++; hg[(x >> 8) & 0xFF]++; hb[x & 0xFF]++;
+            }
+        }
+
+        private static void count(byte[] o, int q, int w, int[] hist) {
+            for (int j = q, end = q + w; j < end; j++) hist[o[j] & 0xFF]++;
+        }
+    }
+
+    /** ภาพ 8 บิตแบนด์เดียว -> ตาราง getRGB ของทุกค่า sample 0..255; แบบอื่นคืน null */
+    private static int[] gray8Lut(BufferedImage img) {
+        ColorModel cm = img.getColorModel();
+        Raster r = img.getRaster();
+        boolean gray = cm instanceof ComponentColorModel && cm.getNumComponents() == 1;
+        if (!(gray || cm instanceof IndexColorModel) || cm.hasAlpha()) return null;
+        if (r.getNumBands() != 1 || r.getSampleModel().getSampleSize(0) != 8) return null;
+        if (!(r.getDataBuffer() instanceof DataBufferByte) || !(r.getSampleModel() instanceof ComponentSampleModel)) return null;
+
+        WritableRaster pr = cm.createCompatibleWritableRaster(256, 1);
+        for (int s = 0; s < 256; s++) pr.setSample(s, 0, 0, s);
+        BufferedImage probe = new BufferedImage(cm, pr, cm.isAlphaPremultiplied(), null);
+        int[] lut = new int[256];
+        probe.getRGB(0, 0, 256, 1, lut, 0, 256);
+        return lut;
+    }
+
+    private static boolean isGrayRgb(int rgb) {
+        int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+        return r == g && g == b;
+    }
+
+    private static int lumaOf(int rgb) {
+        return lumaOf((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+    }
+
+    // ผลรวมน้ำหนักไม่เกิน 65536 * 255 -> อยู่ใน 0..255 เสมอ ไม่ต้องตัดค่า
+    private static int lumaOf(int r, int g, int b) {
+        return (19595 * r + 38470 * g + 7471 * b) >>> 16;
+    }
+
+    // ======================= gray_image -> BufferedImage =======================
+
+    private static int[] encLut, roundTripLut;
+
+    /** TYPE_BYTE_GRAY ที่มี raster เท่ากับการ setRGB(g, g, g) ทีละพิกเซล */
+    public BufferedImage toBufferedImage() {
+        int[] enc = encodeLut();
+        byte[] l = new byte[256];
+        for (int k = 0; k < 256; k++) l[k] = (byte) enc[k];
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] o = ((DataBufferByte) out.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < height; i++) {
+            int p = offset + i * stride, q = i * width;
+            for (int j = 0; j < width; j++) o[q + j] = l[data[p + j] & 0xFF];
+        }
+        return out;
+    }
+
+    /**
+     * ระดับเทาที่อ่านกลับได้ (getRGB) หลัง setRGB(g) ลง TYPE_BYTE_GRAY
+     * ใช้เมื่ออยากให้ผลในหน่วยความจำเท่ากับการเขียน PNG แล้วอ่านกลับ
+     */
+    public static synchronized int[] grayRoundTrip() {
+        if (roundTripLut == null) {
+            BufferedImage t = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+            for (int g = 0; g < 256; g++) t.setRGB(g, 0, 0xFF000000 | (g << 16) | (g << 8) | g);
+            int[] rt = new int[256];
+            t.getRGB(0, 0, 256, 1, rt, 0, 256);
+            for (int g = 0; g < 256; g++) rt[g] &= 0xFF;
+            roundTripLut = rt;
+        }
+        return roundTripLut.clone();
+    }
+
+    /** sample ของ TYPE_BYTE_GRAY ต่อระดับเทา (ตารางเดียวกับ toBufferedImage) */
+    static int[] encodeTable() {
+        return encodeLut().clone();
+    }
+
+    private static synchronized int[] encodeLut() {
+        if (encLut == null) {
+            BufferedImage t = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+            for (int g = 0; g < 256; g++) t.setRGB(g, 0, 0xFF000000 | (g << 16) | (g << 8) | g);
+            byte[] d = ((DataBufferByte) t.getRaster().getDataBuffer()).getData();
+            int[] enc = new int[256];
+            for (int g = 0; g < 256; g++) enc[g] = d[g] & 0xFF;
+            encLut = enc;
+        }
+        return encLut;
+    }
+}
@@ -5,48 +5,114 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.PrintWriter;
-import javax.imageio.ImageIO;
 
 public class histogram {
+    /** ผลของขั้น histogram + equalization (ส่งต่อให้ขั้นถัดไปในหน่วยความจำ) */
+    public static class Result {
+        public final int I, J;           // rows, cols
+        public final int[] h;            // histogram ของภาพต้นฉบับ
+        public final double[] pdf, cdf;
+        public final int[] mapEq;        // LUT สำหรับ equalization
+        public final int[] hEq;          // histogram หลัง equalize
+        public final long T;             // ผลรวมระดับเทา
+        public final double mean;
+        public final boolean isGray;
+        public final gray_image eq;      // ภาพ equalized (ระดับเทาแบบอ่านกลับจาก PNG)
+        public final result_extras extras; // hR, hG, hB: histogram ของแต่ละ channel (opt.extras.channelHistograms)
+        public Result(int I, int J, int[] h, double[] pdf, double[] cdf, int[] mapEq, int[] hEq,
+                      long T, double mean, boolean isGray, gray_image eq) {
+            this(I, J, h, pdf, cdf, mapEq, hEq, T, mean, isGray, eq, result_extras.NONE);
+        }
+        public Result(int I, int J, int[] h, double[] pdf, double[] cdf, int[] mapEq, int[] hEq,
+                      long T, double mean, boolean isGray, gray_image eq, result_extras extras) {
+            this.I = I; this.J = J; this.h = h; this.pdf = pdf; this.cdf = cdf;
+            this.mapEq = mapEq; this.hEq = hEq; this.T = T; this.mean = mean;
+            this.isGray = isGray; this.eq = eq;
+            this.extras = extras;
+        }
+    }
+
     public static void main(String[] args) throws Exception {
-        BufferedImage img = ImageIO.read(new File("picture.png"));
+        String inName = (args.length >= 1) ? args[0] : "picture.png";
+        File in = new File(inName);
+        if (mapped_gray.canMap(in)) {
+            try (mapped_gray src = mapped_gray.open(in)) { run(src, histro_pipeline.Options.cli()); }
+            return;
+        }
+        BufferedImage img = image_codec.read(in);
+        if (img == null) throw new IllegalArgumentException("Cannot read image: " + inName);
+        run(img, histro_pipeline.Options.cli());
+    }
+
+    /** histogram + equalization บนภาพที่ decode แล้ว; เขียนไฟล์ตาม opt เท่านั้น */
+    public static Result run(BufferedImage img, histro_pipeline.Options opt) throws Exception {
         int I = img.getHeight();  // rows
         int J = img.getWidth();   // cols
+        logSize(I, J, opt);
+
+        // --- luma + histogram (+ R, G, B) + ตรวจภาพเทา ในการอ่านพิกเซลรอบเดียว (fork-join ตาม opt.threads) ---
+        // buffer luma เก็บไว้ให้ equalization ใส่ LUT รอบเดียว ไม่ต้องแปลง RGB ซ้ำ
+        parallel_histogram.LumaScan scan;
+        try (stage_metrics.Span s = opt.span(stage_metrics.Stage.HISTOGRAM)) {
+            scan = parallel_histogram.lumaHistogram(img, opt.threads, opt.extras.channelHistograms);
+            s.pixels((long) I * J);
+        }
+        gray_image gray = scan.gray;
+        return equalize(I, J, scan.h, scan.isGray, new int[][] { scan.r, scan.g, scan.b },
+                        lut -> parallel_histogram.applyLut(gray, lut, opt.threads), opt);
+    }
 
-        System.out.println("I[i,j] = size(I) = [" + I + ", " + J + "]");
-        System.out.println("All pixel size = " + (I * J));
+    /**
+     * histogram + equalization บนภาพเทาที่ map จากไฟล์ (PGM/RAW) โดยไม่ decode และไม่คัดลอกภาพต้นฉบับ
+     * ผลเท่ากับ run(image_codec.read(ไฟล์)) ทุกบิต: luma ของพิกเซลเทา v คือ v
+     * จึงใช้ histogram ของค่าในไฟล์และใส่ LUT ของ equalization กับค่าในไฟล์ได้ตรง ๆ
+     */
+    public static Result run(mapped_gray src, histro_pipeline.Options opt) throws Exception {
+        int I = src.height, J = src.width;
+        logSize(I, J, opt);
+
+        int[] h;
+        try (stage_metrics.Span s = opt.span(stage_metrics.Stage.HISTOGRAM)) {
+            h = parallel_histogram.histogram(src, opt.threads);
+            s.pixels((long) I * J).read((long) I * J);
+        }
+        int[][] rgb = opt.extras.channelHistograms ? new int[][] { h.clone(), h.clone(), h.clone() } : new int[3][];
+        return equalize(I, J, h, true, rgb, lut -> parallel_histogram.applyLut(src, lut, opt.threads), opt);
+    }
 
-        int[] h = new int[256];
-        long T = 0L;
-        boolean isGray = true;
+    /**
+     * ผลจาก result_cache: ใช้ histogram และภาพ equalized ที่เก็บไว้ ไม่แตะพิกเซลต้นฉบับ
+     * mapEq และค่าอื่นคำนวณจาก h ใหม่ใน O(256); log/รายงาน/ไฟล์เหมือนการรันปกติทุกอย่าง
+     */
+    public static Result run(result_cache.Entry e, histro_pipeline.Options opt) throws Exception {
+        logSize(e.I, e.J, opt);
+        return equalize(e.I, e.J, e.h, e.isGray, new int[][] { e.hR, e.hG, e.hB }, lut -> e.eq, opt);
+    }
 
-        // --- คำนวณ histogram ของภาพต้นฉบับ + T, mean ---
-        for (int u = 0; u < I; u++) {
-            for (int v = 0; v < J; v++) {
-                int rgb = img.getRGB(v, u);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8)  & 0xFF;
-                int b =  rgb        & 0xFF;
+    private static void logSize(int I, int J, histro_pipeline.Options opt) {
+        if (opt.cliSink) {
+            opt.log.println("I[i,j] = size(I) = [" + I + ", " + J + "]");
+            opt.log.println("All pixel size = " + ((long) I * J));
+        }
+    }
 
-                if (!(r == g && g == b)) isGray = false;
+    // ส่วนที่เหลือหลังได้ histogram ของ luma: applyLut = ใส่ LUT (บนระดับ luma) กับภาพต้นทาง
+    // rgb = histogram R, G, B (ช่องเป็น null ได้)
+    private static Result equalize(int I, int J, int[] h, boolean isGray, int[][] rgb,
+                                   java.util.function.Function<int[], gray_image> applyLut,
+                                   histro_pipeline.Options opt) throws Exception {
+        long T = 0L;
+        for (int i = 0; i < 256; i++) T += (long) i * h[i];
 
-                int gray = (int)(0.299 * r + 0.587 * g + 0.114 * b);
-                if (gray < 0) gray = 0;
-                if (gray > 255) gray = 255;
+        long N = (long) I * J;
+        double mean = T / (double) N;
 
-                h[gray]++;
-                T += gray;
-            }
+        if (opt.cliSink) {
+            opt.log.println("T = " + T);
+            opt.log.println("mean(I) = " + mean);
+            opt.log.println("Check image type: " + (isGray ? "Grayscale" : "Color"));
         }
 
-        double mean = T / (double)(I * J);
-        int N = I * J;
-
-        System.out.println("T = " + T);
-        System.out.println("mean(I) = " + mean);
-        System.out.println("Check image type: " + (isGray ? "Grayscale" : "Color"));
-
         // === PDF / CDF ===
         double[] pdf = new double[256];
         double[] cdf = new double[256];
@@ -56,33 +122,24 @@ public class histogram {
         }
 
         // === Histogram Equalization mapping ===
-        int[] mapEq = new int[256];
-        for (int i = 0; i < 256; i++) {
-            int m = (int) Math.round(255.0 * cdf[i]);
-            if (m < 0) m = 0;
-            if (m > 255) m = 255;
-            mapEq[i] = m;
+        int[] mapEq = equalizationMap(cdf);
+
+        // === สร้างภาพ equalized (LUT บน buffer เทาเดิม ไม่ต้องแปลง RGB ซ้ำ) ===
+        // เก็บระดับที่อ่านกลับได้จาก equalized.png (TYPE_BYTE_GRAY เก็บแบบ linear)
+        // เพื่อให้ขั้น threshold ในหน่วยความจำได้ผลเท่ากับการอ่านไฟล์
+        int[] rt = gray_image.grayRoundTrip();
+        int[] eqLut = new int[256];
+        for (int i = 0; i < 256; i++) eqLut[i] = rt[mapEq[i]];
+        gray_image eq;
+        try (stage_metrics.Span s = opt.span(stage_metrics.Stage.EQUALIZE)) {
+            eq = applyLut.apply(eqLut);
+            s.pixels(N);
         }
-
-        // === สร้างภาพ equalized ===
-        BufferedImage eq = new BufferedImage(J, I, BufferedImage.TYPE_BYTE_GRAY);
-        for (int u = 0; u < I; u++) {
-            for (int v = 0; v < J; v++) {
-                int rgb = img.getRGB(v, u);
-                int r = (rgb >> 16) & 0xFF;
-                int g = (rgb >> 8)  & 0xFF;
-                int b =  rgb        & 0xFF;
-                int gray = (int)(0.299 * r + 0.587 * g + 0.114 * b);
-                if (gray < 0) gray = 0;
-                if (gray > 255) gray = 255;
-
-                int g2 = mapEq[gray];
-                int px = (g2 << 16) | (g2 << 8) | g2;
-                eq.setRGB(v, u, 0xFF000000 | px);
-            }
+        if (opt.writeIntermediates) {
+            if (opt.outDir != null) opt.outDir.mkdirs();
+            File eqFile = opt.writeGray(eq, opt.outDir, "equalized");
+            if (opt.cliSink) opt.log.println("Saved: " + eqFile.getPath());
         }
-        ImageIO.write(eq, "png", new File("equalized.png"));
-        System.out.println("Saved: equalized.png");
 
         // === ฮิสโตแกรมของภาพ equalized (คำนวณแบบเร็วจาก mapping) ===
         int[] hEq = new int[256];
@@ -90,53 +147,101 @@ public class histogram {
             hEq[ mapEq[i] ] += h[i];
         }
 
-        // ====== สร้างโฟลเดอร์สำหรับผลลัพธ์ (.txt) และกราฟ ======
-        File resultDir = new File("histogram_result");
-        if (!resultDir.exists()) resultDir.mkdirs();
+        Result res = new Result(I, J, h, pdf, cdf, mapEq, hEq, T, mean, isGray, eq,
+                                result_extras.NONE.withChannels(rgb[0], rgb[1], rgb[2]));
+        if (opt.cliSink) writeReport(res, opt);
+        if (opt.render) {
+            stage_metrics.Span s = opt.span(stage_metrics.Stage.RENDER);
+            try {
+                drawGraphs(res, opt);
+            } finally {
+                s.close();
+            }
+        }
+        if (opt.cliSink) opt.log.println("\nSaved .txt to folder: result/");
+        if (opt.render) opt.log.println("Saved graphs to folder: graph/");
+        return res;
+    }
 
-        File graphDir = new File("graph/histogram");
-        if (!graphDir.exists()) graphDir.mkdirs();
+    /** กราฟ histogram / CDF จากผลที่คำนวณไว้แล้ว (เรียกทีหลังได้) */
+    public static void render(Result res, histro_pipeline.Options opt) throws Exception {
+        drawGraphs(res, opt);
+        opt.log.println("Saved graphs to folder: graph/");
+    }
+
+    /** mapping ของ equalization: round(255 * cdf) ตัดให้อยู่ใน 0..255 */
+    static int[] equalizationMap(double[] cdf) {
+        int[] mapEq = new int[256];
+        for (int i = 0; i < 256; i++) {
+            int m = (int) Math.round(255.0 * cdf[i]);
+            if (m < 0) m = 0;
+            if (m > 255) m = 255;
+            mapEq[i] = m;
+        }
+        return mapEq;
+    }
+
+    // ===== .txt + กราฟ (CLI sink) =====
+    private static void writeReport(Result res, histro_pipeline.Options opt) throws Exception {
+        int[] h = res.h, hEq = res.hEq;
+        double[] pdf = res.pdf, cdf = res.cdf;
+
+        // ====== สร้างโฟลเดอร์สำหรับผลลัพธ์ (.txt) ======
+        File resultDir = opt.file("histogram_result");
+        if (!resultDir.exists()) resultDir.mkdirs();
 
         // ====== เขียนไฟล์ .txt ======
         // h(i)
-        try (PrintWriter pw = new PrintWriter(new File(resultDir, "histogram.txt"))) {
+        opt.writeText(new File(resultDir, "histogram.txt"), pw -> {
             pw.println("Histogram h(i):");
             for (int i = 0; i < 256; i++) pw.println(i + " : " + h[i]);
-        }
+        });
 
         // pdf(i)
-        try (PrintWriter pw = new PrintWriter(new File(resultDir, "pdf.txt"))) {
+        opt.writeText(new File(resultDir, "pdf.txt"), pw -> {
             pw.println("PDF(i) = h(i) / N:");
             for (int i = 0; i < 256; i++) pw.printf("%d : %.9f%n", i, pdf[i]);
-        }
+        });
 
         // cdf(i)
-        try (PrintWriter pw = new PrintWriter(new File(resultDir, "cdf.txt"))) {
+        opt.writeText(new File(resultDir, "cdf.txt"), pw -> {
             pw.println("CDF(i) = sum_{j<=i} PDF(j):");
             for (int i = 0; i < 256; i++) pw.printf("%d : %.9f%n", i, cdf[i]);
-        }
+        });
 
         // h_eq(i)
-        try (PrintWriter pw = new PrintWriter(new File(resultDir, "histogram_equalized.txt"))) {
+        opt.writeText(new File(resultDir, "histogram_equalized.txt"), pw -> {
             pw.println("Histogram h_eq(i) [equalized]:");
             for (int i = 0; i < 256; i++) pw.println(i + " : " + hEq[i]);
+        });
+
+        // h_R(i), h_G(i), h_B(i)
+        if (res.extras.hR != null) {
+            opt.writeText(new File(resultDir, "histogram_rgb.txt"), pw -> {
+                pw.println("Histogram per channel i : R G B:");
+                for (int i = 0; i < 256; i++) pw.println(i + " : " + res.extras.hR[i] + " " + res.extras.hG[i] + " " + res.extras.hB[i]);
+            });
         }
+    }
+
+    // =================== วาดกราฟ ===================
+    private static void drawGraphs(Result res, histro_pipeline.Options opt) throws Exception {
+        int[] h = res.h, hEq = res.hEq;
+        double[] cdf = res.cdf;
+        File graphDir = opt.file("graph/histogram");
+        if (!graphDir.exists()) graphDir.mkdirs();
 
-        // =================== วาดกราฟ ===================
         int maxOrig = maxOf(h);
         int maxEqH  = maxOf(hEq);
         int yMax = Math.max(maxOrig, maxEqH);
 
-        drawHistogram(h,   new File(graphDir, "histogram.png").getPath(),           "Histogram (Original)",  yMax);
-        drawHistogram(hEq, new File(graphDir, "histogram_equalized.png").getPath(), "Histogram (Equalized)", yMax);
-        drawCDF(cdf,       new File(graphDir, "cdf.png").getPath(),                 "CDF (0-255)");
-
-        System.out.println("\nSaved .txt to folder: result/");
-        System.out.println("Saved graphs to folder: graph/");
+        drawHistogram(h,   new File(graphDir, "histogram.png").getPath(),           "Histogram (Original)",  yMax, opt);
+        drawHistogram(hEq, new File(graphDir, "histogram_equalized.png").getPath(), "Histogram (Equalized)", yMax, opt);
+        drawCDF(cdf,       new File(graphDir, "cdf.png").getPath(),                 "CDF (0-255)", opt);
     }
 
     // ===== helper: วาดฮิสโตแกรมเป็นไฟล์ PNG =====
-    private static void drawHistogram(int[] h, String filename, String title, int fixedYmax) throws Exception {
+    private static void drawHistogram(int[] h, String filename, String title, int fixedYmax, histro_pipeline.Options opt) throws Exception {
         int K = 256, barW = 2, margin = 50;
         int chartW = K * barW, chartH = 300;
         int width = chartW + margin * 2, height = chartH + margin * 2;
@@ -186,11 +291,11 @@ public class histogram {
 
         g2.drawString(title, x0 + chartW/2 - 60, height - 10);
         g2.dispose();
-        ImageIO.write(out, "png", new File(filename));
+        opt.writePng(out, new File(filename));
     }
 
     // ===== helper: วาด CDF (เส้น) เป็นไฟล์ PNG =====
-    private static void drawCDF(double[] cdf, String filename, String title) throws Exception {
+    private static void drawCDF(double[] cdf, String filename, String title, histro_pipeline.Options opt) throws Exception {
         int K = 256, barW = 2, margin = 50;
         int chartW = K * barW, chartH = 300;
         int width = chartW + margin * 2, height = chartH + margin * 2;
@@ -237,7 +342,7 @@ public class histogram {
 
         g2.drawString(title, x0 + chartW/2 - 40, height - 10);
         g2.dispose();
-        ImageIO.write(out, "png", new File(filename));
+        opt.writePng(out, new File(filename));
     }
 
     private static int maxOf(int[] a) {
@@ -0,0 +1,150 @@
+// histro_batch.java
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * รัน histro_pipeline กับภาพจำนวนมาก (ทั้งโฟลเดอร์ หรือไฟล์รายชื่อ) บน thread pool ขนาดคงที่
+ * - backpressure: งานที่ค้าง (กำลังรัน + รอคิว) ไม่เกิน 2 เท่าของจำนวน worker
+ * - ภาพแต่ละภาพเขียนผลลงโฟลเดอร์ของตัวเอง outRoot/&lt;ชื่อไฟล์&gt;/ จึงไม่ทับกัน
+ * - จบด้วยสรุป throughput และรายการที่ล้มเหลวครั้งเดียว
+ */
+public class histro_batch {
+
+    /** สรุปผลทั้ง batch */
+    public static class Summary {
+        public final int total, ok;
+        public final long pixels;
+        public final double seconds;
+        public final List<String> failures;   // "path: error"
+        public Summary(int total, int ok, long pixels, double seconds, List<String> failures) {
+            this.total = total; this.ok = ok; this.pixels = pixels;
+            this.seconds = seconds; this.failures = failures;
+        }
+
+        public void print(PrintStream out) {
+            out.println("== Batch summary ==");
+            out.printf("Images: %d (ok %d, failed %d)%n", total, ok, failures.size());
+            out.printf("Wall time: %.3f s%n", seconds);
+            double s = Math.max(seconds, 1e-9);
+            out.printf("Throughput: %.2f images/s, %.2f MP/s%n", ok / s, pixels / 1e6 / s);
+            if (!failures.isEmpty()) {
+                out.println("Failures:");
+                for (String f : failures) out.println("  " + f);
+            }
+        }
+    }
+
+    /** โฟลเดอร์ -> ไฟล์ภาพทั้งหมด (เรียงชื่อ); ไฟล์อื่น -> รายชื่อ 1 path ต่อบรรทัด (# = comment) */
+    public static List<File> listInputs(File src) throws IOException {
+        List<File> out = new ArrayList<>();
+        if (src.isDirectory()) {
+            Set<String> exts = new HashSet<>();
+            for (String e : ImageIO.getReaderFileSuffixes()) exts.add(e.toLowerCase(Locale.ROOT));
+            exts.add("pgm");   // อ่านผ่าน image_codec
+            exts.add("pbm");
+            File[] files = src.listFiles();
+            if (files == null) throw new IOException("Cannot list directory: " + src);
+            Arrays.sort(files);
+            for (File f : files) {
+                String n = f.getName();
+                int dot = n.lastIndexOf('.');
+                if (f.isFile() && dot > 0 && exts.contains(n.substring(dot + 1).toLowerCase(Locale.ROOT))) out.add(f);
+            }
+        } else {
+            // path แบบ relative อ้างอิงจากโฟลเดอร์ของไฟล์รายชื่อ
+            File base = src.getAbsoluteFile().getParentFile();
+            try (BufferedReader br = new BufferedReader(new FileReader(src))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    File f = new File(line);
+                    out.add(f.isAbsolute() ? f : new File(base, line));
+                }
+            }
+        }
+        return out;
+    }
+
+    /** ชื่อโฟลเดอร์ผลลัพธ์ของแต่ละภาพ: picture.png -> picture_png (ซ้ำกันจะต่อท้าย _2, _3, ...) */
+    static List<String> namespaces(List<File> inputs) {
+        Map<String, Integer> seen = new HashMap<>();
+        List<String> out = new ArrayList<>(inputs.size());
+        for (File f : inputs) {
+            String ns = f.getName().replaceAll("[^A-Za-z0-9_-]", "_");
+            int n = seen.merge(ns, 1, Integer::sum);
+            out.add(n == 1 ? ns : ns + "_" + n);
+        }
+        return out;
+    }
+
+    /**
+     * รันทุกภาพด้วย worker jobs ตัว (<= 0 = ทุก core)
+     * base เป็นต้นแบบของ Options แต่ละงาน (outDir/log จะถูกแทนที่ต่อภาพ)
+     */
+    public static Summary run(List<File> inputs, File outRoot, int jobs,
+                              int T, int T1, int T2, histro_pipeline.Options base) throws InterruptedException {
+        int workers = (jobs <= 0) ? Runtime.getRuntime().availableProcessors() : jobs;
+        List<String> ns = namespaces(inputs);
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+
+        AtomicInteger ok = new AtomicInteger();
+        AtomicLong pixels = new AtomicLong();
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        Semaphore inFlight = new Semaphore(workers * 2);
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "histro-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        long t0 = System.nanoTime();
+        try {
+            for (int k = 0; k < inputs.size(); k++) {
+                final File in = inputs.get(k);
+                final histro_pipeline.Options opt = base.copy();
+                opt.outDir = new File(outRoot, ns.get(k));
+                opt.log = quiet;
+
+                inFlight.acquire();   // คิวเต็ม -> รอจนมีงานเสร็จ
+                pool.execute(() -> {
+                    try {
+                        histro_pipeline.Result r = histro_pipeline.run(in, T, T1, T2, opt);
+                        pixels.addAndGet((long) r.hist.I * r.hist.J);
+                        ok.incrementAndGet();
+                    } catch (Throwable e) {
+                        failures.add(in.getPath() + ": " + e.getClass().getName() + " - " + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        return new Summary(inputs.size(), ok.get(), pixels.get(), seconds, new ArrayList<>(failures));
+    }
+}
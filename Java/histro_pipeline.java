@@ -0,0 +1,363 @@
+// histro_pipeline.java
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.function.Consumer;
+import javax.imageio.ImageIO;
+
+/**
+ * histogram -> threshold -> threshold_between -> image_moment ในหน่วยความจำ
+ * ส่งภาพที่ decode แล้วต่อกันโดยตรง ไม่ต้องเขียน/อ่าน equalized.png หรือ threshold_1.png ซ้ำ
+ */
+public class histro_pipeline {
+
+    /** ตัวเลือกการเขียนไฟล์ของแต่ละขั้น (ค่าเริ่มต้น: คำนวณอย่างเดียว ไม่เขียนอะไรเลย) */
+    public static class Options {
+        /** ภาพกลางทาง: equalized, threshold_0/1, between_0/1 (นามสกุลตาม codec) */
+        public boolean writeIntermediates = false;
+        /** ผลแบบ CLI เดิม: console log และรายงาน .txt */
+        public boolean cliSink = false;
+        /** กราฟ, ภาพ overlay/compare (Graphics2D) — ปิดได้เมื่อใช้แค่ตัวเลข */
+        public boolean render = false;
+        /** จำนวน thread ของ histogram/LUT (<= 0 = ทุก core, 1 = serial) */
+        public int threads = 0;
+        /** โฟลเดอร์รากของผลลัพธ์ทุกไฟล์ (null = working directory แบบเดิม) */
+        public File outDir = null;
+        /** ปลายทางของ console log (batch ใช้ stream เปล่าเพื่อไม่ให้ log หลายภาพปนกัน) */
+        public PrintStream log = System.out;
+        /** เลือก T อัตโนมัติจาก histogram ของภาพ equalized (null = ใช้ T ที่ส่งมา) */
+        public auto_threshold.Method auto = null;
+        /** เลือก T1, T2 ด้วย multi-Otsu แทนค่าที่ส่งมา */
+        public boolean autoBand = false;
+        /** รูปแบบไฟล์ของภาพกลางทาง (ค่าเริ่มต้น PNG ของ ImageIO แบบเดิม) */
+        public image_codec.Config codec = new image_codec.Config();
+        /** เขียนไฟล์ผลลัพธ์เบื้องหลัง (null = เขียนทันทีในขั้นนั้น ๆ แบบเดิม) */
+        public output_writer writer = null;
+        /** บันทึกผลของทุกภาพที่รันผ่าน run(File, ...) เป็นระเบียนลง store (null = ไม่บันทึก) */
+        public result_store results = null;
+        /** เวลา/ทรัพยากรต่อขั้น สะสมรวมทุกภาพ (null = ไม่สะสม; JFR event ยังส่งได้ถ้า recording เปิดไว้) */
+        public stage_metrics metrics = null;
+        /** ผลที่ไม่ขึ้นกับ threshold ของภาพที่เคยรันผ่าน run(File, ...) (null = ไม่ใช้ cache) */
+        public result_cache cache = null;
+        /** ผลเสริมที่เปิดเพิ่มได้ (ผลอยู่ใน Result.extras ของแต่ละขั้น) */
+        public Extras extras = new Extras();
+        // งานเขียนของการรันปัจจุบัน (histro_pipeline ตั้งให้ต่อการรัน)
+        output_writer.Group group = null;
+
+        /** path ของผลลัพธ์ภายใต้ outDir */
+        public File file(String rel) {
+            return new File(outDir, rel);
+        }
+
+        /** เริ่มวัดขั้น s ลง metrics (ใช้กับ try-with-resources) */
+        public stage_metrics.Span span(stage_metrics.Stage s) {
+            return stage_metrics.start(metrics, s);
+        }
+
+        /** เขียน PNG ทันที หรือส่งเข้า writer ถ้ามี (img ห้ามแก้หลังส่ง) */
+        public void writePng(BufferedImage img, File f) throws IOException {
+            run(f, (long) img.getWidth() * img.getHeight(), () -> {
+                if (!ImageIO.write(img, "png", f)) throw new IOException("No PNG writer");
+            });
+        }
+
+        /** mask ตาม codec.mask: name ไม่มีนามสกุล -> คืนไฟล์ที่เขียน (m ห้ามแก้หลังส่ง) */
+        public File writeMask(bit_mask m, File dir, String name) throws IOException {
+            File f = new File(dir, name + codec.mask.ext);
+            image_codec.Config c = codec.copy();
+            run(f, (long) m.width * m.height, () -> image_codec.write(m, f, c));
+            return f;
+        }
+
+        /** ภาพเทาตาม codec.gray (เช่น equalized) เหมือน writeMask */
+        public File writeGray(gray_image g, File dir, String name) throws IOException {
+            File f = new File(dir, name + codec.gray.ext);
+            image_codec.Config c = codec.copy();
+            run(f, (long) g.width * g.height, () -> image_codec.write(g, f, c));
+            return f;
+        }
+
+        /** เนื้อหา .txt สร้างในหน่วยความจำทันที ส่วนการบันทึกไฟล์อาจทำเบื้องหลัง */
+        public void writeText(File f, Consumer<PrintWriter> body) throws IOException {
+            if (group == null) {
+                try (stage_metrics.Span s = span(stage_metrics.Stage.ENCODE)) {
+                    try (PrintWriter pw = new PrintWriter(f)) { body.accept(pw); }
+                    s.written(f.length());
+                }
+                return;
+            }
+            StringWriter sw = new StringWriter();
+            try (PrintWriter pw = new PrintWriter(sw)) { body.accept(pw); }
+            String text = sw.toString();
+            run(f, 0, () -> {
+                try (PrintWriter pw = new PrintWriter(f)) {
+                    pw.print(text);
+                    if (pw.checkError()) throw new IOException("write failed");
+                }
+            });
+        }
+
+        // งานเขียนไฟล์ 1 ชิ้น (ทันที หรือบน writer) นับเป็นขั้น encode บน thread ที่ลงมือเขียน
+        private void run(File f, long pixels, output_writer.io_task write) throws IOException {
+            stage_metrics m = metrics;
+            output_writer.io_task t = () -> {
+                try (stage_metrics.Span s = stage_metrics.start(m, stage_metrics.Stage.ENCODE)) {
+                    write.run();
+                    s.pixels(pixels).written(f.length());
+                }
+            };
+            if (group == null) t.run();
+            else group.submit(f, t);
+        }
+
+        public Options copy() {
+            Options o = new Options();
+            o.writeIntermediates = writeIntermediates;
+            o.cliSink = cliSink;
+            o.render = render;
+            o.threads = threads;
+            o.outDir = outDir;
+            o.log = log;
+            o.auto = auto;
+            o.autoBand = autoBand;
+            o.codec = codec.copy();
+            o.writer = writer;
+            o.results = results;
+            o.metrics = metrics;
+            o.cache = cache;
+            o.extras = extras.copy();
+            o.group = group;
+            return o;
+        }
+
+        /** ตัวเลือกของผลเสริม: ค่าเริ่มต้นปิดทั้งหมด (ช่องที่ได้ใน result_extras เป็น null) */
+        public static class Extras {
+            /** นับ histogram ของ R, G, B ไปพร้อมกับ luma (histogram.Result.extras.hR/hG/hB) */
+            public boolean channelHistograms = false;
+            /** threshold หลายระดับของขั้น threshold_multi บนภาพ equalized (null = ข้ามขั้นนี้) */
+            public int[] levels = null;
+            /** connected components ของ threshold_1 ในขั้น threshold: 4 หรือ 8 ทิศ (0 = ข้าม) */
+            public int components = 0;
+            /** threshold เก็บ mask แบบ run-length (rle_mask) แล้ววัด geoprops/moments จาก run; bit_mask สร้างเมื่อต้องเขียน/วาด */
+            public boolean rleMasks = false;
+            /** ROI {i0, j0, i1, j1, ...} ที่ตอบจาก summed_area ของ equalized + threshold_1 (null = ข้าม) */
+            public int[] rois = null;
+
+            public Extras copy() {
+                Extras e = new Extras();
+                e.channelHistograms = channelHistograms;
+                e.levels = levels;
+                e.components = components;
+                e.rleMasks = rleMasks;
+                e.rois = rois;
+                return e;
+            }
+        }
+
+        /** พฤติกรรมเดียวกับการรัน main ของแต่ละคลาส */
+        public static Options cli() {
+            Options o = new Options();
+            o.writeIntermediates = true;
+            o.cliSink = true;
+            o.render = true;
+            return o;
+        }
+
+        /** console + รายงาน .txt อย่างเดียว ไม่วาดภาพ/กราฟ และไม่เขียน PNG ใด ๆ */
+        public static Options metricsOnly() {
+            Options o = new Options();
+            o.cliSink = true;
+            return o;
+        }
+    }
+
+    /** ผลรวมของทุกขั้น */
+    public static class Result {
+        public final histogram.Result hist;
+        public final threshold.Result single;
+        public final threshold_between.Result band;
+        public final image_moment.Result moments;
+        public final result_extras extras;           // multi (opt.extras.levels), rois (opt.extras.rois)
+        public Result(histogram.Result hist, threshold.Result single,
+                      threshold_between.Result band, image_moment.Result moments) {
+            this(hist, single, band, moments, result_extras.NONE);
+        }
+        public Result(histogram.Result hist, threshold.Result single, threshold_between.Result band,
+                      image_moment.Result moments, result_extras extras) {
+            this.hist = hist; this.single = single; this.band = band; this.moments = moments; this.extras = extras;
+        }
+    }
+
+    /**
+     * PGM (P5, maxval 255) -> map ไฟล์แล้วรันบน mapping; รูปแบบอื่น decode เป็น BufferedImage
+     * opt.results != null -> บันทึกผลลง store โดยใช้ path ของ input เป็นชื่อภาพ
+     * opt.cache != null -> ภาพที่เคยรันแล้ว (เนื้อไฟล์เดียวกัน) ข้าม decode + histogram + equalization
+     */
+    public static Result run(File input, int T, int T1, int T2, Options opt) throws Exception {
+        Result r;
+        String key = null;
+        result_cache.Entry hit = null;
+        if (opt.cache != null) {
+            try (stage_metrics.Span s = opt.span(stage_metrics.Stage.DECODE)) {
+                key = result_cache.key(input);
+                hit = opt.cache.get(key, opt.extras.channelHistograms);
+                s.read(input.length());
+            }
+        }
+        if (hit != null) {
+            result_cache.Entry e = hit;
+            r = flushed(opt, o -> runStages(o2 -> histogram.run(e, o2), e.sweep, null, T, T1, T2, o));
+        } else if (mapped_gray.canMap(input)) {
+            mapped_gray m;
+            // map อย่างเดียว พิกเซลถูกอ่านจริงในขั้น histogram
+            stage_metrics.Span s = opt.span(stage_metrics.Stage.DECODE);
+            try {
+                m = mapped_gray.open(input);
+            } finally {
+                s.close();
+            }
+            final String k = key;
+            try (mapped_gray src = m) {
+                r = flushed(opt, o -> runStages(o2 -> histogram.run(src, o2), null, k, T, T1, T2, o));
+            }
+        } else {
+            BufferedImage src;
+            try (stage_metrics.Span s = opt.span(stage_metrics.Stage.DECODE)) {
+                src = image_codec.read(input);
+                if (src == null) throw new IllegalArgumentException("Cannot read image: " + input);
+                s.pixels((long) src.getWidth() * src.getHeight()).read(input.length());
+            }
+            final String k = key;
+            r = flushed(opt, o -> runStages(o2 -> histogram.run(src, o2), null, k, T, T1, T2, o));
+        }
+        if (opt.results != null) opt.results.add(input.getPath(), r);
+        return r;
+    }
+
+    public static Result run(BufferedImage src, int T, int T1, int T2, Options opt) throws Exception {
+        return flushed(opt, o -> runStages(o2 -> histogram.run(src, o2), null, null, T, T1, T2, o));
+    }
+
+    /** ภาพเทาที่ map จากไฟล์ PGM/RAW: histogram + LUT อ่านจาก mapping ตรง ๆ ภาพบน heap มีแค่ equalized */
+    public static Result run(mapped_gray src, int T, int T1, int T2, Options opt) throws Exception {
+        return flushed(opt, o -> runStages(o2 -> histogram.run(src, o2), null, null, T, T1, T2, o));
+    }
+
+    @FunctionalInterface
+    private interface stage<R> {
+        R run(Options o) throws Exception;
+    }
+
+    // มี writer -> งานเขียนของการรันนี้อยู่ใน group เดียว แล้วรอให้เสร็จก่อนคืนผล (error ของการเขียนโยนต่อ)
+    private static <R> R flushed(Options opt, stage<R> body) throws Exception {
+        if (opt.writer == null || opt.group != null) return body.run(opt);
+        Options o = opt.copy();
+        o.group = opt.writer.group();
+        R r;
+        try {
+            r = body.run(o);
+        } catch (Exception e) {
+            try { o.group.await(); } catch (IOException w) { e.addSuppressed(w); }
+            throw e;
+        }
+        o.group.await();
+        return r;
+    }
+
+    // sweep = ตาราง geoprops ของภาพ equalized จาก cache (null -> วัดจาก mask)
+    // cacheKey != null -> สร้าง sweep จากภาพ equalized แล้วเก็บผลลง opt.cache
+    private static Result runStages(stage<histogram.Result> hist, geopros_sweep sweep, String cacheKey,
+                                    int T, int T1, int T2, Options opt) throws Exception {
+        // 1) Histogram + Equalization
+        if (opt.cliSink) opt.log.println("== Step 1: histogram ==");
+        histogram.Result hr = hist.run(opt);
+        if (cacheKey != null) {
+            // สแกนภาพ equalized รอบเดียวแทน measureBoth สองครั้งของขั้น threshold
+            try (stage_metrics.Span s = opt.span(stage_metrics.Stage.GEOPROPS)) {
+                sweep = geopros_sweep.of(hr.eq);
+                s.pixels((long) hr.I * hr.J);
+            }
+            opt.cache.put(cacheKey, result_cache.Entry.of(hr, sweep));
+        }
+
+        // threshold อัตโนมัติจาก histogram ของ equalized (O(256) ไม่ต้องสแกนภาพ)
+        if (opt.auto != null || opt.autoBand) {
+            int[] he = equalizedHistogram(hr);
+            if (opt.auto != null) {
+                T = auto_threshold.single(opt.auto, he);
+                if (opt.cliSink) opt.log.println("Auto threshold (" + opt.auto.name().toLowerCase() + "): T = " + T);
+            }
+            if (opt.autoBand) {
+                int[] tt = auto_threshold.multiOtsu(he);
+                T1 = tt[0]; T2 = tt[1];
+                if (opt.cliSink) opt.log.println("Auto band (multi-Otsu): T1 = " + T1 + ", T2 = " + T2);
+            }
+        }
+
+        // 2) Single threshold บนภาพ equalized (ในหน่วยความจำ)
+        if (opt.cliSink) opt.log.println("\n== Step 2: threshold (single) ==");
+        String eqName = "equalized" + opt.codec.gray.ext;
+        threshold.Result tr = threshold.run(hr.eq, sweep, eqName, T, opt);
+
+        // 2b) ROI: summed-area table ของ equalized + mask gray>=T สร้างครั้งเดียว แล้วตอบทุก ROI ใน O(1)
+        result_extras extras = result_extras.NONE;
+        if (opt.extras.rois != null) {
+            summed_area.Region[] rois;
+            try (stage_metrics.Span s = opt.span(stage_metrics.Stage.GEOPROPS)) {
+                rois = summed_area.of(hr.eq, tr.T).query(opt.extras.rois);
+                s.pixels((long) hr.I * hr.J);
+            }
+            if (opt.cliSink) summed_area.writeReport(rois, tr.T, opt);
+            extras = extras.withRois(rois);
+        }
+
+        // 3) Double threshold บนภาพ equalized
+        if (opt.cliSink) opt.log.println("\n== Step 3: threshold_between (double) ==");
+        threshold_between.Result br = threshold_between.run(hr.eq, sweep, eqName, T1, T2, opt);
+
+        // 3b) Multi threshold (label map) ถ้าสั่งไว้
+        if (opt.extras.levels != null) {
+            if (opt.cliSink) opt.log.println("\n== Step 3b: threshold_multi (label map) ==");
+            extras = extras.withMulti(threshold_multi.run(hr.eq, eqName, opt.extras.levels, opt));
+        }
+
+        // 4) Image Moment บนผล single-threshold
+        if (opt.cliSink) opt.log.println("\n== Step 4: image_moment (on single-threshold result) ==");
+        rle_mask rleOne = tr.extras.rle;
+        image_moment.Result mr = (rleOne != null) ? image_moment.run(rleOne, opt) : image_moment.run(tr.thrOne, opt);
+
+        return new Result(hr, tr, br, mr, extras);
+    }
+
+    /**
+     * ขั้นวาดภาพแยกจากการคำนวณ: กราฟ/overlay/compare ของผลที่ได้จาก run(...) ด้วย render = false
+     * ใช้ภาพ equalized และ mask ในหน่วยความจำ ไม่ต้องอ่านไฟล์ใด ๆ
+     */
+    public static void render(Result r, Options opt) throws Exception {
+        flushed(opt, o -> {
+            stage_metrics.Span s = o.span(stage_metrics.Stage.RENDER);
+            try {
+                BufferedImage eq = r.hist.eq.toBufferedImage();
+                histogram.render(r.hist, o);
+                threshold.render(r.single, eq, o);
+                threshold_between.render(r.band, eq, o);
+                if (r.extras.multi != null) threshold_multi.render(r.extras.multi, o);
+                image_moment.render(r.moments, r.single.one().toBufferedImage(), o);
+            } finally {
+                s.close();
+            }
+            return null;
+        });
+    }
+
+    /** histogram ของภาพ hr.eq (ระดับหลัง round-trip) จาก h และ mapEq โดยตรง */
+    static int[] equalizedHistogram(histogram.Result hr) {
+        int[] rt = gray_image.grayRoundTrip();
+        int[] he = new int[256];
+        for (int i = 0; i < 256; i++) he[rt[hr.mapEq[i]]] += hr.h[i];
+        return he;
+    }
+}
@@ -0,0 +1,179 @@
+// histro_stream.java
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * histogram -> equalize -> threshold / threshold_between -> geopros + image_moment แบบอ่านทีละแถบแถว
+ * ผ่าน ImageReader.setSourceRegion (PGM/RAW: อ่านจาก mapping ของไฟล์) หน่วยความจำสูงสุดขึ้นกับขนาดแถบ ไม่ใช่ขนาดภาพ
+ * PNG ใช้ไม่ได้: reader ต้อง inflate ไฟล์ตั้งแต่ต้นทุกครั้งที่อ่านแถบ (เวลาเป็นกำลังสองของจำนวนแถบ) -> แปลงเป็น PGM ก่อน
+ *
+ * equalization ต้องรู้ histogram ของทั้งภาพก่อน จึงอ่าน 2 รอบ:
+ * รอบ 1 นับ histogram, รอบ 2 ใส่ LUT + threshold + สะสม geoprops/moment ทีละแถบ
+ * ผลเท่ากับ histro_pipeline (ตัวเลขเท่านั้น ไม่มีภาพ/กราฟ)
+ */
+public class histro_stream {
+
+    /** แถบละราว ๆ นี้ (พิกเซล) ถ้าไม่ได้ระบุจำนวนแถว */
+    public static final int DEFAULT_STRIP_PIXELS = 1 << 24;
+
+    public static class Result {
+        public final int I, J;
+        public final long[] h;            // histogram ของภาพต้นฉบับ (luma)
+        public final int[] mapEq;
+        public final long[] hEqImage;     // histogram ของภาพ equalized (ระดับที่ threshold เห็น)
+        public final int T, T1, T2;
+        public final long countWhite, countBlack, countIn, countOut;
+        public final geopros.Result oneWhite, zeroBlack, whiteIn, outBlack;
+        public final image_moment.Result moments;   // บน threshold_1
+        public final int strips;
+        public Result(int I, int J, long[] h, int[] mapEq, long[] hEqImage, int T, int T1, int T2,
+                      geopros.BothResult single, geopros.BothResult band,
+                      image_moment.Result moments, int strips) {
+            this.I = I; this.J = J; this.h = h; this.mapEq = mapEq; this.hEqImage = hEqImage;
+            this.T = T; this.T1 = T1; this.T2 = T2;
+            this.oneWhite = single.white; this.zeroBlack = single.black;
+            this.whiteIn = band.white; this.outBlack = band.black;
+            this.countWhite = oneWhite.area; this.countBlack = zeroBlack.area;
+            this.countIn = whiteIn.area; this.countOut = outBlack.area;
+            this.moments = moments; this.strips = strips;
+        }
+
+        public void print(PrintStream out) {
+            out.println("Size: [" + I + ", " + J + "]  strips=" + strips);
+            out.printf("[threshold_1] T=%d WHITE(1) area=%d, centroid=(%.3f, %.3f)%n",
+                    T, oneWhite.area, oneWhite.cx, oneWhite.cy);
+            out.printf("[threshold_0] T=%d BLACK(0) area=%d, centroid=(%.3f, %.3f)%n",
+                    T, zeroBlack.area, zeroBlack.cx, zeroBlack.cy);
+            out.printf("[between_1] T1=%d T2=%d IN area=%d, centroid=(%.3f, %.3f)%n",
+                    T1, T2, whiteIn.area, whiteIn.cx, whiteIn.cy);
+            out.printf("[between_0] T1=%d T2=%d OUT area=%d, centroid=(%.3f, %.3f)%n",
+                    T1, T2, outBlack.area, outBlack.cx, outBlack.cy);
+            out.printf("[image_moment] M00=%.0f  centroid=(%.6f, %.6f)%n", moments.M00, moments.xbar, moments.ybar);
+            for (int k = 0; k < 7; k++) out.printf("  phi%d = %.12e%n", k + 1, moments.hu[k]);
+        }
+    }
+
+    // แถบ y..y+n-1 เป็น luma แบบ histogram (เรียกซ้ำตามลำดับแถบ; ผลใช้ได้จนถึงการเรียกครั้งถัดไป)
+    @FunctionalInterface
+    private interface strip_reader {
+        gray_image luma(int y, int n) throws IOException;
+    }
+
+    /** stripRows <= 0 -> เลือกจาก DEFAULT_STRIP_PIXELS; PGM (maxval 255) อ่านแถบจาก mapping แทน ImageReader */
+    public static Result run(File input, int T, int T1, int T2,
+                             histro_pipeline.Options opt, int stripRows) throws IOException {
+        if (mapped_gray.canMap(input)) {
+            try (mapped_gray m = mapped_gray.open(input)) { return run(m, T, T1, T2, opt, stripRows); }
+        }
+        try (ImageInputStream iis = ImageIO.createImageInputStream(input)) {
+            if (iis == null) throw new IllegalArgumentException("Cannot read image: " + input);
+            Iterator<ImageReader> it = ImageIO.getImageReaders(iis);
+            if (!it.hasNext()) throw new IllegalArgumentException("Cannot read image: " + input);
+            ImageReader reader = it.next();
+            try {
+                if ("png".equalsIgnoreCase(reader.getFormatName()))
+                    throw new IllegalArgumentException("--stream does not support PNG (every strip re-inflates the file): "
+                                                       + input + "; convert it to PGM first or run without --stream");
+                reader.setInput(iis, false, true);
+                final int J = reader.getWidth(0);
+                return run(J, reader.getHeight(0), (y, n) -> gray_image.luma(readStrip(reader, y, n, J)),
+                           T, T1, T2, opt, stripRows);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** ภาพเทาที่ map จากไฟล์ PGM/RAW: แต่ละแถบคัดลอกจาก mapping ลง buffer เดียวที่ใช้ซ้ำ */
+    public static Result run(mapped_gray src, int T, int T1, int T2,
+                             histro_pipeline.Options opt, int stripRows) throws IOException {
+        final int J = src.width;
+        final int rows = rowsPerStrip(J, stripRows);
+        final byte[] scratch = new byte[Math.min(rows, src.height) * J];
+        // luma ของพิกเซลเทา v คือ v -> ใช้แถบจาก mapping ตรง ๆ
+        return run(J, src.height, (y, n) -> src.strip(y, n, scratch), T, T1, T2, opt, stripRows);
+    }
+
+    private static Result run(int J, int I, strip_reader src, int T, int T1, int T2,
+                              histro_pipeline.Options opt, int stripRows) throws IOException {
+        final int rows = rowsPerStrip(J, stripRows);
+        final int strips = (I + rows - 1) / rows;
+        if (opt.cliSink) opt.log.println("Streaming: [" + I + ", " + J + "] in " + strips + " strips of " + rows + " rows");
+
+        // ===== รอบ 1: histogram ของ luma =====
+        long[] h = new long[256];
+        for (int y = 0; y < I; y += rows) {
+            gray_image g = src.luma(y, Math.min(rows, I - y));
+            int[] hs = parallel_histogram.histogram(g, opt.threads);
+            for (int k = 0; k < 256; k++) h[k] += hs[k];
+        }
+
+        // ===== equalization LUT (เหมือน histogram.run) =====
+        long N = (long) I * J;
+        double[] cdf = new double[256];
+        for (int i = 0; i < 256; i++) {
+            double pdf = (double) h[i] / N;
+            cdf[i] = (i == 0) ? pdf : (cdf[i - 1] + pdf);
+        }
+        int[] mapEq = histogram.equalizationMap(cdf);
+        int[] rt = gray_image.grayRoundTrip();
+        int[] eqLut = new int[256];
+        long[] he = new long[256];
+        for (int i = 0; i < 256; i++) {
+            eqLut[i] = rt[mapEq[i]];
+            he[eqLut[i]] += h[i];
+        }
+
+        if (opt.auto != null) {
+            T = auto_threshold.single(opt.auto, he);
+            if (opt.cliSink) opt.log.println("Auto threshold (" + opt.auto.name().toLowerCase() + "): T = " + T);
+        }
+        if (opt.autoBand) {
+            int[] tt = auto_threshold.multiOtsu(he);
+            T1 = tt[0]; T2 = tt[1];
+            if (opt.cliSink) opt.log.println("Auto band (multi-Otsu): T1 = " + T1 + ", T2 = " + T2);
+        }
+        T = Math.max(0, Math.min(255, T));
+        int[] band = threshold_between.band(T1, T2, opt);
+        T1 = band[0]; T2 = band[1];
+
+        // ===== รอบ 2: LUT -> mask ของทั้งสอง threshold -> สะสม geoprops / moment =====
+        geopros.Accumulator single = new geopros.Accumulator(), between = new geopros.Accumulator();
+        moment_sums.Accumulator moments = new moment_sums.Accumulator();
+        for (int y = 0; y < I; y += rows) {
+            gray_image g = src.luma(y, Math.min(rows, I - y));
+            gray_image eq = parallel_histogram.applyLut(g, eqLut, opt.threads);
+            bit_mask one = bit_mask.range(eq, T, 255, null);
+            single.add(one, y);
+            moments.add(one, y);
+            between.add(bit_mask.range(eq, T1, T2, null), y);
+        }
+
+        Result res = new Result(I, J, h, mapEq, he, T, T1, T2, single.both(), between.both(),
+                                image_moment.of(moments.build()), strips);
+        if (opt.cliSink) res.print(opt.log);
+        return res;
+    }
+
+    // แถวต่อแถบ; แถบหนึ่งต้องอยู่ใน byte[] เดียวได้ (ทั้งภาพเกิน 2^31 พิกเซลได้ แต่แถบไม่ได้)
+    private static int rowsPerStrip(int J, int stripRows) {
+        int rows = (stripRows > 0) ? stripRows : Math.max(1, DEFAULT_STRIP_PIXELS / Math.max(1, J));
+        if ((long) rows * J > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Strip of " + rows + " rows x " + J + " pixels is too large; use a smaller --stream=ROWS");
+        return rows;
+    }
+
+    private static BufferedImage readStrip(ImageReader reader, int y, int n, int J) throws IOException {
+        ImageReadParam p = reader.getDefaultReadParam();
+        p.setSourceRegion(new Rectangle(0, y, J, n));
+        return reader.read(0, p);
+    }
+}
@@ -1,40 +1,188 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
 public class histro_threshold {
 
     public static void main(String[] args) {
         // args optional:
-        // args[0] = input image (default: "picture.png") -> ใช้โดย histogram ถ้ารองรับ
+        // args[0] = input image (default: "picture.png")
         // args[1] = T  (for threshold, default: 128)
         // args[2] = T1 (for threshold_between, default: 85)
         // args[3] = T2 (for threshold_between, default: 170)
+        // options (ที่ตำแหน่งใดก็ได้):
+        // --threads=N   thread ของ histogram (0 = ทุก core, 1 = serial; batch ค่าเริ่มต้น 1)
+        // --out=DIR     โฟลเดอร์รากของผลลัพธ์ (default: working directory)
+        // --batch=PATH  โฟลเดอร์ภาพ หรือไฟล์รายชื่อภาพ; ตอนนี้ args = [T] [T1] [T2]
+        // --jobs=N      จำนวนภาพที่รันพร้อมกันใน batch (default: ทุก core)
+        // --auto=M      เลือก T (otsu|triangle) และ T1/T2 (multi-Otsu) อัตโนมัติ
+        //               เฉพาะค่าที่ไม่ได้ระบุตามตำแหน่ง
+        // --stream[=ROWS] อ่านภาพทีละแถบ (ภาพใหญ่เกิน heap) พิมพ์ผลตัวเลขอย่างเดียว; ไม่รับ PNG (ใช้ PGM/RAW)
+        // --metrics-only  คำนวณ + console + รายงาน .txt เท่านั้น (ไม่วาดกราฟ/ภาพ ไม่เขียน PNG)
+        // --writers=N   thread ที่ encode/เขียนไฟล์ผลลัพธ์เบื้องหลัง (0 = เขียนทันทีแบบเดิม, default: ครึ่งหนึ่งของ core)
+        // --mask-format=F  รูปแบบ threshold_0/1, between_0/1: png|pbm|pgm|raw (default: png)
+        // --gray-format=F  รูปแบบ equalized: png|pgm|raw (default: png)
+        // --png-level=N    deflate 0..9 ด้วย encoder ภายใน (default: ImageIO แบบเดิม)
+        // --png-filter=F   none|sub|up|avg|paeth|adaptive (ใช้กับ --png-level, default: up)
+        // --raw=WxH     ภาพ input เป็น RAW เทา 8 บิต ขนาด W x H (map ไฟล์ตรง ๆ; PGM ตรวจจาก header เอง)
+        // --rgb-hist    นับ histogram ของ R, G, B ในรอบเดียวกับ luma -> histogram_result/histogram_rgb.txt
+        // --results=FILE  บันทึกผลตัวเลขของทุกภาพเป็นระเบียน: .jsonl|.csv|.bin (batch: แทนรายงาน .txt ต่อภาพ)
+        // --metrics[=FILE] ตารางเวลา/CPU/alloc/throughput ต่อขั้นตอนจบ (FILE -> เขียน JSON ด้วย)
+        //               JFR event "histro.Stage" ส่งเสมอเมื่อรันด้วย -XX:StartFlightRecording
+        // --cache[=DIR] ภาพเดิม (เนื้อไฟล์เดียวกัน) ข้าม decode + equalization; DIR -> เก็บลงดิสก์ข้ามการรันด้วย
+        // --cache-mb=N  งบ cache ในหน่วยความจำ (default: 256)
+        // --components[=4|8]  connected components ของ threshold_1 (default: 8 ทิศ) -> components.txt
+        // --rle-masks  threshold เก็บ mask แบบ run-length แล้ววัด geoprops/moments จาก run
+        // --rois=FILE  ROI บรรทัดละ "i0 j0 i1 j1": area/centroid ของ threshold_1 และค่าเฉลี่ยเทาต่อ ROI -> roi_report.txt
+        // --levels=T1,T2,...  ขั้น threshold_multi: label map K+1 class + geoprops ต่อ class
+
+        histro_pipeline.Options opt = histro_pipeline.Options.cli();
+        String batch = null;
+        int jobs = 0;
+        boolean threadsSet = false;
+        auto_threshold.Method auto = null;
+        int stream = -1;   // < 0 = ไม่ใช้, 0 = ขนาดแถบอัตโนมัติ
+        int writers = -1;  // < 0 = อัตโนมัติ
+        int[] raw = null;  // {W, H} ของ --raw
+        File results = null;
+        File metricsJson = null;
+        boolean cache = false;
+        File cacheDir = null;
+        long cacheMb = 256;
+        List<String> pos = new ArrayList<>();
+        for (String a : args) {
+            if (a.startsWith("--threads=")) { opt.threads = parseOrDefault(a.substring(10), 0); threadsSet = true; }
+            else if (a.startsWith("--out=")) opt.outDir = new File(a.substring(6));
+            else if (a.startsWith("--batch=")) batch = a.substring(8);
+            else if (a.startsWith("--jobs=")) jobs = parseOrDefault(a.substring(7), 0);
+            else if (a.equals("--metrics-only")) {
+                opt.writeIntermediates = false;
+                opt.render = false;
+                System.setProperty("java.awt.headless", "true");
+            }
+            else if (a.startsWith("--writers=")) writers = Math.max(0, parseOrDefault(a.substring(10), 0));
+            else if (a.startsWith("--raw=")) {
+                raw = parseSize(a.substring(6));
+                if (raw == null) System.out.println("Invalid --raw size '" + a.substring(6) + "' (use WxH)");
+            }
+            else if (a.equals("--rgb-hist")) opt.extras.channelHistograms = true;
+            else if (a.startsWith("--results=")) results = new File(a.substring(10));
+            else if (a.startsWith("--levels=")) {
+                try {
+                    String[] parts = a.substring(9).split(",");
+                    int[] lv = new int[parts.length];
+                    for (int k = 0; k < parts.length; k++) lv[k] = Integer.parseInt(parts[k].trim());
+                    threshold_multi.normalize(lv);   // ตรวจจำนวนก่อนเริ่มรัน
+                    opt.extras.levels = lv;
+                } catch (IllegalArgumentException e) {   // รวม NumberFormatException
+                    System.out.println("Invalid --levels '" + a.substring(9) + "' (use T1,T2,...; at most "
+                                       + threshold_multi.MAX_THRESHOLDS + " distinct values)");
+                }
+            }
+            else if (a.equals("--rle-masks")) opt.extras.rleMasks = true;
+            else if (a.startsWith("--rois=")) {
+                try { opt.extras.rois = summed_area.readRects(new File(a.substring(7))); }
+                catch (IOException | IllegalArgumentException e) { System.out.println("Invalid --rois: " + e.getMessage()); }
+            }
+            else if (a.equals("--components")) opt.extras.components = 8;
+            else if (a.startsWith("--components=")) {
+                int c = parseOrDefault(a.substring(13), 0);
+                if (c == 4 || c == 8) opt.extras.components = c;
+                else System.out.println("Invalid --components '" + a.substring(13) + "' (use 4 or 8)");
+            }
+            else if (a.equals("--cache")) cache = true;
+            else if (a.startsWith("--cache=")) { cache = true; cacheDir = new File(a.substring(8)); }
+            else if (a.startsWith("--cache-mb=")) cacheMb = Math.max(0, parseOrDefault(a.substring(11), 256));
+            else if (a.equals("--metrics")) opt.metrics = new stage_metrics();
+            else if (a.startsWith("--metrics=")) { opt.metrics = new stage_metrics(); metricsJson = new File(a.substring(10)); }
+            else if (a.equals("--stream")) stream = 0;
+            else if (a.startsWith("--stream=")) stream = Math.max(0, parseOrDefault(a.substring(9), 0));
+            else if (a.startsWith("--mask-format=") || a.startsWith("--gray-format=")
+                     || a.startsWith("--png-level=") || a.startsWith("--png-filter=")) {
+                try { codecOption(opt.codec, a); }
+                catch (IllegalArgumentException e) { System.out.println(e.getMessage()); }
+            }
+            else if (a.startsWith("--auto=")) {
+                try { auto = auto_threshold.Method.parse(a.substring(7)); }
+                catch (IllegalArgumentException e) { System.out.println(e.getMessage()); }
+            }
+            else if (a.startsWith("--")) System.out.println("Unknown option: " + a);
+            else pos.add(a);
+        }
+        if (cache) opt.cache = new result_cache(cacheDir, cacheMb << 20);
+        if (batch != null) pos.add(0, batch);   // ให้ตำแหน่งของ T, T1, T2 เหมือนโหมดภาพเดียว
+        args = pos.toArray(new String[0]);
+        if (auto != null) {
+            if (args.length < 2) opt.auto = auto;
+            if (args.length < 4) opt.autoBand = true;
+        }
 
         final String T  = (args.length >= 2) ? args[1] : "128";
         final String T1 = (args.length >= 3) ? args[2] : "85";
         final String T2 = (args.length >= 4) ? args[3] : "170";
 
+        final String in = (args.length >= 1) ? args[0] : "picture.png";
+
+        // encode/เขียนไฟล์บน pool เบื้องหลัง; error ของการเขียนกลับมาที่ catch ด้านล่างตอนจบแต่ละภาพ
+        output_writer writer = (writers == 0) ? null : new output_writer(writers);
+        opt.writer = writer;
         try {
-            // 1) Histogram + Equalization -> "equalized.png"
-            System.out.println("== Step 1: histogram ==");
-            if (args.length >= 1) {
-                histogram.main(new String[] { args[0] });
-            } else {
-                histogram.main(new String[0]);
+            if (results != null) {
+                if (stream >= 0) System.out.println("--results is ignored with --stream");
+                else opt.results = result_store.open(results);
+            }
+            if (batch != null) {
+                // ขนานกันที่ระดับภาพ: แต่ละภาพใช้ histogram แบบ serial ถ้าไม่ได้สั่ง --threads
+                if (!threadsSet) opt.threads = 1;
+                // ตัวเลขของทุกภาพไปที่ store ไฟล์เดียว ไม่ต้องเขียนรายงาน .txt แยกต่อภาพ
+                if (opt.results != null) opt.cliSink = false;
+                File outRoot = (opt.outDir != null) ? opt.outDir : new File("batch_result");
+                List<File> inputs = histro_batch.listInputs(new File(batch));
+                System.out.println("Batch: " + inputs.size() + " images -> " + outRoot.getPath());
+                histro_batch.Summary sum = histro_batch.run(inputs, outRoot, jobs,
+                        parseOrDefault(T, 128), parseOrDefault(T1, 85), parseOrDefault(T2, 170), opt);
+                sum.print(System.out);
+                if (opt.results != null) {
+                    opt.results.close();
+                    System.out.println("Results: " + opt.results.count() + " records -> " + results.getPath());
+                }
+                return;
             }
 
-            // 2) Single threshold บน equalized.png
-            System.out.println("\n== Step 2: threshold (single) ==");
-            threshold.main(new String[] { "equalized.png", T });
-
-            // 3) Double threshold บน equalized.png
-            System.out.println("\n== Step 3: threshold_between (double) ==");
-            threshold_between.main(new String[] { "equalized.png", T1, T2 });
-
-            // 4) Image Moment บนผล single-threshold
-            System.out.println("\n== Step 4: image_moment (on single-threshold result) ==");
-            image_moment.main(new String[0]);
+            if (raw != null) {
+                try (mapped_gray src = mapped_gray.openRaw(new File(in), raw[0], raw[1])) {
+                    if (stream >= 0) {
+                        histro_stream.run(src,
+                                parseOrDefault(T, 128), parseOrDefault(T1, 85), parseOrDefault(T2, 170), opt, stream);
+                        return;
+                    }
+                    histro_pipeline.Result r = histro_pipeline.run(src,
+                            parseOrDefault(T, 128), parseOrDefault(T1, 85), parseOrDefault(T2, 170), opt);
+                    if (opt.results != null) opt.results.add(in, r);
+                }
+            } else if (stream >= 0) {
+                histro_stream.run(new File(in),
+                        parseOrDefault(T, 128), parseOrDefault(T1, 85), parseOrDefault(T2, 170), opt, stream);
+                return;
+            } else {
+                // ทุกขั้นส่งภาพต่อกันในหน่วยความจำ; ผลลัพธ์ไฟล์เหมือนเดิมผ่าน Options.cli()
+                histro_pipeline.run(new File(in),
+                        parseOrDefault(T, 128), parseOrDefault(T1, 85), parseOrDefault(T2, 170), opt);
+            }
 
             System.out.println("\nAll done.");
-            System.out.println("Outputs:");
-            System.out.println("- equalized.png (from histogram)");
+            System.out.println("Outputs" + (opt.outDir != null ? " (in " + opt.outDir.getPath() + ")" : "") + ":");
+            if (opt.results != null) System.out.println("- " + results.getPath() + " (structured results)");
+            if (!opt.render) {
+                System.out.println("- histogram_result/*.txt");
+                System.out.println("- threshold_result/.../txt_result/*.txt");
+                System.out.println("- image_moment/txt_output/moment_report.txt");
+                return;
+            }
+            System.out.println("- equalized" + opt.codec.gray.ext + " (from histogram)");
             System.out.println("- threshold_result/... (single & double)");
             System.out.println("- graph/... (histogram & threshold graphs)");
             System.out.println("- image_moment/picture_output/{raw_moment.png, central_moment.png, hu_moment.png}");
@@ -44,6 +192,58 @@ public class histro_threshold {
             // ✅ แก้ตรงนี้: แสดงข้อความ + printStackTrace
             System.err.println("Pipeline error: " + e.getClass().getName() + " - " + e.getMessage());
             e.printStackTrace(System.err);
+        } finally {
+            if (writer != null) {
+                // งานเขียนค้างต้องเสร็จก่อนสรุป metrics ของขั้น encode
+                try { writer.close(); } catch (IOException e) { System.err.println("Cannot flush outputs: " + e.getMessage()); }
+            }
+            if (opt.cache != null) System.out.println("Cache: " + opt.cache.stats());
+            if (opt.metrics != null) {
+                opt.metrics.print(System.out);
+                if (metricsJson != null) {
+                    try { Files.write(metricsJson.toPath(), (opt.metrics.toJson() + "\n").getBytes(StandardCharsets.UTF_8)); }
+                    catch (IOException e) { System.err.println("Cannot write metrics: " + e.getMessage()); }
+                }
+            }
+            if (opt.results != null) {
+                try { opt.results.close(); }
+                catch (IOException e) { System.err.println("Cannot write results: " + e.getMessage()); }
+            }
+        }
+    }
+
+    private static void codecOption(image_codec.Config c, String a) {
+        String v = a.substring(a.indexOf('=') + 1);
+        if (a.startsWith("--mask-format=")) c.mask = image_codec.Format.parse(v);
+        else if (a.startsWith("--png-filter=")) c.pngFilter = image_codec.Filter.parse(v);
+        else if (a.startsWith("--png-level=")) {
+            int level = parseOrDefault(v, -1);
+            if (level > 9) throw new IllegalArgumentException("PNG deflate level must be 0..9, got " + level);
+            c.pngLevel = level;
+        } else {
+            image_codec.Format f = image_codec.Format.parse(v);
+            if (f == image_codec.Format.PBM) throw new IllegalArgumentException("PBM is for binary masks only (--gray-format)");
+            c.gray = f;
+        }
+    }
+
+    // "640x480" -> {640, 480}; ผิดรูปแบบ -> null
+    private static int[] parseSize(String s) {
+        int x = s.toLowerCase().indexOf('x');
+        if (x <= 0) return null;
+        try {
+            int w = Integer.parseInt(s.substring(0, x)), h = Integer.parseInt(s.substring(x + 1));
+            return (w > 0 && h > 0) ? new int[]{w, h} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int parseOrDefault(String s, int def) {
+        try { return Integer.parseInt(s); }
+        catch (NumberFormatException e) {
+            System.out.println("Invalid number '" + s + "', fallback to " + def);
+            return def;
         }
     }
 }
@@ -0,0 +1,477 @@
+// image_codec.java
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.imageio.ImageIO;
+
+/**
+ * เขียน/อ่านภาพผลลัพธ์ (mask และภาพเทา) แบบ lossless ที่ encode เร็วกว่า PNG ของ ImageIO
+ * - PBM (P4): 1 บิตต่อพิกเซลจาก bit_mask.words ตรง ๆ (PBM: บิต 1 = ดำ จึงกลับบิตตอนเขียน/อ่าน)
+ * - PGM (P5) / RAW: byte ละพิกเซล; RAW ไม่มี header (ต้องรู้ขนาดตอนอ่าน)
+ * - PNG: ค่าเริ่มต้นใช้ ImageIO แบบเดิม; ตั้ง pngLevel >= 0 -> encoder ในคลาสนี้ (Deflater ระดับ/filter ที่เลือก)
+ *   mask เป็น PNG เทา 1 บิต, ภาพเทาเป็น 8 บิตที่ sample เท่ากับ gray_image.toBufferedImage() (อ่านกลับได้ค่าเดิม)
+ *
+ * ค่าใน PGM/RAW คือระดับเทาแบบ gray_image (ระดับที่ getRGB เห็น) ไม่ใช่ sample linear ของ TYPE_BYTE_GRAY
+ * การอ่านเข้า heap (readPgm / readPbm) รับได้ไม่เกิน Integer.MAX_VALUE พิกเซล; mapped_gray map ไฟล์ที่ใหญ่กว่านั้นได้ (ดู mapped_gray)
+ */
+public final class image_codec {
+
+    public enum Format {
+        PNG(".png"), PBM(".pbm"), PGM(".pgm"), RAW(".raw");
+
+        public final String ext;
+        Format(String ext) { this.ext = ext; }
+
+        /** "png" / "pbm" / "pgm" / "raw" (ไม่สนตัวพิมพ์) */
+        public static Format parse(String s) {
+            try { return valueOf(s.trim().toUpperCase(Locale.ROOT)); }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown image format: " + s + " (use png|pbm|pgm|raw)");
+            }
+        }
+    }
+
+    /** PNG filter ต่อแถว (ADAPTIVE = เลือกแบบที่ผลรวม |ค่า| น้อยสุดทีละแถว เหมือน libpng) */
+    public enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE;
+
+        public static Filter parse(String s) {
+            String k = s.trim().toUpperCase(Locale.ROOT);
+            if (k.equals("AVG")) return AVERAGE;
+            try { return valueOf(k); }
+            catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown PNG filter: " + s + " (use none|sub|up|avg|paeth|adaptive)");
+            }
+        }
+    }
+
+    /** codec ของผลลัพธ์แต่ละชนิด (ค่าเริ่มต้น = PNG ของ ImageIO แบบเดิม) */
+    public static final class Config {
+        /** threshold_0/1, between_0/1 */
+        public Format mask = Format.PNG;
+        /** equalized (PBM ใช้ไม่ได้กับภาพเทา) */
+        public Format gray = Format.PNG;
+        /** ระดับ deflate 0..9 ของ PNG; < 0 = ใช้ ImageIO */
+        public int pngLevel = -1;
+        /** UP เร็วและได้ไฟล์เล็กกับภาพต่อเนื่อง; ADAPTIVE ช้ากว่าราว 2 เท่า */
+        public Filter pngFilter = Filter.UP;
+
+        public Config copy() {
+            Config c = new Config();
+            c.mask = mask; c.gray = gray; c.pngLevel = pngLevel; c.pngFilter = pngFilter;
+            return c;
+        }
+    }
+
+    private image_codec() {}
+
+    // ======================= เขียน =======================
+
+    /** เขียน mask ตาม c.mask */
+    public static void write(bit_mask m, File f, Config c) throws IOException {
+        switch (c.mask) {
+            case PBM: writePbm(m, f); break;
+            case PGM: writePgm(m.toGray(), f); break;
+            case RAW: writeRaw(m.toGray(), f); break;
+            default:
+                if (c.pngLevel < 0) imageIoPng(m.toBufferedImage(), f);
+                else writePng(m, f, c.pngLevel, c.pngFilter);
+        }
+    }
+
+    /** เขียนภาพเทาตาม c.gray */
+    public static void write(gray_image g, File f, Config c) throws IOException {
+        switch (c.gray) {
+            case PGM: writePgm(g, f); break;
+            case RAW: writeRaw(g, f); break;
+            case PBM: throw new IllegalArgumentException("PBM is for binary masks only");
+            default:
+                if (c.pngLevel < 0) imageIoPng(g.toBufferedImage(), f);
+                else writePng(g, f, c.pngLevel, c.pngFilter);
+        }
+    }
+
+    private static void imageIoPng(BufferedImage img, File f) throws IOException {
+        if (!ImageIO.write(img, "png", f)) throw new IOException("No PNG writer");
+    }
+
+    public static void writePbm(bit_mask m, File f) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f), 1 << 16)) {
+            out.write(("P4\n" + m.width + " " + m.height + "\n").getBytes(StandardCharsets.US_ASCII));
+            byte[] row = new byte[(m.width + 7) >>> 3];
+            for (int i = 0; i < m.height; i++) {
+                packRow(m, i, row, true);
+                out.write(row);
+            }
+        }
+    }
+
+    public static void writePgm(gray_image g, File f) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f), 1 << 16)) {
+            out.write(("P5\n" + g.width + " " + g.height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+            writeRows(g, out);
+        }
+    }
+
+    public static void writeRaw(gray_image g, File f) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f), 1 << 16)) {
+            writeRows(g, out);
+        }
+    }
+
+    private static void writeRows(gray_image g, OutputStream out) throws IOException {
+        if (g.stride == g.width) { out.write(g.data, g.offset, g.width * g.height); return; }
+        for (int i = 0; i < g.height; i++) out.write(g.data, g.offset + i * g.stride, g.width);
+    }
+
+    // แถว i ของ mask -> byte แบบ MSB ก่อน (PBM/PNG 1 บิต); invert = PBM (1 = ดำ); บิตเติมท้ายแถวเป็น 0
+    private static void packRow(bit_mask m, int i, byte[] row, boolean invert) {
+        int base = i * m.wordsPerRow, n = row.length;
+        for (int k = 0; k < n; k++) {
+            int b = REV[(int) (m.words[base + (k >>> 3)] >>> ((k & 7) << 3)) & 0xFF];
+            row[k] = (byte) (invert ? ~b : b);
+        }
+        int r = m.width & 7;
+        if (r != 0) row[n - 1] &= (byte) (0xFF00 >>> r);
+    }
+
+    // กลับลำดับบิตใน byte (bit_mask เก็บพิกเซลซ้ายสุดที่บิตต่ำ, PBM/PNG ที่บิตสูง)
+    private static final int[] REV = new int[256];
+    static {
+        for (int b = 0; b < 256; b++) REV[b] = Integer.reverse(b) >>> 24;
+    }
+
+    // ---------- PNG encoder ----------
+
+    /** PNG เทา 1 บิต (1 = ขาว) */
+    public static void writePng(bit_mask m, File f, int level, Filter filter) throws IOException {
+        encodePng(f, m.width, m.height, 1, level, filter, (i, out) -> packRow(m, i, out, false), (m.width + 7) >>> 3);
+    }
+
+    /** PNG เทา 8 บิต; sample = ค่าที่ toBufferedImage() เก็บ ImageIO จึงอ่านกลับได้ระดับเดิม */
+    public static void writePng(gray_image g, File f, int level, Filter filter) throws IOException {
+        int[] lut = gray_image.encodeTable();
+        byte[] enc = new byte[256];
+        for (int k = 0; k < 256; k++) enc[k] = (byte) lut[k];
+        encodePng(f, g.width, g.height, 8, level, filter, (i, out) -> {
+            int p = g.offset + i * g.stride;
+            for (int j = 0; j < g.width; j++) out[j] = enc[g.data[p + j] & 0xFF];
+        }, g.width);
+    }
+
+    @FunctionalInterface
+    private interface row_source {
+        void row(int i, byte[] out);
+    }
+
+    private static void encodePng(File f, int w, int h, int depth, int level, Filter filter,
+                                  row_source src, int rowBytes) throws IOException {
+        if (level < 0 || level > 9) throw new IllegalArgumentException("PNG deflate level must be 0..9, got " + level);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f), 1 << 16)) {
+            out.write(new byte[]{(byte) 137, 80, 78, 71, 13, 10, 26, 10});
+            byte[] ihdr = new byte[13];
+            putInt(ihdr, 0, w);
+            putInt(ihdr, 4, h);
+            ihdr[8] = (byte) depth;   // color type 0 (เทา), compression/filter/interlace = 0
+            chunk(out, "IHDR", ihdr, ihdr.length);
+
+            Deflater def = new Deflater(level);
+            try (DeflaterOutputStream z = new DeflaterOutputStream(new idat_stream(out), def, 1 << 16)) {
+                byte[] prev = new byte[rowBytes], cur = new byte[rowBytes];
+                byte[][] cand = new byte[5][1 + rowBytes];
+                for (int i = 0; i < h; i++) {
+                    src.row(i, cur);
+                    z.write(filterRow(filter, cur, prev, cand));
+                    byte[] t = prev; prev = cur; cur = t;
+                }
+            } finally {
+                def.end();
+            }
+            chunk(out, "IEND", new byte[0], 0);
+        }
+    }
+
+    // filter 1 แถว (bpp = 1 byte ทั้ง 1 บิตและ 8 บิต) -> [type, data...]
+    private static byte[] filterRow(Filter filter, byte[] cur, byte[] prev, byte[][] cand) {
+        if (filter != Filter.ADAPTIVE) {
+            byte[] o = cand[filter.ordinal()];
+            applyFilter(filter.ordinal(), cur, prev, o);
+            return o;
+        }
+        byte[] best = null;
+        long bestSum = Long.MAX_VALUE;
+        for (int t = 0; t < 5; t++) {
+            byte[] o = cand[t];
+            applyFilter(t, cur, prev, o);
+            long s = 0;
+            for (int k = 1; k < o.length; k++) s += Math.abs((int) o[k]);
+            if (s < bestSum) { bestSum = s; best = o; }
+        }
+        return best;
+    }
+
+    private static void applyFilter(int type, byte[] cur, byte[] prev, byte[] o) {
+        o[0] = (byte) type;
+        int n = cur.length;
+        if (n == 0) return;
+        switch (type) {
+            case 0:
+                System.arraycopy(cur, 0, o, 1, n);
+                break;
+            case 1:
+                o[1] = cur[0];
+                for (int k = 1; k < n; k++) o[k + 1] = (byte) (cur[k] - cur[k - 1]);
+                break;
+            case 2:
+                for (int k = 0; k < n; k++) o[k + 1] = (byte) (cur[k] - prev[k]);
+                break;
+            case 3:
+                o[1] = (byte) (cur[0] - ((prev[0] & 0xFF) >>> 1));
+                for (int k = 1; k < n; k++) o[k + 1] = (byte) (cur[k] - (((cur[k - 1] & 0xFF) + (prev[k] & 0xFF)) >>> 1));
+                break;
+            default:
+                o[1] = (byte) (cur[0] - prev[0]);   // a = c = 0 -> paeth = b
+                for (int k = 1; k < n; k++)
+                    o[k + 1] = (byte) (cur[k] - paeth(cur[k - 1] & 0xFF, prev[k] & 0xFF, prev[k - 1] & 0xFF));
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c, pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return (pb <= pc) ? b : c;
+    }
+
+    private static void chunk(OutputStream out, String type, byte[] data, int len) throws IOException {
+        byte[] head = new byte[8];
+        putInt(head, 0, len);
+        for (int k = 0; k < 4; k++) head[4 + k] = (byte) type.charAt(k);
+        CRC32 crc = new CRC32();
+        crc.update(head, 4, 4);
+        crc.update(data, 0, len);
+        byte[] tail = new byte[4];
+        putInt(tail, 0, (int) crc.getValue());
+        out.write(head);
+        out.write(data, 0, len);
+        out.write(tail);
+    }
+
+    private static void putInt(byte[] b, int p, int v) {
+        b[p] = (byte) (v >>> 24); b[p + 1] = (byte) (v >>> 16); b[p + 2] = (byte) (v >>> 8); b[p + 3] = (byte) v;
+    }
+
+    // stream ที่แบ่งข้อมูล zlib เป็น IDAT chunk ละไม่เกิน 64 KiB
+    private static final class idat_stream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buf = new byte[1 << 16];
+        private int n = 0;
+
+        idat_stream(OutputStream out) { this.out = out; }
+
+        @Override public void write(int b) throws IOException {
+            if (n == buf.length) flushChunk();
+            buf[n++] = (byte) b;
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (n == buf.length) flushChunk();
+                int k = Math.min(len, buf.length - n);
+                System.arraycopy(b, off, buf, n, k);
+                n += k; off += k; len -= k;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (n > 0) chunk(out, "IDAT", buf, n);
+            n = 0;
+        }
+
+        // ไม่ปิด out: IEND ยังต้องตามมา
+        @Override public void close() throws IOException { flushChunk(); }
+    }
+
+    // ======================= อ่าน =======================
+
+    /**
+     * อ่านภาพสำหรับ pipeline: PBM/PGM จาก header ของไฟล์ (getRGB ได้ค่าในไฟล์ตรง ๆ) อื่น ๆ ผ่าน ImageIO
+     * อ่านไม่ได้ -> null เหมือน ImageIO.read
+     */
+    public static BufferedImage read(File f) throws IOException {
+        int magic = magic(f);
+        if (magic == '4') return toBinaryImage(readPbm(f));
+        if (magic == '5') return toIndexedGray(readPgm(f));
+        return ImageIO.read(f);
+    }
+
+    /** เหมือน read(f) แต่ไฟล์ .raw อ่านด้วยขนาดที่ให้มา */
+    public static BufferedImage read(File f, int width, int height) throws IOException {
+        if (f.getName().toLowerCase(Locale.ROOT).endsWith(Format.RAW.ext)) return toIndexedGray(readRaw(f, width, height));
+        return read(f);
+    }
+
+    /** ระดับเทาแบบ gray_image.of (PGM ได้ค่าตรง ๆ ไม่ผ่าน BufferedImage) */
+    public static gray_image readGray(File f) throws IOException {
+        int magic = magic(f);
+        if (magic == '5') return readPgm(f);
+        if (magic == '4') return readPbm(f).toGray();
+        BufferedImage img = ImageIO.read(f);
+        if (img == null) throw new IllegalArgumentException("Cannot read image: " + f);
+        return gray_image.of(img);
+    }
+
+    /** mask: PBM ตรง ๆ, รูปแบบอื่น = ระดับเทา >= 128 */
+    public static bit_mask readMask(File f) throws IOException {
+        if (magic(f) == '4') return readPbm(f);
+        return bit_mask.range(readGray(f), 128, 255, null);
+    }
+
+    /** RAW ไม่มี header: ต้องระบุขนาด */
+    public static gray_image readRaw(File f, int width, int height) throws IOException {
+        long need = (long) width * height;
+        if (need > Integer.MAX_VALUE) throw new IllegalArgumentException("RAW image too large: " + width + "x" + height);
+        if (f.length() != need)
+            throw new IllegalArgumentException("RAW size mismatch: " + f + " has " + f.length() + " bytes, expected " + need);
+        gray_image g = new gray_image(width, height);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+            in.readFully(g.data);
+        }
+        return g;
+    }
+
+    public static bit_mask readPbm(File f) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(f), 1 << 16)) {
+            int[] hdr = header(in, f, '4', false, true);
+            bit_mask m = new bit_mask(hdr[0], hdr[1]);
+            byte[] row = new byte[(m.width + 7) >>> 3];
+            DataInputStream din = new DataInputStream(in);
+            long tail = m.tailMask();
+            for (int i = 0; i < m.height; i++) {
+                din.readFully(row);
+                int base = i * m.wordsPerRow;
+                for (int k = 0; k < row.length; k++) {
+                    m.words[base + (k >>> 3)] |= (long) REV[~row[k] & 0xFF] << ((k & 7) << 3);
+                }
+                if (m.wordsPerRow > 0) m.words[base + m.wordsPerRow - 1] &= tail;
+            }
+            return m;
+        } catch (EOFException e) {
+            throw new IOException("Truncated PBM: " + f, e);
+        }
+    }
+
+    public static gray_image readPgm(File f) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(f), 1 << 16)) {
+            int[] hdr = header(in, f, '5', true, true);
+            gray_image g = new gray_image(hdr[0], hdr[1]);
+            new DataInputStream(in).readFully(g.data);
+            int max = hdr[2];
+            if (max != 255) {   // maxval < 255 -> ขยายเป็น 0..255
+                int[] lut = new int[256];
+                for (int v = 0; v < 256; v++) lut[v] = Math.min(255, (v * 255 + max / 2) / max);
+                return g.map(lut);
+            }
+            return g;
+        } catch (EOFException e) {
+            throw new IOException("Truncated PGM: " + f, e);
+        }
+    }
+
+    static boolean isPgm(File f) throws IOException {
+        return magic(f) == '5';
+    }
+
+    /** maxval ของ PGM P5 */
+    static int pgmMaxval(File f) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(f))) {
+            return header(in, f, '5', true, false)[2];
+        }
+    }
+
+    /**
+     * header ของ PGM P5 -> {width, height, maxval}; in หยุดที่ byte แรกของพิกเซล
+     * ไม่จำกัด width * height ที่ 2^31 (ใช้กับ mapped_gray ซึ่งไม่โหลดทั้งภาพเข้า byte[])
+     */
+    static int[] pgmHeader(InputStream in, File f) throws IOException {
+        return header(in, f, '5', true, false);
+    }
+
+    // ตัวเลขตัวที่ 2 ของ magic ('4' = PBM, '5' = PGM) หรือ -1
+    private static int magic(File f) throws IOException {
+        try (InputStream in = new FileInputStream(f)) {
+            int a = in.read(), b = in.read();
+            return (a == 'P' && (b == '4' || b == '5')) ? b : -1;
+        }
+    }
+
+    // "P4 w h" / "P5 w h maxval" + whitespace 1 ตัว; รองรับ comment '#'
+    // onHeap = ภาพจะถูกอ่านเข้า byte[] / bit_mask ทั้งภาพ -> width * height ต้องไม่เกิน Integer.MAX_VALUE
+    private static int[] header(InputStream in, File f, char kind, boolean hasMax, boolean onHeap) throws IOException {
+        if (in.read() != 'P' || in.read() != kind) throw new IllegalArgumentException("Not a P" + kind + " file: " + f);
+        int w = headerInt(in, f), h = headerInt(in, f);
+        int max = hasMax ? headerInt(in, f) : 1;
+        if (w < 0 || h < 0 || (onHeap && (long) w * h > Integer.MAX_VALUE))
+            throw new IllegalArgumentException("Bad image size in " + f + ": " + w + "x" + h);
+        if (max < 1 || max > 255)
+            throw new IllegalArgumentException("Only 8-bit PGM is supported (maxval " + max + "): " + f);
+        return new int[]{w, h, max};
+    }
+
+    private static int headerInt(InputStream in, File f) throws IOException {
+        int c = in.read();
+        while (true) {
+            if (c == '#') { while (c != '\n' && c != '\r' && c != -1) c = in.read(); }
+            else if (c == ' ' || c == '\t' || c == '\n' || c == '\r') c = in.read();
+            else break;
+        }
+        if (c < '0' || c > '9') throw new IllegalArgumentException("Bad PNM header: " + f);
+        long v = 0;
+        while (c >= '0' && c <= '9') {
+            v = v * 10 + (c - '0');
+            if (v > Integer.MAX_VALUE) throw new IllegalArgumentException("Bad PNM header: " + f);
+            c = in.read();
+        }
+        // ตัวคั่นหลังตัวเลขสุดท้าย (whitespace 1 ตัว) ถูกอ่านไปแล้ว
+        return (int) v;
+    }
+
+    // ---------- gray_image / bit_mask -> BufferedImage ที่ getRGB ได้ค่าเดิมตรง ๆ ----------
+
+    private static BufferedImage toIndexedGray(gray_image g) {
+        byte[] pal = new byte[256];
+        for (int k = 0; k < 256; k++) pal[k] = (byte) k;
+        BufferedImage img = new BufferedImage(g.width, g.height, BufferedImage.TYPE_BYTE_INDEXED,
+                                              new IndexColorModel(8, 256, pal, pal, pal));
+        byte[] o = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < g.height; i++) System.arraycopy(g.data, g.offset + i * g.stride, o, i * g.width, g.width);
+        return img;
+    }
+
+    // TYPE_BYTE_BINARY: palette 0 = ดำ, 1 = ขาว, byte แบบ MSB ก่อน
+    private static BufferedImage toBinaryImage(bit_mask m) {
+        BufferedImage img = new BufferedImage(m.width, m.height, BufferedImage.TYPE_BYTE_BINARY);
+        byte[] o = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+        int rb = (m.width + 7) >>> 3;
+        byte[] row = new byte[rb];
+        for (int i = 0; i < m.height; i++) {
+            packRow(m, i, row, false);
+            System.arraycopy(row, 0, o, i * rb, rb);
+        }
+        return img;
+    }
+}
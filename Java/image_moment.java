@@ -1,73 +1,158 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.PrintWriter;
-import javax.imageio.ImageIO;
+import java.util.function.Supplier;
 
 public class image_moment {
 
+    /** ผล moment ของภาพ binary (ค่าเดียวกับที่พิมพ์ใน moment_report.txt) */
+    public static class Result {
+        public final double M00;
+        public final double xbar, ybar;    // centroid
+        public final double mu00, mu11, mu20, mu02;
+        public final double[] hu;          // φ1..φ7
+        public Result(double M00, double xbar, double ybar,
+                      double mu00, double mu11, double mu20, double mu02, double[] hu) {
+            this.M00 = M00; this.xbar = xbar; this.ybar = ybar;
+            this.mu00 = mu00; this.mu11 = mu11; this.mu20 = mu20; this.mu02 = mu02; this.hu = hu;
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         String path = (args.length > 0) ? args[0] : "threshold_result/threshold_single/threshold_1.png";
-        BufferedImage img = ImageIO.read(new File(path));
+        File in = new File(path);
+        if (mapped_gray.canMap(in)) {
+            try (mapped_gray src = mapped_gray.open(in)) { run(src, histro_pipeline.Options.cli()); }
+            return;
+        }
+        BufferedImage img = image_codec.read(in);
         if (img == null) throw new IllegalArgumentException("Cannot read image: " + path);
+        run(img, histro_pipeline.Options.cli());
+    }
+
+    public static Result run(BufferedImage img, histro_pipeline.Options opt) throws Exception {
+        return run(gray_image.luma(img), img, opt);
+    }
+
+    /** moment บนภาพเทาที่อยู่ในหน่วยความจำแล้ว */
+    public static Result run(gray_image img, histro_pipeline.Options opt) throws Exception {
+        return run(img, null, opt);
+    }
+
+    /** moment บน mask ของ threshold โดยตรง (เช่น threshold.Result.thrOne) บิต 1 = วัตถุ */
+    public static Result run(bit_mask mask, histro_pipeline.Options opt) throws Exception {
+        return run(() -> moment_sums.of(mask), (long) mask.width * mask.height, mask::toBufferedImage, opt);
+    }
+
+    /** moment บน mask แบบ run-length (เช่น threshold.Result.extras.rle): ผลรวมต่อ run จากสูตรปิด */
+    public static Result run(rle_mask mask, histro_pipeline.Options opt) throws Exception {
+        return run(() -> moment_sums.of(mask), (long) mask.width * mask.height,
+                   () -> mask.toBitMask().toBufferedImage(), opt);
+    }
+
+    /**
+     * ภาพเทาที่ map จากไฟล์: mask (luma >= 128 เหมือน run(BufferedImage)) สร้างทีละแถบจาก mapping
+     * ภาพทั้งภาพถูกคัดลอกขึ้น heap เฉพาะตอนวาด overlay
+     */
+    public static Result run(mapped_gray src, histro_pipeline.Options opt) throws Exception {
+        return run(() -> moment_sums.of(src.range(128, 255, null)), (long) src.width * src.height,
+                   () -> src.toGray().toBufferedImage(), opt);
+    }
 
-        // ===== ใช้ภาพแบบ Threshold เสมอ: แปลงเป็น Binary 0/1 แล้วคำนวณทั้งหมดบน 0/1 =====
-        double[][] f = toGrayMatrix(img); // 0..255
-        toBinary01InPlace(f);             // บังคับ 0/1
+    // view = ภาพไว้วาด overlay (null -> สร้างจาก img เมื่อจำเป็น)
+    private static Result run(gray_image img, BufferedImage view, histro_pipeline.Options opt) throws Exception {
+        // ===== ใช้ภาพแบบ Threshold เสมอ: binary 0/1 (gray >= 128) =====
+        // สแกนภาพครั้งเดียวเก็บ M00..M30 แล้วหา central/Hu จากผลรวม
+        return run(() -> moment_sums.of(img, 128), (long) img.width * img.height,
+                   () -> view != null ? view : img.toBufferedImage(), opt);
+    }
+
+    // sums = สแกนภาพหาผลรวม moment (นับเป็นขั้น moments ของ pixels พิกเซล)
+    private static Result run(Supplier<moment_sums> sums, long pixels, Supplier<BufferedImage> view,
+                              histro_pipeline.Options opt) throws Exception {
+        Result res;
+        try (stage_metrics.Span s = opt.span(stage_metrics.Stage.MOMENTS)) {
+            res = of(sums.get());
+            s.pixels(pixels);
+        }
+        if (opt.cliSink) writeReport(res, opt);
+        if (opt.render) {
+            stage_metrics.Span s = opt.span(stage_metrics.Stage.RENDER);
+            try {
+                render(res, view.get(), opt);
+            } finally {
+                s.close();
+            }
+        }
+        if (opt.cliSink) {
+            if (!opt.render) { opt.log.println(); opt.log.println("Saved:"); }
+            opt.log.println("  " + opt.file("image_moment/txt_output/moment_report.txt").getPath());
+        }
+        return res;
+    }
 
+    /** Result จากผลรวม moment ที่สะสมไว้แล้ว (ไม่มีการเขียนไฟล์) */
+    public static Result of(moment_sums ms) {
         // -------- Raw moments (บน Binary) --------
-        double M00 = rawMoment(f, 0, 0);      // จำนวนพิกเซลวัตถุ
-        double S10 = rawMoment(f, 1, 0);      // sum(j * f)
-        double S01 = rawMoment(f, 0, 1);      // sum(i * f)
+        double M00 = ms.raw(0, 0);            // จำนวนพิกเซลวัตถุ
+        double S10 = ms.raw(1, 0);            // sum(i * f)
+        double S01 = ms.raw(0, 1);            // sum(j * f)
         double xbar = (M00 != 0.0) ? S10 / M00 : 0.0;
         double ybar = (M00 != 0.0) ? S01 / M00 : 0.0;
 
-        // ---- สำหรับการแสดงผล: M10, M01 ให้เท่ากับ centroid ตามที่คุณต้องการ ----
-        double M10_disp = xbar;
-        double M01_disp = ybar;
-
         // -------- Central moments (บน Binary) --------
-        double mu11 = centralMoment(f, 1, 1);
-        double mu20 = centralMoment(f, 2, 0);
-        double mu02 = centralMoment(f, 0, 2);
+        double mu11 = ms.central(1, 1);
+        double mu20 = ms.central(2, 0);
+        double mu02 = ms.central(0, 2);
 
         // -------- Hu moments (φ1..φ7) บน Binary --------
-        double[] hu = huMoments(f);
+        double[] hu = ms.hu();
+
+        return new Result(M00, xbar, ybar, ms.mu00(), mu11, mu20, mu02, hu);
+    }
+
+    // ===== console + .txt + ภาพ overlay (CLI sink) =====
+    private static void writeReport(Result res, histro_pipeline.Options opt) throws Exception {
+        double M00 = res.M00, xbar = res.xbar, ybar = res.ybar;
+        double mu11 = res.mu11, mu20 = res.mu20, mu02 = res.mu02;
+        double[] hu = res.hu;
+
+        // ---- สำหรับการแสดงผล: M10, M01 ให้เท่ากับ centroid ตามที่คุณต้องการ ----
+        double M10_disp = xbar;
+        double M01_disp = ybar;
 
         // ===== terminal output =====
-        System.out.printf("Raw Moments%n");
-        System.out.printf("M00 = %.2f%n", M00);
-        System.out.printf("M10 = %.2f,  M01 = %.2f%n", M10_disp, M01_disp);
-        System.out.printf("Centroid (x̄, ȳ) = (%.2f, %.2f)%n", xbar, ybar);
-
-        System.out.println();
-        System.out.printf("Central Moments%n");
-        System.out.printf("mu00 = %.2f%n", mu00(f)); // เท่ากับ M00 (เพราะรวม f)
-        System.out.printf("mu11 = %.2f%n", mu11);
-        System.out.printf("mu20 = %.2f%n", mu20);
-        System.out.printf("mu02 = %.2f%n", mu02);
-
-        System.out.println();
-        System.out.println("Hu Moments");
+        opt.log.printf("Raw Moments%n");
+        opt.log.printf("M00 = %.2f%n", M00);
+        opt.log.printf("M10 = %.2f,  M01 = %.2f%n", M10_disp, M01_disp);
+        opt.log.printf("Centroid (x̄, ȳ) = (%.2f, %.2f)%n", xbar, ybar);
+
+        opt.log.println();
+        opt.log.printf("Central Moments%n");
+        opt.log.printf("mu00 = %.2f%n", res.mu00); // เท่ากับ M00 (เพราะรวม f)
+        opt.log.printf("mu11 = %.2f%n", mu11);
+        opt.log.printf("mu20 = %.2f%n", mu20);
+        opt.log.printf("mu02 = %.2f%n", mu02);
+
+        opt.log.println();
+        opt.log.println("Hu Moments");
         for (int i = 0; i < 7; i++) {
-            System.out.printf("phi%d = %.6e%n", i + 1, hu[i]);
+            opt.log.printf("phi%d = %.6e%n", i + 1, hu[i]);
         }
 
         // ===== output folders =====
-        File imgDir = new File("image_moment/picture_output");
-        if (!imgDir.exists()) imgDir.mkdirs();
-        File txtDir = new File("image_moment/txt_output");
+        File txtDir = opt.file("image_moment/txt_output");
         if (!txtDir.exists()) txtDir.mkdirs();
 
         // ===== save .txt =====
-        try (PrintWriter pw = new PrintWriter(new File(txtDir, "moment_report.txt"))) {
+        opt.writeText(new File(txtDir, "moment_report.txt"), pw -> {
             pw.printf("Raw Moments%n");
             pw.printf("M00 = %.2f%n", M00);
             pw.printf("M10 = %.2f,  M01 = %.2f%n", M10_disp, M01_disp);
             pw.printf("Centroid (x̄, ȳ) = (%.2f, %.2f)%n%n", xbar, ybar);
 
             pw.printf("Central Moments%n");
-            pw.printf("mu00 = %.2f%n", mu00(f));
+            pw.printf("mu00 = %.2f%n", res.mu00);
             pw.printf("mu11 = %.2f%n", mu11);
             pw.printf("mu20 = %.2f%n", mu20);
             pw.printf("mu02 = %.2f%n%n", mu02);
@@ -76,7 +161,17 @@ public class image_moment {
             for (int i = 0; i < 7; i++) {
                 pw.printf("phi%d = %.6e%n", i + 1, hu[i]);
             }
-        }
+        });
+
+    }
+
+    /** ภาพ overlay ของ raw / central / Hu บนภาพ binary img (เรียกทีหลังจากผลที่คำนวณไว้ได้) */
+    public static void render(Result res, BufferedImage img, histro_pipeline.Options opt) throws Exception {
+        double M00 = res.M00, xbar = res.xbar, ybar = res.ybar;
+        double mu11 = res.mu11, mu20 = res.mu20, mu02 = res.mu02;
+        double M10_disp = xbar, M01_disp = ybar;
+        File imgDir = opt.file("image_moment/picture_output");
+        if (!imgDir.exists()) imgDir.mkdirs();
 
         // ===== save images =====
         BufferedImage rawOut = overlayCentroidWithText(
@@ -85,24 +180,23 @@ public class image_moment {
             String.format("M10=%.2f, M01=%.2f", M10_disp, M01_disp),
             String.format("Centroid (%.2f, %.2f)", xbar, ybar)
         );
-        ImageIO.write(rawOut, "png", new File(imgDir, "raw_moment.png"));
+        opt.writePng(rawOut, new File(imgDir, "raw_moment.png"));
 
         BufferedImage cenOut = overlayCentroidWithText(
             img, xbar, ybar,
             String.format("Central: mu11=%.2f", mu11),
             String.format("mu20=%.2f, mu02=%.2f", mu20, mu02)
         );
-        ImageIO.write(cenOut, "png", new File(imgDir, "central_moment.png"));
+        opt.writePng(cenOut, new File(imgDir, "central_moment.png"));
 
-        BufferedImage huOut = overlayHuWithAxis(img, xbar, ybar, mu20, mu02, mu11, hu);
-        ImageIO.write(huOut, "png", new File(imgDir, "hu_moment.png"));
+        BufferedImage huOut = overlayHuWithAxis(img, xbar, ybar, mu20, mu02, mu11, res.hu);
+        opt.writePng(huOut, new File(imgDir, "hu_moment.png"));
 
-        System.out.println();
-        System.out.println("Saved:");
-        System.out.println("  image_moment/picture_output/raw_moment.png");
-        System.out.println("  image_moment/picture_output/central_moment.png");
-        System.out.println("  image_moment/picture_output/hu_moment.png");
-        System.out.println("  image_moment/txt_output/moment_report.txt");
+        opt.log.println();
+        opt.log.println("Saved:");
+        opt.log.println("  " + new File(imgDir, "raw_moment.png").getPath());
+        opt.log.println("  " + new File(imgDir, "central_moment.png").getPath());
+        opt.log.println("  " + new File(imgDir, "hu_moment.png").getPath());
     }
 
     // ---------- draw centroid + multi-line label ----------
@@ -275,28 +369,126 @@ public class image_moment {
         return rawMoment(f, 0, 0);
     }
 
-    // Hu φ1..φ7 (บน Binary)
+    // Hu φ1..φ7 (บน Binary) — สแกนครั้งเดียวผ่าน moment_sums แทนการเรียก normalizedCentralMoment 7 ครั้ง
     public static double[] huMoments(double[][] f) {
-        double n20 = normalizedCentralMoment(f, 2, 0);
-        double n02 = normalizedCentralMoment(f, 0, 2);
-        double n11 = normalizedCentralMoment(f, 1, 1);
-        double n30 = normalizedCentralMoment(f, 3, 0);
-        double n03 = normalizedCentralMoment(f, 0, 3);
-        double n21 = normalizedCentralMoment(f, 2, 1);
-        double n12 = normalizedCentralMoment(f, 1, 2);
-
-        double[] phi = new double[7];
-        phi[0] = n20 + n02;
-        phi[1] = (n20 - n02) * (n20 - n02) + 4.0 * n11 * n11;
-        phi[2] = (n30 - 3 * n12) * (n30 - 3 * n12) + (3 * n21 - n03) * (3 * n21 - n03);
-        phi[3] = (n30 + n12) * (n30 + n12) + (n21 + n03) * (n21 + n03);
-        phi[4] = (n30 - 3 * n12) * (n30 + n12) * ((n30 + n12) * (n30 + n12) - 3 * (n21 + n03) * (n21 + n03))
-               + (3 * n21 - n03) * (n21 + n03) * (3 * (n30 + n12) * (n30 + n12) - (n21 + n03) * (n21 + n03));
-        phi[5] = (n20 - n02) * ((n30 + n12) * (n30 + n12) - (n21 + n03) * (n21 + n03))
-               + 4.0 * n11 * (n30 + n12) * (n21 + n03);
-        phi[6] = (3 * n21 - n03) * (n30 + n12) * ((n30 + n12) * (n30 + n12) - 3 * (n21 + n03) * (n21 + n03))
-               - (n30 - 3 * n12) * (n21 + n03) * (3 * (n30 + n12) * (n30 + n12) - (n21 + n03) * (n21 + n03));
-        return phi;
+        return moment_sums.of(f).hu();
+    }
+
+    // ---------- Moments บน bit_mask / gray_image (ไม่ต้องสร้าง double[h][w]) ----------
+    // p+q <= 3 ใช้ moment_sums (จำนวนเต็ม exact); อันดับสูงกว่าวนเฉพาะพิกเซลที่ไม่เป็น 0
+
+    /** เหมือน rawMoment(double[][]) โดย f = บิตของ mask (0/1) */
+    public static double rawMoment(bit_mask f, int p, int q) {
+        if (p + q <= 3) return moment_sums.of(f).raw(p, q);
+        return maskMoment(f, p, q, 0.0, 0.0);
+    }
+
+    public static double centralMoment(bit_mask f, int p, int q) {
+        moment_sums ms = moment_sums.of(f);
+        if (p + q <= 3) return ms.central(p, q);
+        double M00 = ms.raw(0, 0);
+        if (M00 == 0.0) return 0.0;
+        return maskMoment(f, p, q, ms.raw(1, 0) / M00, ms.raw(0, 1) / M00);
+    }
+
+    public static double normalizedCentralMoment(bit_mask f, int p, int q) {
+        double mu00 = mu00(f);
+        if (mu00 == 0.0) return 0.0;
+        return centralMoment(f, p, q) / Math.pow(mu00, 1.0 + 0.5 * (p + q));
+    }
+
+    public static double mu00(bit_mask f) {
+        return f.area();
+    }
+
+    public static double[] huMoments(bit_mask f) {
+        return moment_sums.of(f).hu();
+    }
+
+    /** rle_mask: p+q <= 3 จากผลรวมต่อ run; อันดับสูงกว่าผ่าน bit_mask */
+    public static double rawMoment(rle_mask f, int p, int q) {
+        if (p + q <= 3) return moment_sums.of(f).raw(p, q);
+        return rawMoment(f.toBitMask(), p, q);
+    }
+
+    public static double centralMoment(rle_mask f, int p, int q) {
+        if (p + q <= 3) return moment_sums.of(f).central(p, q);
+        return centralMoment(f.toBitMask(), p, q);
+    }
+
+    public static double mu00(rle_mask f) {
+        return f.area();
+    }
+
+    public static double[] huMoments(rle_mask f) {
+        return moment_sums.of(f).hu();
+    }
+
+    /** เหมือน rawMoment(toLevelMatrix(img)) โดย f = ระดับเทา 0..255 */
+    public static double rawMoment(gray_image f, int p, int q) {
+        if (p + q <= 3) return moment_sums.weighted(f).raw(p, q);
+        return grayMoment(f, p, q, 0.0, 0.0);
+    }
+
+    public static double centralMoment(gray_image f, int p, int q) {
+        moment_sums ms = moment_sums.weighted(f);
+        if (p + q <= 3) return ms.central(p, q);
+        double M00 = ms.raw(0, 0);
+        if (M00 == 0.0) return 0.0;
+        return grayMoment(f, p, q, ms.raw(1, 0) / M00, ms.raw(0, 1) / M00);
+    }
+
+    public static double normalizedCentralMoment(gray_image f, int p, int q) {
+        double mu00 = mu00(f);
+        if (mu00 == 0.0) return 0.0;
+        return centralMoment(f, p, q) / Math.pow(mu00, 1.0 + 0.5 * (p + q));
+    }
+
+    public static double mu00(gray_image f) {
+        return moment_sums.weighted(f).raw(0, 0);
+    }
+
+    public static double[] huMoments(gray_image f) {
+        return moment_sums.weighted(f).hu();
+    }
+
+    /** binarize ที่ >= 128 แบบ 1 บิตต่อพิกเซล (แทน toGrayMatrix + 0/1 บน double[h][w]) */
+    public static bit_mask toBinaryMask(gray_image img) {
+        return bit_mask.range(img, 128, 255, null);
+    }
+
+    // Σ (i - ic)^p (j - jc)^q ของบิต 1 (ไล่ทีละบิตด้วย numberOfTrailingZeros)
+    private static double maskMoment(bit_mask f, int p, int q, double ic, double jc) {
+        double M = 0.0;
+        for (int i = 0; i < f.height; i++) {
+            double row = 0.0;
+            int b = i * f.wordsPerRow;
+            for (int k = 0; k < f.wordsPerRow; k++) {
+                long w = f.words[b + k];
+                while (w != 0) {
+                    int j = (k << 6) + Long.numberOfTrailingZeros(w);
+                    row += powInt(j - jc, q);
+                    w &= w - 1;
+                }
+            }
+            if (row != 0.0) M += powInt(i - ic, p) * row;
+        }
+        return M;
+    }
+
+    private static double grayMoment(gray_image f, int p, int q, double ic, double jc) {
+        double M = 0.0;
+        byte[] d = f.data;
+        for (int i = 0; i < f.height; i++) {
+            double row = 0.0;
+            int o = f.offset + i * f.stride;
+            for (int j = 0; j < f.width; j++) {
+                int v = d[o + j] & 0xFF;
+                if (v != 0) row += v * powInt(j - jc, q);
+            }
+            if (row != 0.0) M += powInt(i - ic, p) * row;
+        }
+        return M;
     }
 
     // integer-power (non-negative)
@@ -324,13 +516,16 @@ public class image_moment {
         return g;
     }
 
-    // ---------- force binary: 0/1 ----------
-    private static void toBinary01InPlace(double[][] f) {
-        int h = f.length, w = f[0].length;
+    /** ระดับเทาจำนวนเต็ม 0..255 ของ gray_image เป็น double[h][w] (ทางเร็ว; ภาพสีใช้ luma แบบ fixed-point ไม่ใช่ทศนิยมแบบ toGrayMatrix) */
+    public static double[][] toLevelMatrix(gray_image img) {
+        int w = img.width, h = img.height;
+        byte[] d = img.data;
+        double[][] g = new double[h][w];
         for (int i = 0; i < h; i++) {
-            for (int j = 0; j < w; j++) {
-                f[i][j] = (f[i][j] >= 128.0) ? 1.0 : 0.0; // บังคับ 0/1 เสมอ
-            }
+            int p = img.offset + i * img.stride;
+            double[] row = g[i];
+            for (int j = 0; j < w; j++) row[j] = d[p + j] & 0xFF;
         }
+        return g;
     }
 }
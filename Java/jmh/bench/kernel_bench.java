@@ -0,0 +1,96 @@
+// kernel_bench.java
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * kernel หลักของ pipeline บนภาพสังเคราะห์ 0.25 - 100 MP
+ * ตัวอย่าง: java -jar target/benchmarks.jar kernel_bench.measureBoth -p mp=1,16 -p threads=1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-Djava.awt.headless=true"})
+public class kernel_bench {
+
+    /** ขนาดภาพ (ล้านพิกเซล) */
+    @Param({"0.25", "1", "4", "16", "100"})
+    public double mp;
+
+    /** thread ของ histogram/LUT (0 = ทุก core, 1 = serial) */
+    @Param({"1"})
+    public int threads;
+
+    private Object gray, mask;
+    private int[] eqLut;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        gray = kernels.syntheticGray(mp);
+        int[] h = (int[]) kernels.HISTOGRAM.invokeExact(gray, 1);
+        long n = 0;
+        for (int v : h) n += v;
+        eqLut = new int[256];
+        long c = 0;
+        for (int i = 0; i < 256; i++) {
+            c += h[i];
+            eqLut[i] = (int) Math.round(255.0 * c / n);
+        }
+        mask = (Object) kernels.MASK_RANGE.invokeExact(gray, 128, 255, (int[]) null);
+    }
+
+    @Benchmark
+    public int[] histogram() throws Throwable {
+        return (int[]) kernels.HISTOGRAM.invokeExact(gray, threads);
+    }
+
+    @Benchmark
+    public Object equalize() throws Throwable {
+        return (Object) kernels.APPLY_LUT.invokeExact(gray, eqLut, threads);
+    }
+
+    /** threshold.run: mask gray >= T พร้อม histogram ในรอบเดียว */
+    @Benchmark
+    public Object thresholdSingle() throws Throwable {
+        return (Object) kernels.MASK_RANGE.invokeExact(gray, 128, 255, new int[256]);
+    }
+
+    /** threshold_between.run: mask T1 <= gray <= T2 พร้อม histogram */
+    @Benchmark
+    public Object thresholdDouble() throws Throwable {
+        return (Object) kernels.MASK_RANGE.invokeExact(gray, 85, 170, new int[256]);
+    }
+
+    /** geopros.measureBoth บนภาพเทา (สแกน byte ทีละพิกเซล) */
+    @Benchmark
+    public Object measureBoth() throws Throwable {
+        return (Object) kernels.MEASURE_GRAY.invokeExact(gray, 128);
+    }
+
+    /** geopros.measureBoth บน bit_mask (ตาราง byte ต่อ 8 พิกเซล) */
+    @Benchmark
+    public Object measureBothMask() throws Throwable {
+        return (Object) kernels.MEASURE_MASK.invokeExact(mask);
+    }
+
+    /** moment ถึงอันดับ 3 + Hu φ1..φ7 บน mask */
+    @Benchmark
+    public double[] huMoments() throws Throwable {
+        Object ms = (Object) kernels.SUMS_OF_MASK.invokeExact(mask);
+        return (double[]) kernels.SUMS_HU.invokeExact(ms);
+    }
+}
@@ -0,0 +1,75 @@
+// kernels.java
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * ทางเข้าสู่ kernel ของ default package (JMH ต้องการให้ benchmark อยู่ใน package จึง import ตรง ๆ ไม่ได้)
+ * ใช้ static final MethodHandle ซึ่ง JIT มองเป็นค่าคงที่และ inline ได้ ไม่มี overhead แบบ reflection
+ */
+final class kernels {
+    private kernels() {}
+
+    static final MethodHandle GRAY_NEW;       // new gray_image(w, h)
+    static final MethodHandle GRAY_DATA;      // gray_image.data
+    static final MethodHandle HISTOGRAM;      // parallel_histogram.histogram(g, threads)
+    static final MethodHandle APPLY_LUT;      // parallel_histogram.applyLut(g, lut, threads)
+    static final MethodHandle MASK_RANGE;     // bit_mask.range(g, lo, hi, hist)
+    static final MethodHandle MEASURE_GRAY;   // geopros.measureBoth(g, thr)
+    static final MethodHandle MEASURE_MASK;   // geopros.measureBoth(mask)
+    static final MethodHandle SUMS_OF_MASK;   // moment_sums.of(mask)
+    static final MethodHandle SUMS_HU;        // moment_sums#hu()
+
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.publicLookup();
+            Class<?> gray = Class.forName("gray_image");
+            Class<?> mask = Class.forName("bit_mask");
+            Class<?> hist = Class.forName("parallel_histogram");
+            Class<?> geo = Class.forName("geopros");
+            Class<?> sums = Class.forName("moment_sums");
+            Class<?> both = Class.forName("geopros$BothResult");
+
+            GRAY_NEW = generic(l.findConstructor(gray, MethodType.methodType(void.class, int.class, int.class)));
+            GRAY_DATA = generic(l.findGetter(gray, "data", byte[].class));
+            HISTOGRAM = generic(l.findStatic(hist, "histogram", MethodType.methodType(int[].class, gray, int.class)));
+            APPLY_LUT = generic(l.findStatic(hist, "applyLut", MethodType.methodType(gray, gray, int[].class, int.class)));
+            MASK_RANGE = generic(l.findStatic(mask, "range",
+                    MethodType.methodType(mask, gray, int.class, int.class, int[].class)));
+            MEASURE_GRAY = generic(l.findStatic(geo, "measureBoth", MethodType.methodType(both, gray, int.class)));
+            MEASURE_MASK = generic(l.findStatic(geo, "measureBoth", MethodType.methodType(both, mask)));
+            SUMS_OF_MASK = generic(l.findStatic(sums, "of", MethodType.methodType(sums, mask)));
+            SUMS_HU = generic(l.findVirtual(sums, "hu", MethodType.methodType(double[].class)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // ชนิดของ default package -> Object เพื่อให้เรียก invokeExact จากที่นี่ได้
+    private static MethodHandle generic(MethodHandle mh) {
+        MethodType t = mh.type();
+        for (int k = 0; k < t.parameterCount(); k++) {
+            if (!t.parameterType(k).isPrimitive() && !t.parameterType(k).isArray()) t = t.changeParameterType(k, Object.class);
+        }
+        if (!t.returnType().isPrimitive() && !t.returnType().isArray()) t = t.changeReturnType(Object.class);
+        return mh.asType(t);
+    }
+
+    /** ภาพสังเคราะห์ขนาด ~mp ล้านพิกเซล (สี่เหลี่ยมจัตุรัส): gradient + noise แบบกำหนดได้ */
+    static Object syntheticGray(double mp) throws Throwable {
+        int side = (int) Math.round(Math.sqrt(mp * 1e6));
+        Object g = (Object) GRAY_NEW.invokeExact(side, side);
+        byte[] d = (byte[]) GRAY_DATA.invokeExact(g);
+        int seed = 12345;
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                seed = seed * 1103515245 + 12345;
+                int v = ((i + j) * 255) / (2 * side) + ((seed >>> 16) & 63) - 32;
+                d[i * side + j] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        return g;
+    }
+}
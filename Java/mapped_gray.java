@@ -0,0 +1,141 @@
+// mapped_gray.java
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ภาพเทา 8 บิตจากไฟล์ PGM (P5, maxval 255) หรือ RAW ผ่าน FileChannel.map โดยไม่ decode และไม่คัดลอกทั้งภาพ
+ * kernel อ่านทีละแถว/แถบจาก page cache ตรง ๆ (histogram, LUT ของ equalization, threshold -> bit_mask)
+ * ภาพที่ต้องอยู่บน heap จริงมีแค่ผลลัพธ์ (ภาพ equalized / mask 1 บิต)
+ *
+ * map ไฟล์ที่เกิน 2^31 พิกเซลได้ (ทีละก้อน) และ strip() อ่านทีละแถบได้เสมอ (histro_stream ใช้ทางนี้)
+ * แต่งานทั้งภาพ (histogram int[], ภาพ equalized, range(), toGray()) รับได้ไม่เกิน gray_image.MAX_PIXELS
+ * ภาพที่ใหญ่กว่านั้นได้ IllegalArgumentException ก่อนอ่านพิกเซล
+ *
+ * ค่าพิกเซลคือระดับเทาในไฟล์ (เหมือน gray_image.of ของภาพที่ image_codec.read คืนมา)
+ * mapping ยังใช้ได้หลัง close() จนกว่าจะถูก GC (ข้อจำกัดของ MappedByteBuffer)
+ */
+public final class mapped_gray implements AutoCloseable {
+    public final int width, height;
+    private final FileChannel ch;
+    private final MappedByteBuffer[] maps;   // แต่ละก้อนครอบคลุม rowsPerMap แถวเต็ม ๆ
+    private final int rowsPerMap;
+
+    /** ขนาดสูงสุดต่อ mapping (ต่ำกว่าขีด 2 GiB ของ ByteBuffer) */
+    private static final long MAP_BYTES = 1L << 30;
+    /** แถบละราว ๆ นี้ (พิกเซล) สำหรับงานที่ใช้ buffer ชั่วคราว */
+    private static final int STRIP_PIXELS = 1 << 20;
+
+    private mapped_gray(FileChannel ch, long dataOffset, int width, int height) throws IOException {
+        this.ch = ch; this.width = width; this.height = height;
+        this.rowsPerMap = (int) Math.max(1, Math.min(height, MAP_BYTES / Math.max(1, width)));
+        int n = (height + rowsPerMap - 1) / rowsPerMap;
+        this.maps = new MappedByteBuffer[n];
+        for (int k = 0; k < n; k++) {
+            int rows = Math.min(rowsPerMap, height - k * rowsPerMap);
+            maps[k] = ch.map(FileChannel.MapMode.READ_ONLY, dataOffset + (long) k * rowsPerMap * width, (long) rows * width);
+        }
+    }
+
+    /** PGM แบบ P5 maxval 255 (maxval อื่นใช้ image_codec.readPgm ซึ่งขยายค่าให้) */
+    public static mapped_gray open(File f) throws IOException {
+        FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+        try {
+            CountingStream in = new CountingStream(Channels.newInputStream(ch));
+            int[] hdr = image_codec.pgmHeader(in, f);
+            if (hdr[2] != 255) throw new IllegalArgumentException("Only maxval 255 PGM can be mapped: " + f);
+            checkSize(f, ch, in.count, hdr[0], hdr[1]);
+            return new mapped_gray(ch, in.count, hdr[0], hdr[1]);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** RAW ไม่มี header: byte ละพิกเซล, row-major */
+    public static mapped_gray openRaw(File f, int width, int height) throws IOException {
+        if (width < 0 || height < 0) throw new IllegalArgumentException("Bad RAW size: " + width + "x" + height);
+        FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+        try {
+            checkSize(f, ch, 0, width, height);
+            return new mapped_gray(ch, 0, width, height);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** ไฟล์ที่ open() map ได้หรือไม่ (PGM P5 ที่ maxval 255) จาก header */
+    public static boolean canMap(File f) throws IOException {
+        return image_codec.isPgm(f) && image_codec.pgmMaxval(f) == 255;
+    }
+
+    private static void checkSize(File f, FileChannel ch, long offset, int w, int h) throws IOException {
+        long need = offset + (long) w * h;
+        if (ch.size() < need)
+            throw new IllegalArgumentException("Truncated image: " + f + " has " + ch.size() + " bytes, expected " + need);
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    // ======================= อ่านทีละแถว / แถบ =======================
+
+    /** คัดลอกแถว i ลง dst[off..off+width) (thread-safe) */
+    public void row(int i, byte[] dst, int off) {
+        ByteBuffer b = maps[i / rowsPerMap].duplicate();
+        b.position((i % rowsPerMap) * width);
+        b.get(dst, off, width);
+    }
+
+    /** จำนวนแถวต่อแถบที่ใช้กับ strip() */
+    public int stripRows() {
+        return Math.max(1, Math.min(height, STRIP_PIXELS / Math.max(1, width)));
+    }
+
+    /** แถว y..y+n-1 เป็น gray_image บน scratch (ใช้ซ้ำได้; ต้องยาว >= n * width) */
+    public gray_image strip(int y, int n, byte[] scratch) {
+        for (int u = 0; u < n; u++) row(y + u, scratch, u * width);
+        return new gray_image(scratch, width, n, width, 0);
+    }
+
+    /** ทั้งภาพบน heap (คัดลอกครั้งเดียว; ใช้เมื่อต้องวาดภาพ) */
+    public gray_image toGray() {
+        gray_image.checkedSize(width, height);
+        gray_image g = new gray_image(width, height);
+        for (int i = 0; i < height; i++) row(i, g.data, i * width);
+        return g;
+    }
+
+    /** เหมือน bit_mask.range(gray_image, lo, hi, hist) โดยอ่านทีละแถบ */
+    public bit_mask range(int lo, int hi, int[] hist) {
+        gray_image.checkedSize(width, height);   // hist เป็น int[]
+        bit_mask m = new bit_mask(width, height);
+        int rows = stripRows();
+        byte[] scratch = new byte[rows * width];
+        for (int y = 0; y < height; y += rows) {
+            int n = Math.min(rows, height - y);
+            bit_mask.range(strip(y, n, scratch), lo, hi, hist, m.words, y * m.wordsPerRow);   // hist สะสมต่อกันได้
+        }
+        return m;
+    }
+
+    // นับ byte ที่อ่านไปแล้ว (= ตำแหน่งเริ่มของพิกเซลหลัง header)
+    private static final class CountingStream extends InputStream {
+        private final InputStream in;
+        long count = 0;
+        CountingStream(InputStream in) { this.in = in; }
+        @Override public int read() throws IOException {
+            int c = in.read();
+            if (c >= 0) count++;
+            return c;
+        }
+    }
+}
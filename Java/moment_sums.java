@@ -0,0 +1,297 @@
+// moment_sums.java
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * ผลรวม moment ดิบทุกตัวจนถึงอันดับ 3 (R_pq = Σ i^p j^q f(i,j), p+q <= 3) จากการสแกนภาพรอบเดียว
+ * แล้วหา central / normalized / Hu จากผลรวมเหล่านี้ทางพีชคณิต ไม่ต้องสแกนภาพซ้ำ
+ *
+ * แกนเดียวกับ image_moment: p = กำลังของแถว i (y), q = กำลังของคอลัมน์ j (x)
+ * ภาพ binary สะสมเป็นจำนวนเต็ม (long ต่อแถว, 128 บิตข้ามแถว) จึงไม่มี rounding error สะสม
+ * และการกระจาย μ_pq จาก R_pq ทำด้วย BigDecimal แบบ exact ก่อนหารครั้งสุดท้าย
+ */
+public final class moment_sums {
+    private static final MathContext MC = MathContext.DECIMAL128;
+
+    private final BigDecimal[][] R = new BigDecimal[4][4];   // R[p][q], p+q <= 3
+
+    private moment_sums() {}
+
+    /** ภาพ binary: พิกเซลที่ gray >= thr นับเป็น 1 */
+    public static moment_sums of(gray_image img, int thr) {
+        return scan(img, thr, false);
+    }
+
+    /** ภาพเทาถ่วงน้ำหนัก: f(i,j) = ระดับเทา 0..255 (เท่ากับ of(image_moment.toLevelMatrix(img))) */
+    public static moment_sums weighted(gray_image img) {
+        return scan(img, 0, true);
+    }
+
+    // คอลัมน์ต่อบล็อก: ผลรวม Σ w t³ ภายในบล็อก (t < BLOCK, w <= 255) ไม่ล้น long
+    private static final int BLOCK = 4096;
+    // แถวที่มี run ไม่เกินเท่านี้ต่อ word คิดจากขอบของ run เร็วกว่านับบิต (วัดบน mask ก้อนใหญ่/noise)
+    private static final int RUNS_PER_WORD = 2;
+
+    private static moment_sums scan(gray_image img, int thr, boolean weighted) {
+        final int H = img.height, W = img.width;
+        final byte[] d = img.data;
+        Accumulator acc = new Accumulator();
+        for (int i = 0; i < H; i++) {
+            int p = img.offset + i * img.stride;
+            for (int b = 0; b < W; b += BLOCK) {
+                int n = Math.min(BLOCK, W - b), q = p + b;
+                long c = 0, s1 = 0, s2 = 0, s3 = 0;   // Σ w, Σ w t, Σ w t², Σ w t³ (t = j - b)
+                for (int t = 0; t < n; t++) {
+                    int v = d[q + t] & 0xFF;
+                    long w = weighted ? v : (v >= thr ? 1 : 0);
+                    if (w == 0) continue;
+                    long tt = (long) t * t;
+                    c += w; s1 += w * t; s2 += w * tt; s3 += w * tt * t;
+                }
+                acc.addBlock(i, b, c, s1, s2, s3);
+            }
+        }
+        return acc.build();
+    }
+
+    /** bit_mask: บิต 1 นับเป็นวัตถุ (ต่อแถว: ขอบของ run หรือผลรวมจากตาราง byte ของ bit_mask) */
+    public static moment_sums of(bit_mask m) {
+        return new Accumulator().add(m, 0).build();
+    }
+
+    /**
+     * สะสมผลรวมจำนวนเต็มทีละแถว/ทีละบล็อก (แบบ 128 บิต) แล้วค่อย build ครั้งเดียว
+     * แถวและคอลัมน์ต้องน้อยกว่า 2^21 (i³, b³ ต้องไม่ล้น long)
+     */
+    public static final class Accumulator {
+        private final long[] hi = new long[10], lo = new long[10];
+        private final long[] s = new long[4];
+        // บล็อกที่กำลังสะสมของแถวปัจจุบันในทาง run (span -> flush ต่อแถว)
+        private long rb = -1, rc, r1, r2, r3;
+
+        /**
+         * บล็อกในแถว i ที่เริ่มคอลัมน์ b: t0..t3 = Σ w t^k โดย t = j - b
+         * กระจาย Σ w j^q = Σ_r C(q,r) b^(q-r) t_r ลงตัวสะสม 128 บิต
+         */
+        public Accumulator addBlock(long i, long b, long t0, long t1, long t2, long t3) {
+            if (t0 == 0) return this;
+            long[] t = {t0, t1, t2, t3};
+            long[] ip = {1, i, i * i, i * i * i};
+            long[] bp = {1, b, b * b, b * b * b};
+            for (int k = 0; k < 10; k++) {
+                int p = P[k], q = Q[k];
+                for (int r = 0; r <= q; r++) {
+                    if (r < q && b == 0) continue;
+                    add128(hi, lo, k, ip[p] * bp[q - r], binom(q, r) * t[r]);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * แถบ mask ที่แถว 0 ตรงกับแถว row0 ของภาพเต็ม
+         * เลือกต่อแถว: run น้อย (ก้อนใหญ่) -> คิดจากขอบของ run, run ถี่ (noise) -> นับทีละ word จากตาราง byte
+         * ผลเป็นจำนวนเต็มเท่ากันทุกบิตไม่ว่าทางไหน
+         */
+        public Accumulator add(bit_mask m, int row0) {
+            for (int r = 0; r < m.height; r++) {
+                if (m.runCount(r) <= RUNS_PER_WORD * m.wordsPerRow) runRow(m, r, row0 + r);
+                else wordRow(m, r, row0 + r);
+            }
+            return this;
+        }
+
+        /**
+         * คิดจากขอบของ run อย่างเดียว (Green's theorem แบบไม่ต่อเนื่อง): run [s, e] ของแต่ละแถว
+         * ให้ Σ t^k = F_k(e) - F_k(s - 1) จากสูตรปิด งานจึงตามจำนวน run ไม่ใช่จำนวนพิกเซล
+         * (word ที่เป็น 0 หรือ 1 ทั้ง word ถูกข้ามใน nextSet/nextClear)
+         */
+        public Accumulator addRuns(bit_mask m, int row0) {
+            for (int r = 0; r < m.height; r++) runRow(m, r, row0 + r);
+            return this;
+        }
+
+        // ทีละ 64 word = 4096 คอลัมน์
+        private void wordRow(bit_mask m, int r, long i) {
+            for (int k0 = 0; k0 < m.wordsPerRow; k0 += 64) {
+                m.blockSums(r, k0, Math.min(m.wordsPerRow, k0 + 64), false, s);
+                addBlock(i, (long) k0 << 6, s[0], s[1], s[2], s[3]);
+            }
+        }
+
+        private void runRow(bit_mask m, int r, long i) {
+            for (int s = m.nextSet(r, 0); s < m.width; ) {
+                int e = m.nextClear(r, s);
+                span(i, s, e);
+                s = (e + 1 < m.width) ? m.nextSet(r, e + 1) : m.width;
+            }
+            flush(i);
+        }
+
+        /** rle_mask: run [s, e) ของแต่ละแถวตรง ๆ (แถว 0 ตรงกับแถว row0 ของภาพเต็ม) */
+        public Accumulator add(rle_mask m, int row0) {
+            for (int r = 0; r < m.height; r++) {
+                long i = row0 + r;
+                for (int k = m.rowStart[r]; k < m.rowStart[r + 1]; k++) span(i, m.runs[2 * k], m.runs[2 * k + 1]);
+                flush(i);
+            }
+            return this;
+        }
+
+        // run [s, e) ของแถว i เรียงซ้ายไปขวา; ตัดที่บล็อก BLOCK คอลัมน์ (t < BLOCK -> F_3 ไม่ล้น long)
+        private void span(long i, int s, int e) {
+            while (s < e) {
+                long blk = s & -BLOCK;
+                int end = (int) Math.min(e, blk + BLOCK);
+                if (blk != rb) {
+                    flush(i);
+                    rb = blk;
+                }
+                long hi = end - 1 - blk, lo = s - blk - 1;
+                rc += hi - lo;
+                r1 += f1(hi) - f1(lo);
+                r2 += f2(hi) - f2(lo);
+                r3 += f3(hi) - f3(lo);
+                s = end;
+            }
+        }
+
+        private void flush(long i) {
+            if (rc != 0) addBlock(i, rb, rc, r1, r2, r3);
+            rb = -1; rc = r1 = r2 = r3 = 0;
+        }
+
+        public moment_sums build() {
+            moment_sums ms = new moment_sums();
+            for (int k = 0; k < 10; k++) ms.R[P[k]][Q[k]] = new BigDecimal(toBig(hi[k], lo[k]));
+            return ms;
+        }
+    }
+
+    /** bit_mask จากขอบของ run ทุกแถว (ผลเท่ากับ of(m) ซึ่งเลือกทางนี้เองในแถวที่ run ไม่ถี่) */
+    public static moment_sums ofRuns(bit_mask m) {
+        return new Accumulator().addRuns(m, 0).build();
+    }
+
+    /** rle_mask: run นับเป็นวัตถุ (งานตามจำนวน run) */
+    public static moment_sums of(rle_mask m) {
+        return new Accumulator().add(m, 0).build();
+    }
+
+    // F_k(x) = Σ_{t=0..x} t^k (x >= -1)
+    private static long f1(long x) { return x * (x + 1) / 2; }
+    private static long f2(long x) { return x * (x + 1) * (2 * x + 1) / 6; }
+    private static long f3(long x) { long t = f1(x); return t * t; }
+
+    /** ภาพถ่วงน้ำหนักใด ๆ (double[h][w]) เช่นผลของ image_moment.toGrayMatrix */
+    public static moment_sums of(double[][] f) {
+        BigDecimal[] acc = new BigDecimal[10];
+        java.util.Arrays.fill(acc, BigDecimal.ZERO);
+        for (int i = 0; i < f.length; i++) {
+            double[] row = f[i];
+            double c = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int j = 0; j < row.length; j++) {
+                double v = row[j];
+                if (v == 0.0) continue;
+                c += v; s1 += v * j; s2 += v * j * j; s3 += v * j * j * j;
+            }
+            if (c == 0 && s1 == 0 && s2 == 0 && s3 == 0) continue;
+            BigDecimal[] s = { new BigDecimal(c), new BigDecimal(s1), new BigDecimal(s2), new BigDecimal(s3) };
+            BigDecimal bi = BigDecimal.valueOf(i);
+            for (int k = 0; k < 10; k++) acc[k] = acc[k].add(bi.pow(P[k]).multiply(s[Q[k]]));
+        }
+        moment_sums m = new moment_sums();
+        for (int k = 0; k < 10; k++) m.R[P[k]][Q[k]] = acc[k];
+        return m;
+    }
+
+    // ลำดับ (p, q) ของ R ทั้ง 10 ตัว
+    private static final int[] P = {0, 0, 0, 0, 1, 1, 1, 2, 2, 3};
+    private static final int[] Q = {0, 1, 2, 3, 0, 1, 2, 0, 1, 0};
+
+    // {hi, lo}[k] += a * b แบบ 128 บิต (a, b >= 0)
+    private static void add128(long[] hi, long[] lo, int k, long a, long b) {
+        long pl = a * b, ph = Math.multiplyHigh(a, b);
+        long sum = lo[k] + pl;
+        if (Long.compareUnsigned(sum, pl) < 0) ph++;
+        lo[k] = sum;
+        hi[k] += ph;
+    }
+
+    private static BigInteger toBig(long hi, long lo) {
+        return BigInteger.valueOf(hi).shiftLeft(64).add(new BigInteger(Long.toUnsignedString(lo)));
+    }
+
+    // ---------- ค่าที่ได้ ----------
+
+    /** M_pq = Σ i^p j^q f (p+q <= 3) */
+    public double raw(int p, int q) {
+        return rawExact(p, q).doubleValue();
+    }
+
+    /** μ_pq = Σ (i-ȳ)^p (j-x̄)^q f; ไม่มีวัตถุ -> 0 (เหมือน image_moment.centralMoment) */
+    public double central(int p, int q) {
+        BigDecimal r00 = R[0][0];
+        if (r00.signum() == 0) return 0.0;
+        // μ_pq * R00^(p+q) = Σ_a Σ_b C(p,a) C(q,b) (-R10)^(p-a) (-R01)^(q-b) R_ab R00^(a+b)
+        BigDecimal nr10 = R[1][0].negate(), nr01 = R[0][1].negate();
+        BigDecimal num = BigDecimal.ZERO;
+        for (int a = 0; a <= p; a++) {
+            for (int b = 0; b <= q; b++) {
+                BigDecimal t = BigDecimal.valueOf(binom(p, a) * binom(q, b))
+                        .multiply(nr10.pow(p - a)).multiply(nr01.pow(q - b))
+                        .multiply(rawExact(a, b)).multiply(r00.pow(a + b));
+                num = num.add(t);
+            }
+        }
+        return num.divide(r00.pow(p + q), MC).doubleValue();
+    }
+
+    public double mu00() {
+        return raw(0, 0);
+    }
+
+    /** η_pq = μ_pq / μ_00^{1 + (p+q)/2} */
+    public double normalized(int p, int q) {
+        double mu00 = mu00();
+        if (mu00 == 0.0) return 0.0;
+        double gamma = 1.0 + 0.5 * (p + q);
+        return central(p, q) / Math.pow(mu00, gamma);
+    }
+
+    /** Hu φ1..φ7 */
+    public double[] hu() {
+        return hu(normalized(2, 0), normalized(0, 2), normalized(1, 1),
+                  normalized(3, 0), normalized(0, 3), normalized(2, 1), normalized(1, 2));
+    }
+
+    /** Hu φ1..φ7 จาก normalized central moments */
+    public static double[] hu(double n20, double n02, double n11,
+                              double n30, double n03, double n21, double n12) {
+        double[] phi = new double[7];
+        phi[0] = n20 + n02;
+        phi[1] = (n20 - n02) * (n20 - n02) + 4.0 * n11 * n11;
+        phi[2] = (n30 - 3 * n12) * (n30 - 3 * n12) + (3 * n21 - n03) * (3 * n21 - n03);
+        phi[3] = (n30 + n12) * (n30 + n12) + (n21 + n03) * (n21 + n03);
+        phi[4] = (n30 - 3 * n12) * (n30 + n12) * ((n30 + n12) * (n30 + n12) - 3 * (n21 + n03) * (n21 + n03))
+               + (3 * n21 - n03) * (n21 + n03) * (3 * (n30 + n12) * (n30 + n12) - (n21 + n03) * (n21 + n03));
+        phi[5] = (n20 - n02) * ((n30 + n12) * (n30 + n12) - (n21 + n03) * (n21 + n03))
+               + 4.0 * n11 * (n30 + n12) * (n21 + n03);
+        phi[6] = (3 * n21 - n03) * (n30 + n12) * ((n30 + n12) * (n30 + n12) - 3 * (n21 + n03) * (n21 + n03))
+               - (n30 - 3 * n12) * (n21 + n03) * (3 * (n30 + n12) * (n30 + n12) - (n21 + n03) * (n21 + n03));
+        return phi;
+    }
+
+    private BigDecimal rawExact(int p, int q) {
+        if (p < 0 || q < 0 || p + q > 3)
+            throw new IllegalArgumentException("moment_sums supports p+q <= 3, got p=" + p + " q=" + q);
+        return R[p][q];
+    }
+
+    private static long binom(int n, int k) {
+        long r = 1;
+        for (int t = 1; t <= k; t++) r = r * (n - k + t) / t;
+        return r;
+    }
+}
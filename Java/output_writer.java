@@ -0,0 +1,114 @@
+// output_writer.java
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * เขียนไฟล์ผลลัพธ์ (encode PNG / เขียน .txt) บน thread pool เบื้องหลัง ให้ kernel ทำงานต่อได้ทันที
+ * - backpressure: งานที่ค้างรวมทุก group ไม่เกิน queue งาน (เต็ม -> ผู้ส่งรอ)
+ * - Group = งานของการรัน 1 ครั้ง: await() รอเฉพาะงานของตัวเองและโยน error แรกกลับไปให้ผู้เรียก
+ */
+public final class output_writer implements AutoCloseable {
+
+    /** งานเขียนไฟล์ 1 ชิ้น */
+    @FunctionalInterface
+    public interface io_task {
+        void run() throws IOException;
+    }
+
+    private final ExecutorService pool;
+    private final Semaphore slots;
+
+    /** threads <= 0 -> ครึ่งหนึ่งของ core (อย่างน้อย 1); queue = งานค้างสูงสุด */
+    public output_writer(int threads, int queue) {
+        int n = (threads <= 0) ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : threads;
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "histro-writer-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.slots = new Semaphore(Math.max(1, queue));
+    }
+
+    public output_writer(int threads) {
+        this(threads, 32);
+    }
+
+    public Group group() {
+        return new Group();
+    }
+
+    /** รอให้งานที่ค้างทั้งหมดเสร็จแล้วปิด pool; ถูก interrupt ระหว่างรอ -> InterruptedIOException (ตั้ง flag interrupt คืน) */
+    @Override
+    public void close() throws IOException {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing output writer");
+        }
+    }
+
+    public final class Group {
+        private int pending = 0;
+        private final List<Throwable> errors = new ArrayList<>();
+
+        private Group() {}
+
+        /** ส่งงานเข้าคิว (รอถ้าคิวเต็ม); file ใช้เป็นชื่อในข้อความ error */
+        public void submit(File file, io_task task) throws IOException {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while queueing " + file);
+            }
+            synchronized (this) { pending++; }
+            try {
+                pool.execute(() -> {
+                    Throwable err = null;
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        err = t;
+                    } finally {
+                        slots.release();
+                        done(file, err);
+                    }
+                });
+            } catch (RuntimeException e) {   // pool ถูกปิดไปแล้ว
+                slots.release();
+                done(file, e);
+            }
+        }
+
+        private synchronized void done(File file, Throwable err) {
+            if (err != null) errors.add(new IOException("Cannot write " + file + ": " + err.getMessage(), err));
+            if (--pending == 0) notifyAll();
+        }
+
+        /** รองานของ group นี้ให้เสร็จ; มีงานล้มเหลว -> IOException (งานอื่นแนบเป็น suppressed) */
+        public synchronized void await() throws IOException {
+            try {
+                while (pending > 0) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while flushing outputs");
+            }
+            if (errors.isEmpty()) return;
+            IOException first = (IOException) errors.get(0);
+            for (int k = 1; k < errors.size(); k++) first.addSuppressed(errors.get(k));
+            errors.clear();
+            throw first;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+// parallel_histogram.java
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * histogram และการใส่ LUT แบบขนานด้วย ForkJoinPool
+ * แบ่งงานเป็นช่วงแถว แต่ละช่วงนับลง int[256] ของตัวเองแล้วค่อยรวมตอน join
+ * ผลเป็นจำนวนเต็มล้วน จึงเท่ากับแบบ serial ทุกบิตไม่ว่าจะใช้กี่ thread
+ */
+public class parallel_histogram {
+
+    /** งานย่อยต่ำสุดราว ๆ นี้ (พิกเซล) เล็กกว่านี้ไม่คุ้มค่า fork */
+    private static final int MIN_PIXELS_PER_TASK = 1 << 16;
+
+    /** parallelism สูงสุดของ ForkJoinPool (มากกว่านี้ new ForkJoinPool โยน IllegalArgumentException) */
+    private static final int MAX_THREADS = 0x7fff;
+
+    /**
+     * pool ของจำนวน thread ที่ไม่ใช่ค่า default จำไว้ไม่เกินเท่านี้ (ตามการใช้ล่าสุด)
+     * ตัวที่หลุดออกไม่ถูก shutdown: caller อื่นอาจได้ pool นั้นไปแล้วและยัง invoke อยู่
+     * worker ที่ว่างหมดเวลาแล้วจบเอง pool ที่ไม่มีใครถือจึงถูก GC ไปเอง
+     */
+    private static final int MAX_POOLS = 4;
+
+    private static final Map<Integer, ForkJoinPool> POOLS = new LinkedHashMap<Integer, ForkJoinPool>(8, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, ForkJoinPool> e) {
+            return size() > MAX_POOLS;
+        }
+    };
+
+    /** threads <= 0 -> ใช้ทุก core, 1 -> serial; ไม่เกิน 32767 (ขีดของ ForkJoinPool) */
+    public static int resolveThreads(int threads) {
+        return (threads <= 0) ? Runtime.getRuntime().availableProcessors() : Math.min(threads, MAX_THREADS);
+    }
+
+    /**
+     * ผลของ lumaHistogram: ภาพ luma (ไว้ใส่ LUT ต่อ), histogram และภาพเทาหรือไม่
+     * r, g, b = histogram ของแต่ละ channel (null ถ้าไม่ได้ขอ)
+     */
+    public static final class LumaScan {
+        public final gray_image gray;
+        public final int[] h;
+        public final boolean isGray;
+        public final int[] r, g, b;
+        LumaScan(gray_image gray, int[] h, boolean isGray, int[][] rgb) {
+            this.gray = gray; this.h = h; this.isGray = isGray;
+            this.r = (rgb == null) ? null : rgb[0];
+            this.g = (rgb == null) ? null : rgb[1];
+            this.b = (rgb == null) ? null : rgb[2];
+        }
+    }
+
+    public static LumaScan lumaHistogram(BufferedImage img, int threads) {
+        return lumaHistogram(img, threads, false);
+    }
+
+    /**
+     * แปลง luma + นับ histogram + ตรวจ R == G == B ในการอ่านพิกเซลรอบเดียว (แทน isGray, luma, histogram แยกกัน)
+     * channels -> นับ histogram ของ R, G, B ในรอบเดียวกันด้วย
+     * ผลเท่ากับ gray_image.luma / histogram / gray_image.isGray ทุกบิต
+     * ภาพเทาที่ raster เก็บระดับเทาตรง ๆ ข้ามการแปลง: gray ใช้ byte[] ของ raster ร่วมกัน (ห้ามแก้) แค่นับ histogram
+     */
+    public static LumaScan lumaHistogram(BufferedImage img, int threads, boolean channels) {
+        gray_image.converter c = new gray_image.converter(img, true);
+        int n = resolveThreads(threads);
+        gray_image v = c.view();
+        if (v != null) {
+            int[] h = histogram(v, n);
+            return new LumaScan(v, h, true, channels ? new int[][] { h.clone(), h.clone(), h.clone() } : null);
+        }
+        gray_image g = new gray_image(c.width, c.height);
+        ScanPart r = (n == 1) ? scanRows(c, g, 0, c.height, channels)
+                              : pool(n).invoke(new ScanTask(c, g, 0, c.height, grain(g, n), channels));
+        return new LumaScan(g, r.h, r.gray, r.rgb);
+    }
+
+    /** histogram 256 ช่องของ g */
+    public static int[] histogram(gray_image g, int threads) {
+        int n = resolveThreads(threads);
+        if (n == 1) return countRows(g, 0, g.height);
+        return pool(n).invoke(new HistTask(g, 0, g.height, grain(g, n)));
+    }
+
+    /** ภาพใหม่ out = lut[g] */
+    public static gray_image applyLut(gray_image g, int[] lut, int threads) {
+        int n = resolveThreads(threads);
+        if (n == 1) return g.map(lut);
+        byte[] l = new byte[256];
+        for (int k = 0; k < 256; k++) l[k] = (byte) lut[k];
+        gray_image out = new gray_image(g.width, g.height);
+        pool(n).invoke(new LutTask(g, out, l, 0, g.height, grain(g, n)));
+        return out;
+    }
+
+    /** histogram ของภาพที่ map จากไฟล์ (อ่านทีละแถวจาก page cache ไม่คัดลอกทั้งภาพ) */
+    public static int[] histogram(mapped_gray m, int threads) {
+        gray_image.checkedSize(m.width, m.height);   // ช่องเป็น int และภาพ equalized ต้องอยู่บน heap ต่อ
+        int n = resolveThreads(threads);
+        if (n == 1) return countRows(m, 0, m.height);
+        return pool(n).invoke(new MappedHistTask(m, 0, m.height, grain(m.width, m.height, n)));
+    }
+
+    /** ภาพใหม่บน heap out = lut[m]: แต่ละแถวคัดลอกจาก mapping ลงปลายทางแล้วแปลงในที่ */
+    public static gray_image applyLut(mapped_gray m, int[] lut, int threads) {
+        byte[] l = new byte[256];
+        for (int k = 0; k < 256; k++) l[k] = (byte) lut[k];
+        gray_image out = new gray_image(m.width, m.height);
+        int n = resolveThreads(threads);
+        if (n == 1) lutRows(m, out, l, 0, m.height);
+        else pool(n).invoke(new MappedLutTask(m, out, l, 0, m.height, grain(m.width, m.height, n)));
+        return out;
+    }
+
+    private static int grain(gray_image g, int threads) {
+        return grain(g.width, g.height, threads);
+    }
+
+    // ~4 งานต่อ thread ให้ work-stealing เกลี่ยได้ แต่ไม่เล็กกว่า MIN_PIXELS_PER_TASK
+    private static int grain(int width, int height, int threads) {
+        int w = Math.max(1, width);
+        int byThreads = (height + threads * 4 - 1) / (threads * 4);
+        int byPixels = (MIN_PIXELS_PER_TASK + w - 1) / w;
+        return Math.max(1, Math.max(byThreads, byPixels));
+    }
+
+    // threads = ทุก core (ค่า default) -> common pool (caller thread ช่วยทำงานด้วย จึงได้ครบทุก core)
+    private static ForkJoinPool pool(int threads) {
+        if (threads == Runtime.getRuntime().availableProcessors()) return ForkJoinPool.commonPool();
+        synchronized (POOLS) {
+            return POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+        }
+    }
+
+    private static int[] countRows(gray_image g, int from, int to) {
+        int[] h = new int[256];
+        byte[] d = g.data;
+        int J = g.width;
+        for (int u = from; u < to; u++) {
+            int p = g.offset + u * g.stride;
+            for (int v = 0; v < J; v++) h[d[p + v] & 0xFF]++;
+        }
+        return h;
+    }
+
+    private static int[] countRows(mapped_gray m, int from, int to) {
+        int[] h = new int[256];
+        byte[] row = new byte[m.width];
+        for (int u = from; u < to; u++) {
+            m.row(u, row, 0);
+            for (byte b : row) h[b & 0xFF]++;
+        }
+        return h;
+    }
+
+    private static void lutRows(mapped_gray m, gray_image dst, byte[] lut, int from, int to) {
+        byte[] o = dst.data;
+        int J = m.width;
+        for (int u = from; u < to; u++) {
+            int q = dst.offset + u * dst.stride;
+            m.row(u, o, q);
+            for (int v = q; v < q + J; v++) o[v] = lut[o[v] & 0xFF];
+        }
+    }
+
+    // ผลย่อยของ lumaHistogram ต่อช่วงแถว
+    private static final class ScanPart {
+        final int[] h;
+        final int[][] rgb;
+        boolean gray;
+        ScanPart(int[] h, int[][] rgb, boolean gray) { this.h = h; this.rgb = rgb; this.gray = gray; }
+    }
+
+    private static ScanPart scanRows(gray_image.converter c, gray_image g, int from, int to, boolean channels) {
+        int[] h = new int[256];
+        int[][] rgb = channels ? new int[3][256] : null;
+        boolean gray = c.rows(from, to, g.data, h, rgb, true);
+        return new ScanPart(h, rgb, gray);
+    }
+
+    private static final class ScanTask extends RecursiveTask<ScanPart> {
+        private static final long serialVersionUID = 1L;
+        private final gray_image.converter c;
+        private final gray_image g;
+        private final int from, to, grain;
+        private final boolean channels;
+        ScanTask(gray_image.converter c, gray_image g, int from, int to, int grain, boolean channels) {
+            this.c = c; this.g = g; this.from = from; this.to = to; this.grain = grain; this.channels = channels;
+        }
+        @Override protected ScanPart compute() {
+            if (to - from <= grain) return scanRows(c, g, from, to, channels);
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(c, g, from, mid, grain, channels);
+            left.fork();
+            ScanPart r = new ScanTask(c, g, mid, to, grain, channels).compute();
+            ScanPart l = left.join();
+            for (int k = 0; k < 256; k++) r.h[k] += l.h[k];
+            if (r.rgb != null)
+                for (int ch = 0; ch < 3; ch++)
+                    for (int k = 0; k < 256; k++) r.rgb[ch][k] += l.rgb[ch][k];
+            r.gray &= l.gray;
+            return r;
+        }
+    }
+
+    private static final class HistTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        private final gray_image g;
+        private final int from, to, grain;
+        HistTask(gray_image g, int from, int to, int grain) {
+            this.g = g; this.from = from; this.to = to; this.grain = grain;
+        }
+        @Override protected int[] compute() {
+            if (to - from <= grain) return countRows(g, from, to);
+            int mid = (from + to) >>> 1;
+            HistTask left = new HistTask(g, from, mid, grain);
+            left.fork();
+            int[] h = new HistTask(g, mid, to, grain).compute();
+            int[] hl = left.join();
+            for (int k = 0; k < 256; k++) h[k] += hl[k];
+            return h;
+        }
+    }
+
+    private static final class LutTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final gray_image src, dst;
+        private final byte[] lut;
+        private final int from, to, grain;
+        LutTask(gray_image src, gray_image dst, byte[] lut, int from, int to, int grain) {
+            this.src = src; this.dst = dst; this.lut = lut;
+            this.from = from; this.to = to; this.grain = grain;
+        }
+        @Override protected void compute() {
+            if (to - from <= grain) {
+                byte[] d = src.data, o = dst.data;
+                int J = src.width;
+                for (int u = from; u < to; u++) {
+                    int p = src.offset + u * src.stride, q = dst.offset + u * dst.stride;
+                    for (int v = 0; v < J; v++) o[q + v] = lut[d[p + v] & 0xFF];
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new LutTask(src, dst, lut, from, mid, grain),
+                      new LutTask(src, dst, lut, mid, to, grain));
+        }
+    }
+
+    private static final class MappedHistTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+        private final mapped_gray m;
+        private final int from, to, grain;
+        MappedHistTask(mapped_gray m, int from, int to, int grain) {
+            this.m = m; this.from = from; this.to = to; this.grain = grain;
+        }
+        @Override protected int[] compute() {
+            if (to - from <= grain) return countRows(m, from, to);
+            int mid = (from + to) >>> 1;
+            MappedHistTask left = new MappedHistTask(m, from, mid, grain);
+            left.fork();
+            int[] h = new MappedHistTask(m, mid, to, grain).compute();
+            int[] hl = left.join();
+            for (int k = 0; k < 256; k++) h[k] += hl[k];
+            return h;
+        }
+    }
+
+    private static final class MappedLutTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final mapped_gray m;
+        private final gray_image dst;
+        private final byte[] lut;
+        private final int from, to, grain;
+        MappedLutTask(mapped_gray m, gray_image dst, byte[] lut, int from, int to, int grain) {
+            this.m = m; this.dst = dst; this.lut = lut;
+            this.from = from; this.to = to; this.grain = grain;
+        }
+        @Override protected void compute() {
+            if (to - from <= grain) { lutRows(m, dst, lut, from, to); return; }
+            int mid = (from + to) >>> 1;
+            invokeAll(new MappedLutTask(m, dst, lut, from, mid, grain),
+                      new MappedLutTask(m, dst, lut, mid, to, grain));
+        }
+    }
+}
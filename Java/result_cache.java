@@ -0,0 +1,208 @@
+// result_cache.java
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * cache ของส่วนที่ไม่ขึ้นกับ threshold ต่อภาพ: histogram, mapEq, ภาพ equalized และตาราง geopros_sweep
+ * key = SHA-256 ของ byte ในไฟล์ input (ไฟล์เดียวกันย้ายที่/เปลี่ยนชื่อก็ยังเจอ)
+ * - ชั้นหน่วยความจำ: LRU จำกัดตามขนาด (byte ของภาพ equalized + ตาราง)
+ * - ชั้นดิสก์ (dir != null): ไฟล์ละ entry &lt;key&gt;.hcache เขียนแบบ tmp + rename จึงไม่มีไฟล์ครึ่ง ๆ
+ *   ไม่มีการลบเอง ลบทั้งโฟลเดอร์ได้ทุกเมื่อ
+ * รันซ้ำด้วย T, T1, T2 ใหม่จึงข้าม decode + histogram + equalization และ geoprops เป็น O(1)
+ * ใช้จากหลาย thread พร้อมกันได้ (batch)
+ */
+public final class result_cache {
+
+    /** เปลี่ยนเมื่อความหมายของ luma/equalization หรือรูปแบบไฟล์เปลี่ยน (อยู่ใน key และ header) */
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x48434531;   // "HCE1"
+
+    /** ผลที่เก็บต่อภาพ (ห้ามแก้: ใช้ร่วมกันระหว่างการรันหลายครั้ง) */
+    public static final class Entry {
+        public final int I, J;
+        public final int[] h, mapEq;
+        public final boolean isGray;
+        public final int[] hR, hG, hB;      // null ถ้าตอนสร้างไม่ได้นับ R, G, B
+        public final gray_image eq;
+        public final geopros_sweep sweep;   // geoprops ของ eq สำหรับทุก T / แถบ
+        Entry(int I, int J, int[] h, int[] mapEq, boolean isGray, int[] hR, int[] hG, int[] hB,
+              gray_image eq, geopros_sweep sweep) {
+            this.I = I; this.J = J; this.h = h; this.mapEq = mapEq; this.isGray = isGray;
+            this.hR = hR; this.hG = hG; this.hB = hB; this.eq = eq; this.sweep = sweep;
+        }
+
+        public static Entry of(histogram.Result r, geopros_sweep sweep) {
+            return new Entry(r.I, r.J, r.h, r.mapEq, r.isGray, r.extras.hR, r.extras.hG, r.extras.hB, r.eq, sweep);
+        }
+
+        long bytes() {
+            return (long) I * J + (hR != null ? 8192 : 5120) + 256 * 40;
+        }
+    }
+
+    private final File dir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits, diskHits, misses;
+
+    /** dir = null -> หน่วยความจำอย่างเดียว; maxBytes = งบของชั้นหน่วยความจำ */
+    public result_cache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = Math.max(0, maxBytes);
+        if (dir != null) dir.mkdirs();
+    }
+
+    /** key ของไฟล์: SHA-256 (hex) ของ VERSION + เนื้อไฟล์ */
+    public static String key(File f) throws IOException {
+        MessageDigest md;
+        try { md = MessageDigest.getInstance("SHA-256"); }
+        catch (NoSuchAlgorithmException e) { throw new IllegalStateException(e); }
+        md.update((byte) VERSION);
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(f)) {
+            int n;
+            while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest()) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    /** หา entry (หน่วยความจำ แล้วดิสก์); channels -> ต้องมี histogram R, G, B ด้วย ไม่งั้นถือว่าไม่เจอ */
+    public Entry get(String key, boolean channels) throws IOException {
+        Entry e;
+        synchronized (this) { e = lru.get(key); }
+        if (e != null && (!channels || e.hR != null)) {
+            synchronized (this) { hits++; }
+            return e;
+        }
+        File f = file(key);
+        if (f != null && f.isFile()) {
+            e = read(f);
+            if (e != null && (!channels || e.hR != null)) {
+                synchronized (this) { diskHits++; remember(key, e); }
+                return e;
+            }
+        }
+        synchronized (this) { misses++; }
+        return null;
+    }
+
+    /** เก็บลงหน่วยความจำ และดิสก์ถ้ามี dir */
+    public void put(String key, Entry e) throws IOException {
+        synchronized (this) { remember(key, e); }
+        File f = file(key);
+        if (f != null) write(f, e);
+    }
+
+    /** "hits=.. (disk ..), misses=.., memory=.. MB in n entries" */
+    public synchronized String stats() {
+        return String.format(java.util.Locale.ROOT, "hits=%d (disk %d), misses=%d, memory=%.1f MB in %d entries",
+                hits + diskHits, diskHits, misses, bytes / 1e6, lru.size());
+    }
+
+    private File file(String key) {
+        return (dir == null) ? null : new File(dir, key + ".hcache");
+    }
+
+    // LRU: ตัดตัวที่ใช้ล่าสุดนานที่สุดออกจนอยู่ในงบ (entry ที่ใหญ่กว่างบทั้งก้อนไม่เก็บในหน่วยความจำ)
+    private void remember(String key, Entry e) {
+        if (e.bytes() > maxBytes) return;
+        Entry old = lru.put(key, e);
+        if (old != null) bytes -= old.bytes();
+        bytes += e.bytes();
+        Iterator<Map.Entry<String, Entry>> it = lru.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().bytes();
+            it.remove();
+        }
+    }
+
+    // ======================= ชั้นดิสก์ =======================
+    // int magic | int version | int I, J | bool isGray, bool rgb | h, mapEq (int * 256) | [hR, hG, hB]
+    // | geopros_sweep | eq (I * J byte เรียงแถว)
+
+    private static void write(File f, Entry e) throws IOException {
+        File tmp = File.createTempFile(f.getName(), ".tmp", f.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(e.I);
+                out.writeInt(e.J);
+                out.writeBoolean(e.isGray);
+                out.writeBoolean(e.hR != null);
+                ints(out, e.h);
+                ints(out, e.mapEq);
+                if (e.hR != null) { ints(out, e.hR); ints(out, e.hG); ints(out, e.hB); }
+                e.sweep.write(out);
+                gray_image g = e.eq;
+                for (int i = 0; i < g.height; i++) out.write(g.data, g.offset + i * g.stride, g.width);
+            }
+            try {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException x) {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    // header 18 byte + h, mapEq + [hR, hG, hB] + sweep (256 * 40) + eq
+    private static long fileBytes(int I, int J, boolean rgb) {
+        return 18 + 2 * 1024 + (rgb ? 3 * 1024 : 0) + 256 * 40 + (long) I * J;
+    }
+
+    // ไฟล์ของ VERSION อื่นหรือเสีย -> null (ถือว่าไม่เจอ แล้วเขียนทับตอน put)
+    // ขนาดใน header ต้องตรงกับความยาวไฟล์ก่อนจองหน่วยความจำ และค่าที่ใช้เป็น index ต้องอยู่ในช่วง
+    private static Entry read(File f) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            int I = in.readInt(), J = in.readInt();
+            boolean isGray = in.readBoolean(), rgb = in.readBoolean();
+            if (I < 0 || J < 0 || (long) I * J > gray_image.MAX_PIXELS || f.length() != fileBytes(I, J, rgb)) return null;
+            int[] h = ints(in), mapEq = ints(in);
+            int[] hR = rgb ? ints(in) : null, hG = rgb ? ints(in) : null, hB = rgb ? ints(in) : null;
+            geopros_sweep sweep = geopros_sweep.read(in);
+            long n = 0, ns = 0;
+            for (int v = 0; v < 256; v++) {
+                if (h[v] < 0 || mapEq[v] < 0 || mapEq[v] > 255 || sweep.count[v] < 0) return null;
+                n += h[v];
+                ns += sweep.count[v];
+            }
+            if (n != (long) I * J || ns != n) return null;
+            gray_image eq = new gray_image(J, I);
+            in.readFully(eq.data, 0, I * J);
+            return new Entry(I, J, h, mapEq, isGray, hR, hG, hB, eq, sweep);
+        } catch (java.io.EOFException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void ints(DataOutputStream out, int[] a) throws IOException {
+        for (int x : a) out.writeInt(x);
+    }
+
+    private static int[] ints(DataInputStream in) throws IOException {
+        int[] a = new int[256];
+        for (int k = 0; k < 256; k++) a[k] = in.readInt();
+        return a;
+    }
+}
@@ -0,0 +1,42 @@
+// result_extras.java
+
+/**
+ * ผลเสริมที่ได้เมื่อเปิดตัวเลือกใน histro_pipeline.Options.Extras รวมไว้ที่เดียว
+ * Result ของแต่ละขั้นถือ extras ตัวเดียว ผลเสริมใหม่จึงเพิ่มเป็นช่อง + with...() ที่นี่ ไม่ต้องเพิ่ม constructor ให้ Result
+ * ตัว holder ไม่เป็น null (ไม่มีอะไรเปิด = NONE) ส่วนแต่ละช่องเป็น null ถ้าไม่ได้เปิดตัวเลือกนั้นหรือขั้นนั้นไม่มีผลนี้
+ */
+public final class result_extras {
+    public static final result_extras NONE = new result_extras(null, null, null, null, null, null, null);
+
+    public final int[] hR, hG, hB;                // histogram: histogram ของ R, G, B (channelHistograms)
+    public final rle_mask rle;                    // threshold / threshold_between: mask ของขั้นแบบ run-length (rleMasks)
+    public final geopros_components components;   // threshold: component ของ threshold_1 (components)
+    public final threshold_multi.Result multi;    // pipeline: label map ของ threshold หลายระดับ (levels)
+    public final summed_area.Region[] rois;       // pipeline: สถิติต่อ ROI (rois)
+
+    private result_extras(int[] hR, int[] hG, int[] hB, rle_mask rle, geopros_components components,
+                          threshold_multi.Result multi, summed_area.Region[] rois) {
+        this.hR = hR; this.hG = hG; this.hB = hB;
+        this.rle = rle; this.components = components; this.multi = multi; this.rois = rois;
+    }
+
+    public result_extras withChannels(int[] r, int[] g, int[] b) {
+        return new result_extras(r, g, b, rle, components, multi, rois);
+    }
+
+    public result_extras withRle(rle_mask m) {
+        return new result_extras(hR, hG, hB, m, components, multi, rois);
+    }
+
+    public result_extras withComponents(geopros_components c) {
+        return new result_extras(hR, hG, hB, rle, c, multi, rois);
+    }
+
+    public result_extras withMulti(threshold_multi.Result m) {
+        return new result_extras(hR, hG, hB, rle, components, m, rois);
+    }
+
+    public result_extras withRois(summed_area.Region[] r) {
+        return new result_extras(hR, hG, hB, rle, components, multi, r);
+    }
+}
@@ -0,0 +1,463 @@
+// result_store.java
+import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ผลของ histro_pipeline เป็นระเบียนตาม schema คงที่ (1 ภาพ = 1 record) แทนการแยกตัวเลขจากรายงาน .txt
+ * - JSONL: object ละบรรทัด, คอลัมน์อาร์เรย์ (h, hu) เป็น JSON array, NaN -> null
+ * - CSV:   header บรรทัดแรก, อาร์เรย์กระจายเป็น h_0..h_255, hu_1..hu_7, NaN -> ช่องว่าง
+ * - BIN:   columnar ทีละ batch (อ่านคอลัมน์เดียวได้โดยข้ามคอลัมน์อื่นทั้งก้อน) ดู ints / reals / texts
+ *
+ * add() เรียกจากหลาย thread ได้ ระเบียนสะสมใน buffer แล้วเขียนทีละ batch; close() เขียนส่วนที่เหลือ
+ * BIN เก็บ TEXT ด้วย writeUTF: image ยาวได้ไม่เกิน 65535 byte (modified UTF-8) ยาวกว่านั้น add() โยน IllegalArgumentException
+ * ไฟล์ถูกสร้างใหม่ทุกครั้ง (ไม่ต่อท้ายของเดิม)
+ */
+public final class result_store implements AutoCloseable {
+
+    public enum Format {
+        JSONL, CSV, BIN;
+
+        /** จากนามสกุล: .jsonl/.json, .csv, .bin */
+        public static Format of(File f) {
+            String n = f.getName().toLowerCase(Locale.ROOT);
+            if (n.endsWith(".jsonl") || n.endsWith(".json")) return JSONL;
+            if (n.endsWith(".csv")) return CSV;
+            if (n.endsWith(".bin")) return BIN;
+            throw new IllegalArgumentException("Unknown result format (use .jsonl, .csv or .bin): " + f);
+        }
+    }
+
+    /** ชนิดของคอลัมน์: TEXT = String, INT = long, REAL = double */
+    public enum Kind { TEXT, INT, REAL }
+
+    /** คอลัมน์ของ schema; length > 1 = อาร์เรย์ขนาดคงที่ */
+    public static final class Column {
+        public final String name;
+        public final Kind kind;
+        public final int length;
+        Column(String name, Kind kind, int length) { this.name = name; this.kind = kind; this.length = length; }
+    }
+
+    /** เพิ่มเมื่อ schema เปลี่ยน (อยู่ใน header ของ BIN และคอลัมน์ schema ของ JSONL/CSV) */
+    public static final int VERSION = 1;
+
+    /** schema ของ 1 ระเบียน เรียงตามลำดับที่เขียน */
+    public static final List<Column> SCHEMA;
+
+    static {
+        List<Column> s = new ArrayList<>();
+        s.add(new Column("schema", Kind.INT, 1));
+        s.add(new Column("image", Kind.TEXT, 1));
+        // histogram
+        s.add(new Column("width", Kind.INT, 1));
+        s.add(new Column("height", Kind.INT, 1));
+        s.add(new Column("is_gray", Kind.INT, 1));
+        s.add(new Column("sum", Kind.INT, 1));
+        s.add(new Column("mean", Kind.REAL, 1));
+        s.add(new Column("h", Kind.INT, 256));
+        // threshold (single)
+        s.add(new Column("t", Kind.INT, 1));
+        s.add(new Column("count_white", Kind.INT, 1));
+        s.add(new Column("count_black", Kind.INT, 1));
+        geoColumns(s, "white_");
+        geoColumns(s, "black_");
+        // threshold_between
+        s.add(new Column("t1", Kind.INT, 1));
+        s.add(new Column("t2", Kind.INT, 1));
+        s.add(new Column("count_in", Kind.INT, 1));
+        s.add(new Column("count_out", Kind.INT, 1));
+        geoColumns(s, "in_");
+        geoColumns(s, "out_");
+        // image_moment
+        s.add(new Column("m00", Kind.REAL, 1));
+        s.add(new Column("xbar", Kind.REAL, 1));
+        s.add(new Column("ybar", Kind.REAL, 1));
+        s.add(new Column("mu00", Kind.REAL, 1));
+        s.add(new Column("mu11", Kind.REAL, 1));
+        s.add(new Column("mu20", Kind.REAL, 1));
+        s.add(new Column("mu02", Kind.REAL, 1));
+        s.add(new Column("hu", Kind.REAL, 7));
+        SCHEMA = Collections.unmodifiableList(s);
+    }
+
+    // ฟิลด์ของ geopros.Result
+    private static void geoColumns(List<Column> s, String p) {
+        s.add(new Column(p + "area", Kind.INT, 1));
+        s.add(new Column(p + "cx", Kind.REAL, 1));
+        s.add(new Column(p + "cy", Kind.REAL, 1));
+        s.add(new Column(p + "min_i", Kind.INT, 1));
+        s.add(new Column(p + "min_j", Kind.INT, 1));
+        s.add(new Column(p + "max_i", Kind.INT, 1));
+        s.add(new Column(p + "max_j", Kind.INT, 1));
+    }
+
+    private static final byte[] MAGIC = { 'H', 'R', 'S', 'B' };
+    /** ความยาวสูงสุดของ TEXT ใน BIN (ขีดจำกัดของ writeUTF) */
+    public static final int MAX_UTF = 65535;
+    /** จำนวนระเบียนต่อ batch ค่าเริ่มต้น */
+    public static final int DEFAULT_BATCH = 256;
+
+    public final File file;
+    public final Format format;
+    private final int batch;
+    private final List<Object[]> pending = new ArrayList<>();
+    private Writer text;            // JSONL / CSV
+    private DataOutputStream bin;   // BIN
+    private long count = 0;
+
+    public result_store(File file, Format format, int batch) throws IOException {
+        this.file = file; this.format = format; this.batch = Math.max(1, batch);
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        if (format == Format.BIN) {
+            bin = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+            bin.write(MAGIC);
+            bin.writeInt(VERSION);
+            bin.writeInt(SCHEMA.size());
+            for (Column c : SCHEMA) {
+                bin.writeUTF(c.name);
+                bin.writeByte(c.kind.ordinal());
+                bin.writeInt(c.length);
+            }
+        } else {
+            text = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+            if (format == Format.CSV) writeCsvHeader();
+        }
+    }
+
+    /** รูปแบบตามนามสกุลของไฟล์ */
+    public static result_store open(File file) throws IOException {
+        return new result_store(file, Format.of(file), DEFAULT_BATCH);
+    }
+
+    /** ผลของภาพ 1 ภาพ (image = path หรือชื่อที่ใช้อ้างอิง) */
+    public void add(String image, histro_pipeline.Result r) throws IOException {
+        // ตรวจก่อนเข้า buffer: ถ้าไปพังตอน writeUTF ระเบียนอื่นใน batch เดียวกันจะหายไปด้วย
+        if (format == Format.BIN && utfLength(image) > MAX_UTF)
+            throw new IllegalArgumentException("Image name too long for BIN result store (" + utfLength(image)
+                                               + " bytes > " + MAX_UTF + "): " + image.substring(0, 64) + "...");
+        Object[] rec = record(image, r);
+        synchronized (this) {
+            if (text == null && bin == null) throw new IOException("Result store is closed: " + file);
+            pending.add(rec);
+            if (pending.size() >= batch) flushBatch();
+        }
+    }
+
+    /** จำนวนระเบียนที่รับไปแล้ว */
+    public synchronized long count() {
+        return count + pending.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (text == null && bin == null) return;
+        try {
+            flushBatch();
+            if (bin != null) bin.writeInt(0);   // จบไฟล์
+        } finally {
+            if (bin != null) bin.close();
+            if (text != null) text.close();
+            bin = null; text = null;
+        }
+    }
+
+    // ===== ระเบียน =====
+
+    // ค่าตาม SCHEMA: TEXT -> String, INT -> long[], REAL -> double[]
+    private static Object[] record(String image, histro_pipeline.Result r) {
+        List<Object> v = new ArrayList<>(SCHEMA.size());
+        histogram.Result h = r.hist;
+        v.add(ints(VERSION));
+        v.add(image);
+        v.add(ints(h.J));
+        v.add(ints(h.I));
+        v.add(ints(h.isGray ? 1 : 0));
+        v.add(ints(h.T));
+        v.add(reals(h.mean));
+        long[] hist = new long[256];
+        for (int i = 0; i < 256; i++) hist[i] = h.h[i];
+        v.add(hist);
+
+        threshold.Result s = r.single;
+        v.add(ints(s.T));
+        v.add(ints(s.countWhite));
+        v.add(ints(s.countBlack));
+        geo(v, s.oneWhite);
+        geo(v, s.zeroBlack);
+
+        threshold_between.Result b = r.band;
+        v.add(ints(b.T1));
+        v.add(ints(b.T2));
+        v.add(ints(b.countIn));
+        v.add(ints(b.countOut));
+        geo(v, b.whiteIn);
+        geo(v, b.outBlack);
+
+        image_moment.Result m = r.moments;
+        v.add(reals(m.M00));
+        v.add(reals(m.xbar));
+        v.add(reals(m.ybar));
+        v.add(reals(m.mu00));
+        v.add(reals(m.mu11));
+        v.add(reals(m.mu20));
+        v.add(reals(m.mu02));
+        v.add(m.hu.clone());
+
+        if (v.size() != SCHEMA.size()) throw new IllegalStateException("Record does not match schema");
+        return v.toArray();
+    }
+
+    private static void geo(List<Object> v, geopros.Result g) {
+        v.add(ints(g.area));
+        v.add(reals(g.cx));
+        v.add(reals(g.cy));
+        v.add(ints(g.minI));
+        v.add(ints(g.minJ));
+        v.add(ints(g.maxI));
+        v.add(ints(g.maxJ));
+    }
+
+    private static long[] ints(long x) { return new long[] { x }; }
+    private static double[] reals(double x) { return new double[] { x }; }
+
+    // ===== เขียนทีละ batch (ถือ lock อยู่) =====
+
+    private void flushBatch() throws IOException {
+        if (pending.isEmpty()) return;
+        if (format == Format.BIN) writeBinBatch();
+        else {
+            StringBuilder sb = new StringBuilder(4096);
+            for (Object[] rec : pending) {
+                if (format == Format.JSONL) appendJson(sb, rec);
+                else appendCsv(sb, rec);
+                sb.append('\n');
+            }
+            text.write(sb.toString());
+            text.flush();
+        }
+        count += pending.size();
+        pending.clear();
+    }
+
+    private void appendJson(StringBuilder sb, Object[] rec) {
+        sb.append('{');
+        for (int c = 0; c < rec.length; c++) {
+            Column col = SCHEMA.get(c);
+            if (c > 0) sb.append(',');
+            sb.append('"').append(col.name).append("\":");
+            if (col.kind == Kind.TEXT) { jsonString(sb, (String) rec[c]); continue; }
+            if (col.length > 1) sb.append('[');
+            for (int k = 0; k < col.length; k++) {
+                if (k > 0) sb.append(',');
+                if (col.kind == Kind.INT) sb.append(((long[]) rec[c])[k]);
+                else {
+                    double d = ((double[]) rec[c])[k];
+                    if (Double.isFinite(d)) sb.append(d); else sb.append("null");
+                }
+            }
+            if (col.length > 1) sb.append(']');
+        }
+        sb.append('}');
+    }
+
+    private static void jsonString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') sb.append('\\').append(ch);
+            else if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch));
+            else sb.append(ch);
+        }
+        sb.append('"');
+    }
+
+    private void writeCsvHeader() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Column col : SCHEMA) {
+            if (col.length == 1) { sep(sb).append(col.name); continue; }
+            int first = col.name.equals("hu") ? 1 : 0;   // hu_1..hu_7 ตามสัญลักษณ์ φ1..φ7
+            for (int k = 0; k < col.length; k++) sep(sb).append(col.name).append('_').append(k + first);
+        }
+        text.write(sb.append('\n').toString());
+    }
+
+    private void appendCsv(StringBuilder sb, Object[] rec) {
+        int start = sb.length();
+        for (int c = 0; c < rec.length; c++) {
+            Column col = SCHEMA.get(c);
+            if (col.kind == Kind.TEXT) {
+                sepFrom(sb, start);
+                String s = (String) rec[c];
+                if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0)
+                    sb.append('"').append(s.replace("\"", "\"\"")).append('"');
+                else sb.append(s);
+                continue;
+            }
+            for (int k = 0; k < col.length; k++) {
+                sepFrom(sb, start);
+                if (col.kind == Kind.INT) sb.append(((long[]) rec[c])[k]);
+                else {
+                    double d = ((double[]) rec[c])[k];
+                    if (Double.isFinite(d)) sb.append(d);
+                }
+            }
+        }
+    }
+
+    private static StringBuilder sep(StringBuilder sb) {
+        return (sb.length() > 0) ? sb.append(',') : sb;
+    }
+
+    private static void sepFrom(StringBuilder sb, int start) {
+        if (sb.length() > start) sb.append(',');
+    }
+
+    /*
+     * BIN: "HRSB" | int version | int columns | (UTF name, byte kind, int length) * columns
+     *      แล้ว batch ต่อกัน: int rows | (int bytes, ข้อมูลของคอลัมน์นั้นทุกแถว) * columns
+     *      INT = long, REAL = double (rows * length ค่า), TEXT = UTF ต่อแถว; จบด้วย int 0
+     */
+    private void writeBinBatch() throws IOException {
+        bin.writeInt(pending.size());
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(pending.size() * 256 * 8);
+        DataOutputStream col = new DataOutputStream(buf);
+        for (int c = 0; c < SCHEMA.size(); c++) {
+            Column cc = SCHEMA.get(c);
+            buf.reset();
+            for (Object[] rec : pending) {
+                switch (cc.kind) {
+                    case TEXT: col.writeUTF((String) rec[c]); break;
+                    case INT:  for (long x : (long[]) rec[c]) col.writeLong(x); break;
+                    default:   for (double x : (double[]) rec[c]) col.writeDouble(x);
+                }
+            }
+            col.flush();
+            bin.writeInt(buf.size());
+            buf.writeTo(bin);
+        }
+        bin.flush();
+    }
+
+    // ======================= อ่านไฟล์ BIN =======================
+
+    /** คอลัมน์ INT ทุกแถว (อาร์เรย์เรียงต่อกัน: แถว r ช่อง k อยู่ที่ r * length + k) */
+    public static long[] ints(File f, String name) throws IOException {
+        List<Object> parts = scan(f, name, Kind.INT);
+        int n = 0;
+        for (Object p : parts) n += ((long[]) p).length;
+        long[] out = new long[n];
+        int at = 0;
+        for (Object p : parts) {
+            long[] a = (long[]) p;
+            System.arraycopy(a, 0, out, at, a.length);
+            at += a.length;
+        }
+        return out;
+    }
+
+    /** คอลัมน์ REAL ทุกแถว (เรียงแบบเดียวกับ ints) */
+    public static double[] reals(File f, String name) throws IOException {
+        List<Object> parts = scan(f, name, Kind.REAL);
+        int n = 0;
+        for (Object p : parts) n += ((double[]) p).length;
+        double[] out = new double[n];
+        int at = 0;
+        for (Object p : parts) {
+            double[] a = (double[]) p;
+            System.arraycopy(a, 0, out, at, a.length);
+            at += a.length;
+        }
+        return out;
+    }
+
+    /** คอลัมน์ TEXT ทุกแถว */
+    public static List<String> texts(File f, String name) throws IOException {
+        List<String> out = new ArrayList<>();
+        for (Object p : scan(f, name, Kind.TEXT)) Collections.addAll(out, (String[]) p);
+        return out;
+    }
+
+    // อ่านเฉพาะคอลัมน์ name ของทุก batch (คอลัมน์อื่นข้ามตามจำนวน byte)
+    private static List<Object> scan(File f, String name, Kind kind) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1] || magic[2] != MAGIC[2] || magic[3] != MAGIC[3])
+                throw new IllegalArgumentException("Not a result store file: " + f);
+            int version = in.readInt();
+            if (version != VERSION) throw new IllegalArgumentException("Unsupported result store version " + version + ": " + f);
+            int cols = in.readInt();
+            int idx = -1, length = 0;
+            for (int c = 0; c < cols; c++) {
+                String n = in.readUTF();
+                int k = in.readByte();
+                int len = in.readInt();
+                if (n.equals(name)) {
+                    if (k != kind.ordinal()) throw new IllegalArgumentException("Column " + name + " is not " + kind);
+                    idx = c; length = len;
+                }
+            }
+            if (idx < 0) throw new IllegalArgumentException("No column " + name + " in " + f);
+
+            List<Object> parts = new ArrayList<>();
+            int rows;
+            while ((rows = in.readInt()) != 0) {
+                for (int c = 0; c < cols; c++) {
+                    int bytes = in.readInt();
+                    if (c != idx) { skipFully(in, bytes); continue; }
+                    int n = rows * length;
+                    if (kind == Kind.INT) {
+                        long[] a = new long[n];
+                        for (int k = 0; k < n; k++) a[k] = in.readLong();
+                        parts.add(a);
+                    } else if (kind == Kind.REAL) {
+                        double[] a = new double[n];
+                        for (int k = 0; k < n; k++) a[k] = in.readDouble();
+                        parts.add(a);
+                    } else {
+                        String[] a = new String[rows];
+                        for (int k = 0; k < rows; k++) a[k] = in.readUTF();
+                        parts.add(a);
+                    }
+                }
+            }
+            return parts;
+        }
+    }
+
+    // จำนวน byte ที่ writeUTF ใช้ (modified UTF-8: '\0' = 2 byte)
+    static long utfLength(String s) {
+        long n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            n += (ch >= 0x0001 && ch <= 0x007F) ? 1 : (ch <= 0x07FF) ? 2 : 3;
+        }
+        return n;
+    }
+
+    private static void skipFully(DataInputStream in, int n) throws IOException {
+        while (n > 0) {
+            int s = in.skipBytes(n);
+            if (s <= 0) throw new EOFException();
+            n -= s;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+// rle_mask.java
+import java.util.Arrays;
+
+/**
+ * mask แบบ run-length: เก็บเฉพาะ run ของพิกเซล 1 ในแต่ละแถว เป็นคู่ [start, end) ใน int[]
+ * run ของแถว i อยู่ที่ runs[2k], runs[2k+1] สำหรับ k = rowStart[i] .. rowStart[i+1]-1 (เรียงซ้ายไปขวา ไม่ติดกัน)
+ * mask ของ threshold ส่วนใหญ่เป็น run ยาว หน่วยความจำและเวลาของ geopros / moment จึงตามจำนวนจุดเปลี่ยน
+ * ไม่ใช่จำนวนพิกเซล (mask ที่เป็น noise ถี่ ๆ ใหญ่กว่า bit_mask ได้ ดู bytes())
+ */
+public final class rle_mask {
+    public final int width, height;
+    public final int[] rowStart;   // height + 1 ช่อง (หน่วย = run)
+    public final int[] runs;       // 2 ช่องต่อ run: start, end (ไม่รวม end)
+
+    private rle_mask(int width, int height, int[] rowStart, int[] runs) {
+        this.width = width; this.height = height; this.rowStart = rowStart; this.runs = runs;
+    }
+
+    /** จำนวน run ทั้งภาพ */
+    public int runCount() {
+        return rowStart[height];
+    }
+
+    /** ขนาดข้อมูลโดยประมาณ (byte) ไว้เทียบกับ bit_mask (width * height / 8) */
+    public long bytes() {
+        return 4L * (rowStart.length + 2L * runCount());
+    }
+
+    /** จำนวนพิกเซล 1 */
+    public long area() {
+        long a = 0;
+        for (int k = 0, n = 2 * runCount(); k < n; k += 2) a += runs[k + 1] - runs[k];
+        return a;
+    }
+
+    /**
+     * mask ของ lo <= gray <= hi (รวมปลาย) จาก byte[] ของภาพในรอบเดียว (kernel ของ threshold)
+     * hist != null -> นับ histogram 256 ช่องของ g ไปพร้อมกัน
+     */
+    public static rle_mask range(gray_image g, int lo, int hi, int[] hist) {
+        Builder b = new Builder(g.width, g.height);
+        b.add(g, lo, hi, hist);
+        return b.build();
+    }
+
+    /** เหมือน range(gray_image, ...) แต่อ่านทีละแถบจาก mapping */
+    public static rle_mask range(mapped_gray src, int lo, int hi, int[] hist) {
+        gray_image.checkedSize(src.width, src.height);   // hist เป็น int[]
+        Builder b = new Builder(src.width, src.height);
+        int rows = src.stripRows();
+        byte[] scratch = new byte[rows * src.width];
+        for (int y = 0; y < src.height; y += rows) b.add(src.strip(y, Math.min(rows, src.height - y), scratch), lo, hi, hist);
+        return b.build();
+    }
+
+    /** จาก bit_mask (ข้าม word ที่เป็น 0 หรือ 1 ทั้ง word) */
+    public static rle_mask of(bit_mask m) {
+        Builder b = new Builder(m.width, m.height);
+        for (int i = 0; i < m.height; i++) {
+            for (int s = m.nextSet(i, 0); s < m.width; ) {
+                int e = m.nextClear(i, s);
+                b.run(s, e);
+                s = (e + 1 < m.width) ? m.nextSet(i, e + 1) : m.width;
+            }
+            b.endRow();
+        }
+        return b.build();
+    }
+
+    /** mask กลับสี: ช่องว่างระหว่าง run ของแต่ละแถว */
+    public rle_mask not() {
+        Builder b = new Builder(width, height);
+        for (int i = 0; i < height; i++) {
+            int x = 0;
+            for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+                int s = runs[2 * k], e = runs[2 * k + 1];
+                if (s > x) b.run(x, s);
+                x = e;
+            }
+            if (x < width) b.run(x, width);
+            b.endRow();
+        }
+        return b.build();
+    }
+
+    /** bit_mask เดียวกัน (ไว้เขียนไฟล์/วาดภาพ) */
+    public bit_mask toBitMask() {
+        bit_mask m = new bit_mask(width, height);
+        long[] w = m.words;
+        for (int i = 0; i < height; i++) {
+            int base = i * m.wordsPerRow;
+            for (int k = rowStart[i]; k < rowStart[i + 1]; k++) {
+                int s = runs[2 * k], e = runs[2 * k + 1];
+                int ks = s >>> 6, ke = (e - 1) >>> 6;
+                long first = -1L << s, last = -1L >>> (63 - ((e - 1) & 63));
+                if (ks == ke) { w[base + ks] |= first & last; continue; }
+                w[base + ks] |= first;
+                for (int q = ks + 1; q < ke; q++) w[base + q] = -1L;
+                w[base + ke] |= last;
+            }
+        }
+        return m;
+    }
+
+    /** สร้าง rle_mask ทีละแถว: run(s, e) ซ้ำได้หลายครั้งต่อแถว (เรียงซ้ายไปขวา) แล้ว endRow() */
+    static final class Builder {
+        private final int width, height;
+        private final int[] rowStart;
+        private int[] runs = new int[256];
+        private int n = 0, row = 0;
+
+        Builder(int width, int height) {
+            this.width = width; this.height = height;
+            this.rowStart = new int[height + 1];
+        }
+
+        void run(int s, int e) {
+            if (2 * n + 2 > runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[2 * n] = s; runs[2 * n + 1] = e;
+            n++;
+        }
+
+        void endRow() {
+            rowStart[++row] = n;
+        }
+
+        // ทุกแถวของ g ต่อท้ายแถวที่มีอยู่
+        void add(gray_image g, int lo, int hi, int[] hist) {
+            final byte[] d = g.data;
+            final int J = g.width;
+            for (int u = 0; u < g.height; u++) {
+                int p = g.offset + u * g.stride, s = -1;
+                for (int v = 0; v < J; v++) {
+                    int gray = d[p + v] & 0xFF;
+                    if (hist != null) hist[gray]++;
+                    boolean in = gray >= lo && gray <= hi;
+                    if (in) { if (s < 0) s = v; }
+                    else if (s >= 0) { run(s, v); s = -1; }
+                }
+                if (s >= 0) run(s, J);
+                endRow();
+            }
+        }
+
+        rle_mask build() {
+            if (row != height) throw new IllegalStateException("rows added " + row + " != height " + height);
+            return new rle_mask(width, height, rowStart, Arrays.copyOf(runs, 2 * n));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+// stage_metrics.java
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * เวลาและทรัพยากรต่อขั้นของ pipeline: wall, CPU, byte ที่ allocate, พิกเซล, byte ที่อ่าน/เขียน
+ * - สะสมรวมทุกภาพ (thread-safe) แล้วพิมพ์เป็นตาราง (print) หรือ JSON (toJson)
+ * - ทุก span ส่ง JFR event "histro.Stage" เมื่อ recording เปิด event นี้ (เช่น -XX:StartFlightRecording)
+ *   แม้ไม่ได้สร้าง stage_metrics ก็ตาม
+ * - span ซ้อนกันนับแบบ exclusive: ค่าของ span ลูก (เช่น encode ระหว่าง render) ไม่ถูกนับซ้ำในแม่
+ * - CPU/alloc วัดจาก thread ที่รันขั้นนั้น ไม่รวม worker ของ fork-join (threads > 1 -> CPU ต่ำกว่าจริง)
+ */
+public final class stage_metrics {
+
+    public enum Stage {
+        DECODE, HISTOGRAM, EQUALIZE, THRESHOLD, GEOPROPS, MOMENTS, RENDER, ENCODE;
+
+        public String label() { return name().toLowerCase(Locale.ROOT); }
+    }
+
+    // ช่องของแต่ละ stage ใน acc
+    private static final int CALLS = 0, WALL = 1, CPU = 2, ALLOC = 3, PIXELS = 4, READ = 5, WRITTEN = 6, FIELDS = 7;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCS =
+            (THREADS instanceof com.sun.management.ThreadMXBean) ? (com.sun.management.ThreadMXBean) THREADS : null;
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+    private static final boolean ALLOC_BYTES = ALLOCS != null && ALLOCS.isThreadAllocatedMemorySupported()
+                                               && ALLOCS.isThreadAllocatedMemoryEnabled();
+    // span ที่เปิดอยู่ของแต่ละ thread (ไว้หักค่าของลูกออกจากแม่)
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private final AtomicLongArray acc = new AtomicLongArray(Stage.values().length * FIELDS);
+    private final long created = System.nanoTime();
+
+    /** เริ่มวัดขั้น s (ใช้กับ try-with-resources) */
+    public Span start(Stage s) {
+        return start(this, s);
+    }
+
+    /** m == null -> วัดเฉพาะเมื่อ JFR เปิด event ไว้ ไม่เช่นนั้นคืน span เปล่าที่ไม่ทำอะไร */
+    public static Span start(stage_metrics m, Stage s) {
+        StageEvent ev = new StageEvent();
+        if (m == null && !ev.isEnabled()) return Span.NONE;
+        return new Span(m, s, ev);
+    }
+
+    /** ช่วงเวลาของขั้นหนึ่ง: ระบุจำนวนพิกเซล/byte ระหว่างทาง แล้ว close() เมื่อจบ */
+    public static final class Span implements AutoCloseable {
+        static final Span NONE = new Span();
+
+        private final stage_metrics m;
+        private final Stage stage;
+        private final StageEvent ev;
+        private final Span parent;
+        private final long wall0, cpu0, alloc0;
+        private long childWall, childCpu, childAlloc;
+        private long pixels, read, written;
+
+        private Span() {
+            m = null; stage = null; ev = null; parent = null;
+            wall0 = cpu0 = alloc0 = 0;
+        }
+
+        private Span(stage_metrics m, Stage stage, StageEvent ev) {
+            this.m = m; this.stage = stage; this.ev = ev;
+            this.parent = CURRENT.get();
+            CURRENT.set(this);
+            ev.begin();
+            this.wall0 = System.nanoTime();
+            this.cpu0 = cpuNow();
+            this.alloc0 = allocNow();
+        }
+
+        public Span pixels(long n) { pixels += n; return this; }
+        public Span read(long bytes) { read += bytes; return this; }
+        public Span written(long bytes) { written += bytes; return this; }
+
+        @Override
+        public void close() {
+            if (stage == null) return;
+            long wall = System.nanoTime() - wall0, cpu = cpuNow() - cpu0, alloc = allocNow() - alloc0;
+            CURRENT.set(parent);
+            if (parent != null) {
+                parent.childWall += wall; parent.childCpu += cpu; parent.childAlloc += alloc;
+            }
+            wall -= childWall; cpu -= childCpu; alloc -= childAlloc;
+            if (m != null) m.add(stage, wall, cpu, alloc, pixels, read, written);
+            ev.end();
+            if (ev.shouldCommit()) {
+                ev.stage = stage.label();
+                ev.cpuTime = cpu;
+                ev.allocated = alloc;
+                ev.pixels = pixels;
+                ev.bytesRead = read;
+                ev.bytesWritten = written;
+                ev.commit();
+            }
+        }
+    }
+
+    private static long cpuNow() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0L;
+    }
+
+    private static long allocNow() {
+        return ALLOC_BYTES ? ALLOCS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0L;
+    }
+
+    private void add(Stage s, long wall, long cpu, long alloc, long pixels, long read, long written) {
+        int b = s.ordinal() * FIELDS;
+        acc.incrementAndGet(b + CALLS);
+        acc.addAndGet(b + WALL, wall);
+        acc.addAndGet(b + CPU, cpu);
+        acc.addAndGet(b + ALLOC, alloc);
+        acc.addAndGet(b + PIXELS, pixels);
+        acc.addAndGet(b + READ, read);
+        acc.addAndGet(b + WRITTEN, written);
+    }
+
+    private long get(Stage s, int field) {
+        return acc.get(s.ordinal() * FIELDS + field);
+    }
+
+    /** ค่ารวมของขั้น s: calls, wallNanos, cpuNanos, allocatedBytes, pixels, bytesRead, bytesWritten */
+    public long[] totals(Stage s) {
+        long[] t = new long[FIELDS];
+        for (int k = 0; k < FIELDS; k++) t[k] = get(s, k);
+        return t;
+    }
+
+    // ======================= รายงาน =======================
+
+    /** ตารางสรุปต่อขั้น (ขั้นที่ไม่ถูกเรียกไม่แสดง) */
+    public void print(PrintStream out) {
+        out.println("== Stage metrics (exclusive; CPU/alloc of the calling thread) ==");
+        out.printf(Locale.ROOT, "%-10s %7s %10s %10s %10s %9s %9s %9s %10s%n",
+                "stage", "calls", "wall ms", "cpu ms", "alloc MB", "MPix", "MPix/s", "read MB", "written MB");
+        long wall = 0;
+        for (Stage s : Stage.values()) {
+            long calls = get(s, CALLS);
+            if (calls == 0) continue;
+            wall += get(s, WALL);
+            out.printf(Locale.ROOT, "%-10s %7d %10.1f %10.1f %10.1f %9.2f %9.1f %9.2f %10.2f%n",
+                    s.label(), calls, get(s, WALL) / 1e6, get(s, CPU) / 1e6, get(s, ALLOC) / 1e6,
+                    get(s, PIXELS) / 1e6, mpixPerSecond(s), get(s, READ) / 1e6, get(s, WRITTEN) / 1e6);
+        }
+        out.printf(Locale.ROOT, "%-10s %7s %10.1f  (elapsed %.1f ms)%n", "total", "", wall / 1e6,
+                (System.nanoTime() - created) / 1e6);
+    }
+
+    /** JSON object เดียว: {"elapsed_ns":..., "stages":[{"stage":"decode", ...}, ...]} */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"elapsed_ns\":").append(System.nanoTime() - created).append(",\"stages\":[");
+        boolean first = true;
+        for (Stage s : Stage.values()) {
+            if (get(s, CALLS) == 0) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("{\"stage\":\"").append(s.label()).append('"')
+              .append(",\"calls\":").append(get(s, CALLS))
+              .append(",\"wall_ns\":").append(get(s, WALL))
+              .append(",\"cpu_ns\":").append(get(s, CPU))
+              .append(",\"allocated_bytes\":").append(get(s, ALLOC))
+              .append(",\"pixels\":").append(get(s, PIXELS))
+              .append(",\"pixels_per_s\":").append(String.format(Locale.ROOT, "%.1f", mpixPerSecond(s) * 1e6))
+              .append(",\"bytes_read\":").append(get(s, READ))
+              .append(",\"bytes_written\":").append(get(s, WRITTEN))
+              .append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private double mpixPerSecond(Stage s) {
+        long wall = get(s, WALL);
+        return (wall > 0) ? get(s, PIXELS) / 1e6 / (wall / 1e9) : 0.0;
+    }
+
+    /** JFR event ของ 1 span (duration ของ event = wall time รวมลูก; ค่าอื่นเป็นแบบ exclusive) */
+    @Name("histro.Stage")
+    @Label("Pipeline Stage")
+    @Category("histro")
+    @Description("One stage of the histogram/threshold pipeline")
+    static final class StageEvent extends Event {
+        @Label("Stage") String stage;
+        @Label("CPU Time") @Timespan long cpuTime;
+        @Label("Allocated") @DataAmount long allocated;
+        @Label("Pixels") long pixels;
+        @Label("Bytes Read") @DataAmount long bytesRead;
+        @Label("Bytes Written") @DataAmount long bytesWritten;
+    }
+}
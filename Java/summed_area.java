@@ -0,0 +1,205 @@
+// summed_area.java
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * summed-area table (integral image) ของภาพเทา + mask หนึ่งเฟรม สร้างครั้งเดียวแล้วตอบคำถามของ ROI สี่เหลี่ยมใด ๆ ใน O(1)
+ * ตาราง (I+1) x (J+1): จำนวนพิกเซล mask, Σj, Σi ของพิกเซล mask และ Σgray ของทุกพิกเซล
+ * ค่าของ [i0..i1] x [j0..j1] = S[i1+1][j1+1] - S[i0][j1+1] - S[i1+1][j0] + S[i0][j0]
+ * หน่วยความจำราว 28 byte ต่อพิกเซล (ตารางเดียวกันใช้กับ ROI กี่พันช่องก็ได้)
+ */
+public final class summed_area {
+    public final int width, height;
+    private final int stride;          // = width + 1
+    private final int[] cnt;           // จำนวนพิกเซล mask
+    private final long[] sj, si, gs;   // Σj, Σi ของ mask และ Σgray ของทุกพิกเซล
+
+    /** ผลของ ROI หนึ่งช่อง (ช่วงรวมปลาย) */
+    public static class Region {
+        public final int i0, j0, i1, j1;
+        public final long area;        // จำนวนพิกเซล mask ใน ROI
+        public final double cx, cy;    // centroid ของพิกเซล mask (พิกัดของภาพเต็ม; NaN ถ้า area = 0)
+        public final long graySum;     // Σgray ของทุกพิกเซลใน ROI
+        public final double mean;      // graySum / จำนวนพิกเซลของ ROI
+        public Region(int i0, int j0, int i1, int j1, long area, double cx, double cy, long graySum, double mean) {
+            this.i0 = i0; this.j0 = j0; this.i1 = i1; this.j1 = j1;
+            this.area = area; this.cx = cx; this.cy = cy; this.graySum = graySum; this.mean = mean;
+        }
+    }
+
+    private summed_area(int width, int height) {
+        if ((long) (width + 1) * (height + 1) > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Image too large for summed_area: " + width + "x" + height);
+        this.width = width; this.height = height; this.stride = width + 1;
+        int n = (height + 1) * stride;
+        cnt = new int[n]; sj = new long[n]; si = new long[n]; gs = new long[n];
+    }
+
+    /** ภาพเทา g + mask m (บิต 1 = วัตถุ) ขนาดเดียวกัน */
+    public static summed_area of(gray_image g, bit_mask m) {
+        check(g, m.width, m.height);
+        summed_area s = new summed_area(g.width, g.height);
+        byte[] row = new byte[g.width];
+        for (int i = 0; i < g.height; i++) {
+            int b = i * m.wordsPerRow;
+            for (int j = 0; j < g.width; j++) row[j] = (byte) ((m.words[b + (j >>> 6)] >>> j) & 1);
+            s.addRow(g, i, row);
+        }
+        return s;
+    }
+
+    /** ภาพเทา g + mask แบบ run-length */
+    public static summed_area of(gray_image g, rle_mask m) {
+        check(g, m.width, m.height);
+        summed_area s = new summed_area(g.width, g.height);
+        byte[] row = new byte[g.width];
+        for (int i = 0; i < g.height; i++) {
+            Arrays.fill(row, (byte) 0);
+            for (int k = m.rowStart[i]; k < m.rowStart[i + 1]; k++)
+                Arrays.fill(row, m.runs[2 * k], m.runs[2 * k + 1], (byte) 1);
+            s.addRow(g, i, row);
+        }
+        return s;
+    }
+
+    /** ภาพเทา g โดย mask = gray >= thr (สร้างในรอบเดียว ไม่ต้องมี mask แยก) */
+    public static summed_area of(gray_image g, int thr) {
+        summed_area s = new summed_area(g.width, g.height);
+        byte[] row = new byte[g.width];
+        for (int i = 0; i < g.height; i++) {
+            int p = g.offset + i * g.stride;
+            for (int j = 0; j < g.width; j++) row[j] = (byte) ((g.data[p + j] & 0xFF) >= thr ? 1 : 0);
+            s.addRow(g, i, row);
+        }
+        return s;
+    }
+
+    private static void check(gray_image g, int w, int h) {
+        if (g.width != w || g.height != h)
+            throw new IllegalArgumentException("Mask size " + w + "x" + h + " != image size " + g.width + "x" + g.height);
+    }
+
+    // แถว i: ผลรวมสะสมในแถว + แถวบนของตาราง
+    private void addRow(gray_image g, int i, byte[] mask) {
+        final byte[] d = g.data;
+        final int p = g.offset + i * g.stride, up = i * stride, q = up + stride;
+        long c = 0, rj = 0, rg = 0;
+        for (int j = 0; j < width; j++) {
+            int m = mask[j];
+            c += m; rj += m * j; rg += d[p + j] & 0xFF;
+            cnt[q + j + 1] = cnt[up + j + 1] + (int) c;
+            sj[q + j + 1] = sj[up + j + 1] + rj;
+            si[q + j + 1] = si[up + j + 1] + c * i;
+            gs[q + j + 1] = gs[up + j + 1] + rg;
+        }
+    }
+
+    // ======================= คำถาม O(1) =======================
+
+    /** จำนวนพิกเซล mask ใน [i0..i1] x [j0..j1] */
+    public long area(int i0, int j0, int i1, int j1) {
+        check(i0, j0, i1, j1);
+        return box(cnt, i0, j0, i1, j1);
+    }
+
+    /** Σgray ของทุกพิกเซลใน ROI */
+    public long graySum(int i0, int j0, int i1, int j1) {
+        check(i0, j0, i1, j1);
+        return box(gs, i0, j0, i1, j1);
+    }
+
+    /** ROI เดียว: area, centroid ของ mask และค่าเฉลี่ยระดับเทา */
+    public Region region(int i0, int j0, int i1, int j1) {
+        check(i0, j0, i1, j1);
+        long a = box(cnt, i0, j0, i1, j1), g = box(gs, i0, j0, i1, j1);
+        double cx = (a == 0) ? Double.NaN : (double) box(sj, i0, j0, i1, j1) / a;
+        double cy = (a == 0) ? Double.NaN : (double) box(si, i0, j0, i1, j1) / a;
+        return new Region(i0, j0, i1, j1, a, cx, cy, g, (double) g / ((long) (i1 - i0 + 1) * (j1 - j0 + 1)));
+    }
+
+    /** หลาย ROI: rects = {i0, j0, i1, j1, i0, j0, ...} (4 ช่องต่อ ROI) */
+    public Region[] query(int[] rects) {
+        if (rects.length % 4 != 0) throw new IllegalArgumentException("rects must hold 4 ints per ROI: " + rects.length);
+        Region[] out = new Region[rects.length / 4];
+        for (int k = 0; k < out.length; k++)
+            out[k] = region(rects[4 * k], rects[4 * k + 1], rects[4 * k + 2], rects[4 * k + 3]);
+        return out;
+    }
+
+    /**
+     * หลาย ROI แบบไม่สร้าง object (ROI เป็นพัน ๆ ต่อเฟรม): ผลของ ROI k ลง area[k], cx[k], cy[k], mean[k]
+     * อาร์เรย์ผลลัพธ์ต้องยาวอย่างน้อย rects.length / 4
+     */
+    public void query(int[] rects, long[] area, double[] cx, double[] cy, double[] mean) {
+        if (rects.length % 4 != 0) throw new IllegalArgumentException("rects must hold 4 ints per ROI: " + rects.length);
+        for (int k = 0, n = rects.length / 4; k < n; k++) {
+            int i0 = rects[4 * k], j0 = rects[4 * k + 1], i1 = rects[4 * k + 2], j1 = rects[4 * k + 3];
+            check(i0, j0, i1, j1);
+            long a = box(cnt, i0, j0, i1, j1);
+            area[k] = a;
+            cx[k] = (a == 0) ? Double.NaN : (double) box(sj, i0, j0, i1, j1) / a;
+            cy[k] = (a == 0) ? Double.NaN : (double) box(si, i0, j0, i1, j1) / a;
+            mean[k] = (double) box(gs, i0, j0, i1, j1) / ((long) (i1 - i0 + 1) * (j1 - j0 + 1));
+        }
+    }
+
+    private void check(int i0, int j0, int i1, int j1) {
+        if (i0 < 0 || j0 < 0 || i1 >= height || j1 >= width || i0 > i1 || j0 > j1)
+            throw new IllegalArgumentException("ROI [" + i0 + "," + j0 + "].." + "[" + i1 + "," + j1
+                                               + "] outside " + height + "x" + width + " or empty");
+    }
+
+    private long box(int[] t, int i0, int j0, int i1, int j1) {
+        int a = i0 * stride, b = (i1 + 1) * stride;
+        return (long) t[b + j1 + 1] - t[a + j1 + 1] - t[b + j0] + t[a + j0];
+    }
+
+    private long box(long[] t, int i0, int j0, int i1, int j1) {
+        int a = i0 * stride, b = (i1 + 1) * stride;
+        return t[b + j1 + 1] - t[a + j1 + 1] - t[b + j0] + t[a + j0];
+    }
+
+    // ======================= ไฟล์ ROI / รายงาน =======================
+
+    /** console + roi_report.txt (บรรทัดละ ROI) ของ mask gray >= T */
+    public static void writeReport(Region[] rs, int T, histro_pipeline.Options opt) throws IOException {
+        File resultDir = opt.file("threshold_result/threshold_single/txt_result");
+        if (!resultDir.exists()) resultDir.mkdirs();
+        File f = new File(resultDir, "roi_report.txt");
+        opt.writeText(f, pw -> {
+            pw.println("# ROI statistics on threshold_1 (mask = gray>=" + T + "), inclusive bounds");
+            pw.println("# i0 j0 i1 j1 area cx cy gray_sum gray_mean");
+            for (Region r : rs) {
+                pw.println(String.format(java.util.Locale.ROOT, "%d %d %d %d %d %.3f %.3f %d %.3f",
+                        r.i0, r.j0, r.i1, r.j1, r.area, r.cx, r.cy, r.graySum, r.mean));
+            }
+        });
+        opt.log.println("ROI: " + rs.length + " regions -> " + f.getPath());
+    }
+
+    /** อ่าน ROI จากไฟล์ข้อความ: บรรทัดละ "i0 j0 i1 j1" (คั่นด้วยช่องว่างหรือ comma, # = comment) */
+    public static int[] readRects(File f) throws IOException {
+        List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+        List<int[]> out = new ArrayList<>();
+        for (int n = 0; n < lines.size(); n++) {
+            String s = lines.get(n).trim();
+            if (s.isEmpty() || s.startsWith("#")) continue;
+            String[] t = s.split("[\\s,]+");
+            if (t.length != 4) throw new IllegalArgumentException(f + ":" + (n + 1) + ": expected i0 j0 i1 j1");
+            try {
+                out.add(new int[]{Integer.parseInt(t[0]), Integer.parseInt(t[1]),
+                                  Integer.parseInt(t[2]), Integer.parseInt(t[3])});
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(f + ":" + (n + 1) + ": " + e.getMessage());
+            }
+        }
+        int[] rects = new int[out.size() * 4];
+        for (int k = 0; k < out.size(); k++) System.arraycopy(out.get(k), 0, rects, 4 * k, 4);
+        return rects;
+    }
+}
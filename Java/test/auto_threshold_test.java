@@ -0,0 +1,149 @@
+// auto_threshold_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** otsu / multiOtsu / triangle เทียบกับการค้นทุก candidate ตรง ๆ ตามนิยาม และกรณีขอบ */
+class auto_threshold_test {
+
+    @Test
+    void otsuMaximizesBetweenClassVariance() {
+        Random rnd = new Random(8);
+        for (int it = 0; it < 200; it++) {
+            int[] h = randomHist(rnd);
+            int T = auto_threshold.otsu(h);
+            double best = -1;
+            for (int t = 1; t < 256; t++) best = Math.max(best, variance(h, 0, t, 256));
+            assertEquals(best, variance(h, 0, T, 256), 1e-9 * best, "it=" + it + " T=" + T);
+        }
+    }
+
+    @Test
+    void multiOtsuMaximizesBetweenClassVariance() {
+        Random rnd = new Random(9);
+        for (int it = 0; it < 40; it++) {
+            int[] h = randomHist(rnd);
+            int[] t = auto_threshold.multiOtsu(h);
+            assertTrue(t[0] <= t[1], "it=" + it);
+            double best = -1;
+            for (int a = 1; a < 255; a++)
+                for (int b = a + 1; b < 256; b++) best = Math.max(best, variance(h, 0, a, b, 256));
+            // กลุ่ม [0..T1-1], [T1..T2], [T2+1..255]
+            assertEquals(best, variance(h, 0, t[0], t[1] + 1, 256), 1e-9 * best, "it=" + it);
+        }
+    }
+
+    @Test
+    void triangleTakesFarthestLevelFromPeakLine() {
+        Random rnd = new Random(10);
+        for (int it = 0; it < 200; it++) {
+            int[] h = new int[256];
+            // ยอดเดียวกับหางยาวด้านใดด้านหนึ่ง
+            int peak = (it % 2 == 0) ? 30 + rnd.nextInt(40) : 190 + rnd.nextInt(40);
+            for (int i = 0; i < 256; i++) h[i] = (int) (5000 * Math.exp(-Math.abs(i - peak) / (5.0 + rnd.nextInt(30)))) + rnd.nextInt(3);
+            int lo = 0, hi = 255;
+            while (h[lo] == 0) lo++;
+            while (h[hi] == 0) hi--;
+            int p = lo;
+            for (int i = lo; i <= hi; i++) if (h[i] > h[p]) p = i;
+            boolean dark = (p - lo) >= (hi - p);
+            int end = dark ? Math.max(lo - 1, 0) : Math.min(hi + 1, 255);
+            int T = auto_threshold.triangle(h);
+            int k = dark ? T - 1 : T;
+            double best = -1;
+            for (int i = Math.min(end, p); i <= Math.max(end, p); i++) best = Math.max(best, distance(h, end, p, i));
+            assertTrue(k >= Math.min(end, p) && k <= Math.max(end, p), "it=" + it + " k=" + k);
+            assertEquals(best, distance(h, end, p, k), 1e-9 * best, "it=" + it + " T=" + T);
+        }
+    }
+
+    @Test
+    void emptyHistogram() {
+        int[] h = new int[256];
+        assertEquals(128, auto_threshold.otsu(h));
+        assertEquals(128, auto_threshold.triangle(h));
+        assertArrayEquals(new int[]{85, 170}, auto_threshold.multiOtsu(h));
+    }
+
+    @Test
+    void oneLevel() {
+        int[] h = new int[256];
+        h[77] = 1000;
+        assertEquals(77, auto_threshold.otsu(h));        // ทั้งภาพเป็นขาว
+        assertEquals(77, auto_threshold.triangle(h));
+        assertArrayEquals(new int[]{77, 77}, auto_threshold.multiOtsu(h));
+    }
+
+    @Test
+    void twoLevels() {
+        int[] h = new int[256];
+        h[40] = 300;
+        h[200] = 700;
+        int T = auto_threshold.otsu(h);
+        assertTrue(T > 40 && T <= 200, "T=" + T);
+        int Tt = auto_threshold.triangle(h);
+        assertTrue(Tt > 40 && Tt <= 200, "T=" + Tt);
+        // แบ่งสามกลุ่มที่ไม่ว่างไม่ได้ -> ระดับต่ำสุดถึงสูงสุด
+        assertArrayEquals(new int[]{40, 200}, auto_threshold.multiOtsu(h));
+    }
+
+    @Test
+    void singleLevelMiddleBandIsKept() {
+        // equalized แบบ sparse: แถบกลางของ multi-Otsu เป็นระดับเดียว (T1 == T2)
+        int[] h = new int[256];
+        h[10] = 500;
+        h[128] = 400;
+        h[250] = 600;
+        int[] t = auto_threshold.multiOtsu(h);
+        for (int v = 0; v < 256; v++)
+            if (h[v] > 0) assertEquals(v == 128, v >= t[0] && v <= t[1], "level " + v + " band " + t[0] + ".." + t[1]);
+
+        histro_pipeline.Options opt = new histro_pipeline.Options();
+        opt.autoBand = true;
+        assertArrayEquals(new int[]{128, 128}, threshold_between.band(128, 128, opt));
+        opt.autoBand = false;
+        assertArrayEquals(threshold_between.normalize(128, 128), threshold_between.band(128, 128, opt));
+
+        gray_image g = new gray_image(3, 1);
+        g.set(0, 0, 10); g.set(0, 1, 128); g.set(0, 2, 250);
+        opt.autoBand = true;
+        int[] band = threshold_between.band(128, 128, opt);
+        assertEquals(1, bit_mask.range(g, band[0], band[1], null).area());
+    }
+
+    // ความแปรปรวนระหว่างกลุ่ม Σ ω_k (μ_k - μ)² ของกลุ่ม [cuts[k], cuts[k+1])
+    private static double variance(int[] h, int... cuts) {
+        double N = 0, S = 0;
+        for (int i = 0; i < 256; i++) { N += h[i]; S += (double) i * h[i]; }
+        double mu = S / N, v = 0;
+        for (int k = 0; k + 1 < cuts.length; k++) {
+            double w = 0, s = 0;
+            for (int i = cuts[k]; i < cuts[k + 1]; i++) { w += h[i]; s += (double) i * h[i]; }
+            if (w > 0) v += w / N * (s / w - mu) * (s / w - mu);
+        }
+        return v;
+    }
+
+    // ระยะตั้งฉากจาก (i, h[i]) ถึงเส้น (end, h[end])-(peak, h[peak])
+    private static double distance(int[] h, int end, int peak, int i) {
+        double dx = peak - end, dy = h[peak] - h[end];
+        return Math.abs(dy * (i - end) - dx * (h[i] - h[end])) / Math.hypot(dx, dy);
+    }
+
+    private static int[] randomHist(Random rnd) {
+        int[] h = new int[256];
+        int n = 2 + rnd.nextInt(6);
+        for (int k = 0; k < n; k++) {
+            int c = rnd.nextInt(256), w = 1 + rnd.nextInt(40), a = 1 + rnd.nextInt(5000);
+            for (int i = Math.max(0, c - w); i <= Math.min(255, c + w); i++) h[i] += a * (w + 1 - Math.abs(i - c)) / (w + 1);
+        }
+        if (rnd.nextInt(4) == 0) for (int i = 0; i < 256; i += 1 + rnd.nextInt(4)) h[i] = 0;   // แบบ sparse
+        h[rnd.nextInt(256)] += 1;
+        h[rnd.nextInt(256)] += 1;
+        h[rnd.nextInt(256)] += 1;
+        return h;
+    }
+}
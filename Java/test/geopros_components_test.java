@@ -0,0 +1,133 @@
+// geopros_components_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** geopros_components เทียบกับ flood fill ทีละพิกเซล (ลำดับ component แบบ raster เหมือนกัน) */
+class geopros_components_test {
+
+    // ขนาดที่คร่อมขอบ word (63/64/65) และ mask ทั้งโล่ง/ทึบ/noise
+    private static final int[][] SIZES = {{1, 1}, {7, 3}, {63, 9}, {64, 17}, {65, 11}, {130, 40}, {200, 1}, {1, 150}};
+
+    @Test
+    void matchesFloodFill() {
+        Random rnd = new Random(22);
+        for (int[] sz : SIZES) {
+            for (double density : new double[]{0, 0.2, 0.5, 0.8, 1}) {
+                bit_mask m = random(sz[0], sz[1], density, rnd);
+                for (int conn : new int[]{4, 8}) {
+                    String at = sz[0] + "x" + sz[1] + " p=" + density + " conn=" + conn;
+                    Reference ref = new Reference(m, conn);
+                    check(ref, geopros_components.of(m, conn, true), at);
+                    check(ref, geopros_components.of(rle_mask.of(m), conn, true), at + " (rle)");
+                }
+            }
+        }
+    }
+
+    @Test
+    void momentsUseRowColumnConvention() {
+        // แถบแนวนอน: กว้างตามคอลัมน์ j -> mu02 (Σ(j-cx)²) ใหญ่กว่า mu20 (Σ(i-cy)²) และมุมเอียง 0
+        bit_mask m = new bit_mask(200, 100);
+        for (int i = 10; i < 30; i++) for (int j = 20; j < 150; j++) m.set(i, j, true);
+        geopros_components c = geopros_components.of(m, 8, true);
+        assertEquals(image_moment.centralMoment(m, 2, 0), c.mu20[0], 1e-6);
+        assertEquals(image_moment.centralMoment(m, 0, 2), c.mu02[0], 1e-6);
+        assertEquals(image_moment.centralMoment(m, 1, 1), c.mu11[0], 1e-6);
+        assertEquals(0.0, c.orientation(0), 1e-12);
+    }
+
+    private static void check(Reference ref, geopros_components c, String at) {
+        assertEquals(ref.count, c.count, at);
+        for (int k = 0; k < c.count; k++) {
+            String ak = at + " #" + k;
+            assertEquals(ref.area[k], c.area[k], ak);
+            assertEquals(ref.cx[k], c.cx[k], 1e-9, ak);
+            assertEquals(ref.cy[k], c.cy[k], 1e-9, ak);
+            assertArrayEquals(ref.box[k], new int[]{c.minI[k], c.minJ[k], c.maxI[k], c.maxJ[k]}, ak);
+            assertEquals(ref.mu20[k], c.mu20[k], 1e-6 * (1 + ref.mu20[k]), ak);
+            assertEquals(ref.mu11[k], c.mu11[k], 1e-6 * (1 + Math.abs(ref.mu11[k])), ak);
+            assertEquals(ref.mu02[k], c.mu02[k], 1e-6 * (1 + ref.mu02[k]), ak);
+        }
+    }
+
+    static bit_mask random(int w, int h, double density, Random rnd) {
+        bit_mask m = new bit_mask(w, h);
+        for (int i = 0; i < h; i++)
+            for (int j = 0; j < w; j++) m.set(i, j, rnd.nextDouble() < density);
+        return m;
+    }
+
+    // BFS ทีละพิกเซล เริ่มจากพิกเซลแรกแบบ raster ที่ยังไม่มี label
+    private static final class Reference {
+        int count;
+        long[] area;
+        double[] cx, cy, mu20, mu11, mu02;
+        int[][] box;
+
+        Reference(bit_mask m, int conn) {
+            int w = m.width, h = m.height;
+            int[] label = new int[w * h];
+            Arrays.fill(label, -1);
+            List<int[]> comps = new ArrayList<>();
+            ArrayDeque<int[]> q = new ArrayDeque<>();
+            for (int i = 0; i < h; i++) {
+                for (int j = 0; j < w; j++) {
+                    if (!m.get(i, j) || label[i * w + j] >= 0) continue;
+                    int id = comps.size();
+                    List<int[]> px = new ArrayList<>();
+                    label[i * w + j] = id;
+                    q.add(new int[]{i, j});
+                    while (!q.isEmpty()) {
+                        int[] p = q.poll();
+                        px.add(p);
+                        for (int di = -1; di <= 1; di++) {
+                            for (int dj = -1; dj <= 1; dj++) {
+                                if ((di == 0 && dj == 0) || (conn == 4 && di != 0 && dj != 0)) continue;
+                                int a = p[0] + di, b = p[1] + dj;
+                                if (a < 0 || b < 0 || a >= h || b >= w || !m.get(a, b) || label[a * w + b] >= 0) continue;
+                                label[a * w + b] = id;
+                                q.add(new int[]{a, b});
+                            }
+                        }
+                    }
+                    comps.add(flatten(px));
+                }
+            }
+            count = comps.size();
+            area = new long[count];
+            cx = new double[count]; cy = new double[count];
+            mu20 = new double[count]; mu11 = new double[count]; mu02 = new double[count];
+            box = new int[count][];
+            for (int k = 0; k < count; k++) {
+                int[] px = comps.get(k);
+                int n = px.length / 2;
+                double si = 0, sj = 0;
+                int[] b = {Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1};
+                for (int t = 0; t < n; t++) {
+                    int i = px[2 * t], j = px[2 * t + 1];
+                    si += i; sj += j;
+                    b[0] = Math.min(b[0], i); b[1] = Math.min(b[1], j);
+                    b[2] = Math.max(b[2], i); b[3] = Math.max(b[3], j);
+                }
+                area[k] = n; cy[k] = si / n; cx[k] = sj / n; box[k] = b;
+                for (int t = 0; t < n; t++) {
+                    double di = px[2 * t] - cy[k], dj = px[2 * t + 1] - cx[k];
+                    mu20[k] += di * di; mu11[k] += di * dj; mu02[k] += dj * dj;
+                }
+            }
+        }
+
+        private static int[] flatten(List<int[]> px) {
+            int[] out = new int[2 * px.size()];
+            for (int t = 0; t < px.size(); t++) { out[2 * t] = px.get(t)[0]; out[2 * t + 1] = px.get(t)[1]; }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+// geopros_sweep_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** ตารางของ geopros_sweep เทียบกับ geopros ที่สแกนภาพใหม่ทุก T */
+class geopros_sweep_test {
+
+    @Test
+    void everyThresholdMatchesPerTScan() {
+        Random rnd = new Random(7);
+        for (int[] sz : new int[][]{{1, 1}, {33, 21}, {130, 70}}) {
+            gray_image g = rle_mask_test.randomGray(sz[0], sz[1], rnd);
+            geopros_sweep s = geopros_sweep.of(g);
+            geopros.BothResult[] all = s.all();
+            for (int T = 0; T <= 256; T++) {
+                geopros.BothResult e = geopros.measureBoth(g, T);
+                String at = sz[0] + "x" + sz[1] + " T=" + T;
+                rle_mask_test.assertGeo(e.white, s.at(T).white, at + " white");
+                rle_mask_test.assertGeo(e.black, s.at(T).black, at + " black");
+                rle_mask_test.assertGeo(e.white, all[T].white, at + " all()");
+            }
+        }
+    }
+
+    @Test
+    void bandsMatchPerBandScan() {
+        Random rnd = new Random(8);
+        gray_image g = rle_mask_test.randomGray(97, 41, rnd);
+        geopros_sweep s = geopros_sweep.of(g);
+        geopros.BothResult[][] bands = s.allBands();
+        for (int k = 0; k < 300; k++) {
+            int a = rnd.nextInt(256), b = rnd.nextInt(256), T1 = Math.min(a, b), T2 = Math.max(a, b);
+            geopros.BothResult e = geopros.measureBoth(bit_mask.range(g, T1, T2, null));
+            String at = "[" + T1 + "," + T2 + "]";
+            rle_mask_test.assertGeo(e.white, s.band(T1, T2).white, at + " in");
+            rle_mask_test.assertGeo(e.black, s.band(T1, T2).black, at + " out");
+            rle_mask_test.assertGeo(e.white, bands[T1][T2].white, at + " allBands");
+            rle_mask_test.assertGeo(e.black, bands[T1][T2].black, at + " allBands");
+        }
+    }
+
+    @Test
+    void survivesCacheRoundTrip() throws Exception {
+        gray_image g = rle_mask_test.randomGray(64, 64, new Random(3));
+        geopros_sweep s = geopros_sweep.of(g);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        s.write(new DataOutputStream(bytes));
+        geopros_sweep r = geopros_sweep.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertArrayEquals(s.count, r.count);
+        for (int T = 0; T <= 256; T++) {
+            rle_mask_test.assertGeo(s.at(T).white, r.at(T).white, "T=" + T);
+            rle_mask_test.assertGeo(s.at(T).black, r.at(T).black, "T=" + T);
+        }
+    }
+}
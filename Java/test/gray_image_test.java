@@ -0,0 +1,49 @@
+// gray_image_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** luma แบบ fixed-point ของ gray_image เทียบกับสูตร Rec.601 (0.299, 0.587, 0.114) */
+class gray_image_test {
+
+    @Test
+    void grayPixelsKeepTheirLevel() {
+        BufferedImage img = new BufferedImage(256, 1, BufferedImage.TYPE_INT_RGB);
+        for (int v = 0; v < 256; v++) img.setRGB(v, 0, (v << 16) | (v << 8) | v);
+        gray_image g = gray_image.luma(img);
+        for (int v = 0; v < 256; v++) assertEquals(v, g.data[v] & 0xFF, "gray " + v);
+        assertArrayEquals(g.data, parallel_histogram.lumaHistogram(img, 1).gray.data);
+    }
+
+    @Test
+    void colourWithinOneLevelOfRec601() {
+        Random rnd = new Random(17);
+        int w = 509, h = 97;
+        BufferedImage rgb = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        BufferedImage bgr = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+        for (int i = 0; i < h; i++) {
+            for (int j = 0; j < w; j++) {
+                int c = rnd.nextInt(1 << 24);
+                rgb.setRGB(j, i, c);
+                bgr.setRGB(j, i, c);
+            }
+        }
+        gray_image g = gray_image.luma(rgb);
+        for (int i = 0; i < h; i++) {
+            for (int j = 0; j < w; j++) {
+                int c = rgb.getRGB(j, i), r = (c >> 16) & 0xFF, gr = (c >> 8) & 0xFF, b = c & 0xFF;
+                // ระดับอ้างอิง = สูตรทศนิยมเดิม (int)(0.299R + 0.587G + 0.114B)
+                int ref = (int) (0.299 * r + 0.587 * gr + 0.114 * b);
+                int got = g.data[g.offset + i * g.stride + j] & 0xFF;
+                assertTrue(Math.abs(got - ref) <= 1, "rgb(" + r + "," + gr + "," + b + ") -> " + got + " vs " + ref);
+            }
+        }
+        // ทุกเส้นทาง (INT_RGB / 3BYTE_BGR / fork-join scan) ได้ค่าเดียวกัน
+        assertArrayEquals(g.data, gray_image.luma(bgr).data);
+        assertArrayEquals(g.data, parallel_histogram.lumaHistogram(rgb, 4).gray.data);
+    }
+}
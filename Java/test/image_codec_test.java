@@ -0,0 +1,160 @@
+// image_codec_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** ทุกรูปแบบที่ image_codec เขียนต้องอ่านกลับได้ค่าเดิมทุกบิต; PNG ของคลาสนี้ต้องอ่านผ่าน ImageIO ได้ sample เดียวกับ toBufferedImage() */
+class image_codec_test {
+
+    @TempDir
+    File dir;
+
+    // ความกว้างรอบ ๆ ขอบ byte (8) และ word (64) ของ packRow / ตาราง REV
+    private static final int[] WIDTHS = {1, 7, 8, 9, 63, 64, 65, 127, 130};
+
+    @Test
+    void pbmRoundTrip() throws Exception {
+        Random rnd = new Random(14);
+        for (int w : WIDTHS) {
+            bit_mask m = randomMask(w, 5, rnd);
+            File f = new File(dir, "m" + w + ".pbm");
+            image_codec.writePbm(m, f);
+            assertEquals(("P4\n" + w + " 5\n").length() + 5L * ((w + 7) / 8), f.length(), "w=" + w);
+            assertArrayEquals(m.words, image_codec.readPbm(f).words, "w=" + w);
+            assertArrayEquals(m.words, image_codec.readMask(f).words, "w=" + w);
+            assertArrayEquals(m.toGray().data, gray_image.of(image_codec.read(f)).data, "w=" + w);
+        }
+    }
+
+    @Test
+    void pgmAndRawRoundTrip() throws Exception {
+        Random rnd = new Random(15);
+        for (int w : WIDTHS) {
+            for (gray_image g : new gray_image[]{rle_mask_test.randomGray(w, 6, rnd), strided(w, 6, rnd)}) {
+                File pgm = new File(dir, "g" + w + ".pgm"), raw = new File(dir, "g" + w + ".raw");
+                image_codec.writePgm(g, pgm);
+                image_codec.writeRaw(g, raw);
+                byte[] want = packed(g);
+                assertArrayEquals(want, image_codec.readPgm(pgm).data, "w=" + w);
+                assertArrayEquals(want, image_codec.readGray(pgm).data, "w=" + w);
+                assertArrayEquals(want, gray_image.of(image_codec.read(pgm)).data, "w=" + w);
+                assertArrayEquals(want, image_codec.readRaw(raw, w, 6).data, "w=" + w);
+                assertArrayEquals(want, gray_image.of(image_codec.read(raw, w, 6)).data, "w=" + w);
+            }
+        }
+        File raw = new File(dir, "g7.raw");
+        assertThrows(IllegalArgumentException.class, () -> image_codec.readRaw(raw, 8, 6));
+    }
+
+    @Test
+    void pgmWithSmallMaxvalIsScaled() throws Exception {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        b.write("P5\n# comment\n16 1\n15\n".getBytes(StandardCharsets.US_ASCII));
+        for (int v = 0; v < 16; v++) b.write(v);
+        File f = new File(dir, "max15.pgm");
+        Files.write(f.toPath(), b.toByteArray());
+        gray_image g = image_codec.readPgm(f);
+        for (int v = 0; v < 16; v++) assertEquals(v * 17, g.get(0, v), "v=" + v);   // (v * 255 + 7) / 15 = 17v
+        assertFalse(mapped_gray.canMap(f));   // maxval != 255 -> อ่านเข้า heap แล้วขยายค่า
+    }
+
+    @Test
+    void customPngReadsBackThroughImageIO() throws Exception {
+        Random rnd = new Random(16);
+        for (image_codec.Filter filter : image_codec.Filter.values()) {
+            for (int level : new int[]{0, 1, 9}) {
+                for (int w : WIDTHS) {
+                    String at = filter + " level=" + level + " w=" + w;
+                    gray_image g = (w % 2 == 0) ? rle_mask_test.randomGray(w, 7, rnd) : strided(w, 7, rnd);
+                    File gf = new File(dir, "g.png");
+                    image_codec.writePng(g, gf, level, filter);
+                    BufferedImage back = ImageIO.read(gf);
+                    assertNotNull(back, at);
+                    // sample ในไฟล์ = raster ของ toBufferedImage() ทุก byte; ระดับที่อ่านกลับ = grayRoundTrip (เหมือน PNG ของ ImageIO)
+                    assertArrayEquals(samples(g.toBufferedImage()), samples(back), at);
+                    assertArrayEquals(roundTrip(g), gray_image.of(back).data, at);
+                    assertArrayEquals(roundTrip(g), image_codec.readGray(gf).data, at);
+
+                    bit_mask m = randomMask(w, 7, rnd);
+                    File mf = new File(dir, "m.png");
+                    image_codec.writePng(m, mf, level, filter);
+                    assertEquals(1, ImageIO.read(mf).getColorModel().getPixelSize(), at);
+                    assertArrayEquals(m.words, image_codec.readMask(mf).words, at);
+                }
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                     () -> image_codec.writePng(new gray_image(2, 2), new File(dir, "x.png"), 10, image_codec.Filter.UP));
+    }
+
+    @Test
+    void configDispatchRoundTrip() throws Exception {
+        Random rnd = new Random(17);
+        gray_image g = rle_mask_test.randomGray(45, 11, rnd);
+        bit_mask m = randomMask(45, 11, rnd);
+        for (image_codec.Format fmt : image_codec.Format.values()) {
+            image_codec.Config c = new image_codec.Config();
+            c.mask = fmt;
+            c.gray = fmt;
+            c.pngLevel = 6;
+            File mf = new File(dir, "mask" + fmt.ext), gf = new File(dir, "gray" + fmt.ext);
+            image_codec.write(m, mf, c);
+            gray_image mg = (fmt == image_codec.Format.RAW) ? image_codec.readRaw(mf, 45, 11) : image_codec.readGray(mf);
+            assertArrayEquals(m.toGray().data, mg.data, fmt.name());
+            if (fmt == image_codec.Format.PBM) {
+                assertThrows(IllegalArgumentException.class, () -> image_codec.write(g, gf, c));
+                continue;
+            }
+            image_codec.write(g, gf, c);
+            gray_image back = (fmt == image_codec.Format.RAW) ? image_codec.readRaw(gf, 45, 11) : image_codec.readGray(gf);
+            assertArrayEquals(fmt == image_codec.Format.PNG ? roundTrip(g) : g.data, back.data, fmt.name());
+        }
+    }
+
+    static bit_mask randomMask(int w, int h, Random rnd) {
+        bit_mask m = new bit_mask(w, h);
+        for (int i = 0; i < h; i++)
+            for (int j = 0; j < w; j++) if (rnd.nextBoolean()) m.set(i, j, true);
+        return m;
+    }
+
+    // view ที่ stride > width และ offset > 0 (writer ต้องอ่านเฉพาะในกรอบ)
+    private static gray_image strided(int w, int h, Random rnd) {
+        int stride = w + 3, offset = stride + 1;
+        byte[] d = new byte[offset + h * stride];
+        rnd.nextBytes(d);
+        return new gray_image(d, w, h, stride, offset);
+    }
+
+    private static byte[] samples(BufferedImage img) {
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, img.getType());
+        return ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+    }
+
+    // ระดับที่ได้หลังเขียน PNG ผ่าน TYPE_BYTE_GRAY แล้วอ่านกลับ
+    private static byte[] roundTrip(gray_image g) {
+        int[] rt = gray_image.grayRoundTrip();
+        byte[] out = packed(g);
+        for (int k = 0; k < out.length; k++) out[k] = (byte) rt[out[k] & 0xFF];
+        return out;
+    }
+
+    private static byte[] packed(gray_image g) {
+        byte[] out = new byte[g.width * g.height];
+        for (int i = 0; i < g.height; i++) System.arraycopy(g.data, g.offset + i * g.stride, out, i * g.width, g.width);
+        return out;
+    }
+}
@@ -0,0 +1,65 @@
+// mapped_gray_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** ขีด 2^31 พิกเซลของงานทั้งภาพบน mapped_gray และ gray_image */
+class mapped_gray_test {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void sizeCheckAtTheBoundary() {
+        assertEquals(Integer.MAX_VALUE, gray_image.checkedSize(Integer.MAX_VALUE, 1));
+        assertEquals(0, gray_image.checkedSize(0, Integer.MAX_VALUE));
+        // 65536 x 32768 = 2^31: int คูณแล้วล้นเป็นค่าลบ
+        assertThrows(IllegalArgumentException.class, () -> gray_image.checkedSize(1 << 16, 1 << 15));
+        assertThrows(IllegalArgumentException.class, () -> gray_image.checkedSize(Integer.MAX_VALUE, 2));
+        // 65537 x 65537 ล้นแล้ววนกลับเป็นค่าบวกเล็ก ๆ (131073)
+        assertThrows(IllegalArgumentException.class, () -> new gray_image(65537, 65537));
+        assertThrows(IllegalArgumentException.class, () -> new gray_image(-1, 4));
+    }
+
+    @Test
+    void wholeImageWorkRejectsMoreThan2to31Pixels() throws Exception {
+        // RAW แบบ sparse ขนาด 2^31 byte: map ได้ แต่ histogram / equalization / mask ทั้งภาพต้องปฏิเสธก่อนอ่านพิกเซล
+        File f = new File(dir, "big.raw");
+        try (RandomAccessFile r = new RandomAccessFile(f, "rw")) { r.setLength(1L << 31); }
+        try (mapped_gray m = mapped_gray.openRaw(f, 1 << 16, 1 << 15)) {
+            histro_pipeline.Options opt = new histro_pipeline.Options();
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> histogram.run(m, opt));
+            assertTrue(e.getMessage().contains("--stream"), e.getMessage());
+            assertThrows(IllegalArgumentException.class, () -> parallel_histogram.histogram(m, 4));
+            assertThrows(IllegalArgumentException.class, () -> parallel_histogram.applyLut(m, new int[256], 1));
+            assertThrows(IllegalArgumentException.class, () -> m.range(128, 255, null));
+            assertThrows(IllegalArgumentException.class, () -> rle_mask.range(m, 128, 255, null));
+            assertThrows(IllegalArgumentException.class, m::toGray);
+            // อ่านทีละแถบยังได้
+            byte[] scratch = new byte[2 * m.width];
+            assertEquals(0, m.strip(m.height - 2, 2, scratch).get(1, m.width - 1));
+        }
+    }
+
+    @Test
+    void mappedMatchesHeapImage() throws Exception {
+        gray_image g = rle_mask_test.randomGray(301, 67, new Random(15));
+        File f = new File(dir, "small.raw");
+        Files.write(f.toPath(), g.data);
+        try (mapped_gray m = mapped_gray.openRaw(f, g.width, g.height)) {
+            assertArrayEquals(parallel_histogram.histogram(g, 1), parallel_histogram.histogram(m, 3));
+            int[] lut = new int[256];
+            for (int k = 0; k < 256; k++) lut[k] = 255 - k;
+            assertArrayEquals(g.map(lut).data, parallel_histogram.applyLut(m, lut, 3).data);
+            assertArrayEquals(bit_mask.range(g, 90, 200, null).words, m.range(90, 200, null).words);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+// moment_sums_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * moment_sums ทุกเส้นทาง (ขอบของ run / ตาราง byte / rle_mask) เทียบกับผลรวมทีละพิกเซล
+ * และการสแกนรอบเดียวเทียบกับลูปแยกต่อ moment ของ image_moment (double[][])
+ */
+class moment_sums_test {
+
+    @Test
+    void singlePassMatchesPerMomentLoops() {
+        Random rnd = new Random(5);
+        for (int[] sz : new int[][]{{1, 1}, {40, 30}, {257, 64}}) {
+            gray_image g = rle_mask_test.randomGray(sz[0], sz[1], rnd);
+            double[][] f = new double[g.height][g.width];
+            for (int i = 0; i < g.height; i++)
+                for (int j = 0; j < g.width; j++) f[i][j] = g.data[i * g.width + j] & 0xFF;
+            moment_sums w = moment_sums.weighted(g), d = moment_sums.of(f);
+            String at = sz[0] + "x" + sz[1];
+            for (int p = 0; p <= 3; p++) {
+                for (int q = 0; p + q <= 3; q++) {
+                    double raw = image_moment.rawMoment(f, p, q), mu = image_moment.centralMoment(f, p, q);
+                    close(raw, w.raw(p, q), at + " M" + p + q);
+                    close(raw, d.raw(p, q), at + " M" + p + q + " (double[][])");
+                    // μ_pq: ลูป double มีเศษจากการลบ x̄, ȳ ตามขนาดของพจน์ (~ M00 * ขนาดภาพ^(p+q)) แม้ค่าจริงเป็น 0
+                    double scale = w.mu00() * Math.pow(Math.max(g.width, g.height), p + q);
+                    assertEquals(mu, w.central(p, q), 1e-12 * scale, at + " mu" + p + q);
+                }
+            }
+            double[] hu = moment_sums.hu(image_moment.normalizedCentralMoment(f, 2, 0), image_moment.normalizedCentralMoment(f, 0, 2),
+                                         image_moment.normalizedCentralMoment(f, 1, 1), image_moment.normalizedCentralMoment(f, 3, 0),
+                                         image_moment.normalizedCentralMoment(f, 0, 3), image_moment.normalizedCentralMoment(f, 2, 1),
+                                         image_moment.normalizedCentralMoment(f, 1, 2));
+            double[] got = w.hu();
+            for (int k = 0; k < 7; k++) assertEquals(hu[k], got[k], 1e-7 * Math.abs(hu[k]) + 1e-15, at + " phi" + (k + 1));
+        }
+    }
+
+    @Test
+    void grayMatrixKeepsFractionalLuma() {
+        // toGrayMatrix(BufferedImage) = 0.299R + 0.587G + 0.114B แบบทศนิยม (API เดิม); toLevelMatrix = ระดับเต็มของ gray_image
+        BufferedImage img = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        int[] rgb = {0xFF02A3, 0x102030, 0xFFFFFF, 0x000000, 0x808080, 0x01FE7F};
+        for (int k = 0; k < rgb.length; k++) img.setRGB(k % 3, k / 3, rgb[k]);
+        double[][] f = image_moment.toGrayMatrix(img), lv = image_moment.toLevelMatrix(gray_image.luma(img));
+        for (int k = 0; k < rgb.length; k++) {
+            int r = (rgb[k] >> 16) & 0xFF, g = (rgb[k] >> 8) & 0xFF, b = rgb[k] & 0xFF;
+            assertEquals(0.299 * r + 0.587 * g + 0.114 * b, f[k / 3][k % 3], 0.0, "pixel " + k);
+            assertEquals(gray_image.luma(img).get(k / 3, k % 3), lv[k / 3][k % 3], 0.0, "pixel " + k);
+        }
+        assertEquals(0.299 * 255 + 0.587 * 2 + 0.114 * 163, f[0][0], 0.0);   // 96.001 ไม่ใช่ 95 / 96
+    }
+
+    // ลูป double ของ image_moment สะสมปัดเศษได้ ส่วน moment_sums exact
+    private static void close(double expected, double actual, String at) {
+        assertEquals(expected, actual, 1e-9 * Math.abs(expected) + 1e-12, at);
+    }
+
+    @Test
+    void runPathMatchesPixelSums() {
+        Random rnd = new Random(23);
+        for (int it = 0; it < 120; it++) {
+            int w = 1 + rnd.nextInt(it < 80 ? 300 : 5000), h = 1 + rnd.nextInt(40);
+            // mode 0 = noise (เส้นทางตาราง byte), 1-2 = run ยาว (เส้นทางขอบของ run); แต่ละแถวเลือกเส้นทางเอง
+            bit_mask m = runs(w, h, rnd.nextInt(3), rnd);
+            long[][] ref = pixelSums(m);
+            String at = "it=" + it + " " + w + "x" + h;
+            check(ref, moment_sums.of(m), at);
+            check(ref, moment_sums.ofRuns(m), at + " (runs)");
+            check(ref, moment_sums.of(rle_mask.of(m)), at + " (rle)");
+            check(ref, moment_sums.of(m.toGray(), 128), at + " (gray)");
+        }
+    }
+
+    @Test
+    void stripsAccumulateLikeWholeMask() {
+        Random rnd = new Random(5);
+        bit_mask m = runs(700, 90, 1, rnd);
+        moment_sums.Accumulator acc = new moment_sums.Accumulator();
+        for (int y = 0; y < m.height; y += 32) {
+            int n = Math.min(32, m.height - y);
+            bit_mask s = new bit_mask(m.width, n);
+            System.arraycopy(m.words, y * m.wordsPerRow, s.words, 0, n * m.wordsPerRow);
+            acc.add(s, y);
+        }
+        check(pixelSums(m), acc.build(), "strips");
+        assertArrayEquals(moment_sums.of(m).hu(), moment_sums.ofRuns(m).hu());
+    }
+
+    private static void check(long[][] ref, moment_sums ms, String at) {
+        for (int p = 0; p <= 3; p++)
+            for (int q = 0; p + q <= 3; q++)
+                assertEquals((double) ref[p][q], ms.raw(p, q), at + " M" + p + q);   // exact ทั้งคู่ -> double ตัวเดียวกัน
+    }
+
+    static bit_mask runs(int w, int h, int mode, Random rnd) {
+        bit_mask m = new bit_mask(w, h);
+        double flip = (mode == 1) ? 0.01 : 0.0005;
+        for (int i = 0; i < h; i++) {
+            boolean on = rnd.nextBoolean();
+            for (int j = 0; j < w; j++) {
+                if (mode == 0) on = rnd.nextBoolean();
+                else if (rnd.nextDouble() < flip) on = !on;
+                if (on) m.set(i, j, true);
+            }
+        }
+        return m;
+    }
+
+    // Σ i^p j^q ของพิกเซล 1 แบบตรง ๆ (ขนาดในเทสต์ไม่ล้น long)
+    static long[][] pixelSums(bit_mask m) {
+        long[][] s = new long[4][4];
+        for (int i = 0; i < m.height; i++) {
+            for (int j = 0; j < m.width; j++) {
+                if (!m.get(i, j)) continue;
+                long ip = 1;
+                for (int p = 0; p <= 3; p++, ip *= i) {
+                    long jq = 1;
+                    for (int q = 0; p + q <= 3; q++, jq *= j) s[p][q] += ip * jq;
+                }
+            }
+        }
+        return s;
+    }
+}
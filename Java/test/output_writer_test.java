@@ -0,0 +1,123 @@
+// output_writer_test.java
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/** error ต่อ Group ที่ await(), backpressure ของคิวงาน และความหมายของ close() */
+class output_writer_test {
+
+    @Test
+    void failedJobSurfacesAtAwaitOfItsGroupOnly() throws Exception {
+        try (output_writer w = new output_writer(3, 8)) {
+            output_writer.Group bad = w.group(), good = w.group();
+            IOException boom = new IOException("disk full");
+            AtomicInteger ran = new AtomicInteger();
+            bad.submit(new File("a.png"), ran::incrementAndGet);
+            bad.submit(new File("b.png"), () -> { throw boom; });
+            bad.submit(new File("c.png"), () -> { throw new IllegalStateException("encoder"); });
+            for (int k = 0; k < 5; k++) good.submit(new File("g" + k + ".txt"), ran::incrementAndGet);
+
+            good.await();   // ไม่เห็น error ของ group อื่น
+            IOException e = assertThrows(IOException.class, bad::await);
+            assertEquals(6, ran.get());
+            // error แรกเป็นตัวหลัก อีกตัวเป็น suppressed (ลำดับขึ้นกับว่า thread ไหนเสร็จก่อน)
+            assertEquals(1, e.getSuppressed().length);
+            Throwable[] all = {e.getCause(), e.getSuppressed()[0].getCause()};
+            assertTrue(all[0] == boom || all[1] == boom);
+            assertTrue(all[0] instanceof IllegalStateException || all[1] instanceof IllegalStateException);
+            assertTrue(e.getMessage().startsWith("Cannot write "), e.getMessage());
+            bad.await();    // error ถูกส่งไปแล้ว -> ครั้งถัดไปไม่โยนซ้ำ
+        }
+    }
+
+    @Test
+    void fullQueueBlocksSubmitter() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1), third = new CountDownLatch(1);
+        try (output_writer w = new output_writer(1, 2)) {
+            output_writer.Group g = w.group();
+            g.submit(new File("1"), () -> awaitGate(gate));
+            g.submit(new File("2"), () -> awaitGate(gate));   // คิวเต็ม (2 งานค้าง)
+            Thread submitter = new Thread(() -> {
+                try {
+                    g.submit(new File("3"), () -> {});
+                    third.countDown();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            submitter.start();
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (submitter.getState() != Thread.State.WAITING && System.nanoTime() < until) Thread.sleep(5);
+            assertEquals(Thread.State.WAITING, submitter.getState());   // จอดรอ slot อยู่
+            assertFalse(third.await(200, TimeUnit.MILLISECONDS));
+            gate.countDown();
+            assertTrue(third.await(10, TimeUnit.SECONDS));
+            submitter.join();
+            g.await();
+        }
+    }
+
+    @Test
+    void closeWaitsForPendingJobs() throws Exception {
+        AtomicInteger done = new AtomicInteger();
+        output_writer w = new output_writer(2, 4);
+        output_writer.Group g = w.group();
+        for (int k = 0; k < 6; k++)
+            g.submit(new File("s" + k), () -> { sleep(30); done.incrementAndGet(); });
+        w.close();
+        assertEquals(6, done.get());
+        w.close();   // ปิดซ้ำได้
+
+        // ส่งหลังปิด -> error ของ group นั้น ไม่ใช่ exception ตอน submit
+        g.submit(new File("late"), done::incrementAndGet);
+        IOException e = assertThrows(IOException.class, g::await);
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+
+    @Test
+    void interruptedCloseThrowsInterruptedIOException() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        output_writer w = new output_writer(1, 2);
+        output_writer.Group g = w.group();
+        g.submit(new File("slow"), () -> awaitGate(gate));
+        Thread.currentThread().interrupt();
+        try {
+            InterruptedIOException e = assertThrows(InterruptedIOException.class, w::close);
+            assertSame(InterruptedIOException.class, e.getClass());
+            assertTrue(Thread.currentThread().isInterrupted());   // flag ถูกตั้งคืน
+        } finally {
+            Thread.interrupted();
+            gate.countDown();
+        }
+        w.close();
+        g.await();
+    }
+
+    private static void awaitGate(CountDownLatch gate) throws IOException {
+        try {
+            if (!gate.await(10, TimeUnit.SECONDS)) throw new IOException("gate timeout");
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static void sleep(long ms) throws IOException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+// parallel_histogram_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+/** histogram / LUT แบบ fork-join ต้องเท่ากับแบบ serial ทุกบิต ไม่ว่าจะใช้กี่ thread */
+class parallel_histogram_test {
+
+    // ขนาดคี่และใหญ่พอให้แบ่งงานหลายช่วง (งานย่อยต่ำสุด 2^16 พิกเซล)
+    private static final int[][] SIZES = {{1, 1}, {7, 3}, {1031, 523}, {257, 2049}, {4099, 67}};
+
+    @Test
+    void histogramAndLutMatchSerial() {
+        Random rnd = new Random(3);
+        int[] lut = new int[256];
+        for (int k = 0; k < 256; k++) lut[k] = rnd.nextInt(256);
+        for (int[] sz : SIZES) {
+            for (gray_image g : new gray_image[]{rle_mask_test.randomGray(sz[0], sz[1], rnd), strided(sz[0], sz[1], rnd)}) {
+                String at = sz[0] + "x" + sz[1] + " stride=" + g.stride + " offset=" + g.offset;
+                int[] h1 = parallel_histogram.histogram(g, 1);
+                gray_image e1 = parallel_histogram.applyLut(g, lut, 1);
+                assertEquals((long) g.width * g.height, sum(h1), at);
+                for (int n : new int[]{2, 3, 5, 8, 0}) {
+                    assertArrayEquals(h1, parallel_histogram.histogram(g, n), at + " threads=" + n);
+                    gray_image en = parallel_histogram.applyLut(g, lut, n);
+                    assertArrayEquals(e1.data, en.data, at + " threads=" + n);
+                }
+            }
+        }
+    }
+
+    @Test
+    void lumaScanMatchesSerial() {
+        Random rnd = new Random(4);
+        for (int[] sz : SIZES) {
+            BufferedImage img = new BufferedImage(sz[0], sz[1], BufferedImage.TYPE_INT_RGB);
+            for (int i = 0; i < sz[1]; i++)
+                for (int j = 0; j < sz[0]; j++) img.setRGB(j, i, rnd.nextInt(1 << 24));
+            parallel_histogram.LumaScan s1 = parallel_histogram.lumaHistogram(img, 1, true);
+            for (int n : new int[]{2, 3, 7}) {
+                parallel_histogram.LumaScan sn = parallel_histogram.lumaHistogram(img, n, true);
+                String at = sz[0] + "x" + sz[1] + " threads=" + n;
+                assertArrayEquals(s1.gray.data, sn.gray.data, at);
+                assertArrayEquals(s1.h, sn.h, at);
+                assertArrayEquals(s1.r, sn.r, at);
+                assertArrayEquals(s1.g, sn.g, at);
+                assertArrayEquals(s1.b, sn.b, at);
+                assertEquals(s1.isGray, sn.isGray, at);
+            }
+        }
+    }
+
+    @Test
+    void concurrentCallersWithManyPoolSizes() throws Exception {
+        // จำนวน thread ต่างกันมากกว่าที่ cache เก็บได้ พร้อมกันหลาย caller: pool ที่หลุดจาก cache ต้องยังใช้ได้
+        gray_image g = rle_mask_test.randomGray(1031, 523, new Random(5));
+        int[] h1 = parallel_histogram.histogram(g, 1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<int[]>> out = new ArrayList<>();
+            for (int k = 0; k < 64; k++) {
+                int n = 2 + k % 9;
+                out.add(callers.submit(() -> parallel_histogram.histogram(g, n)));
+            }
+            for (Future<int[]> f : out) assertArrayEquals(h1, f.get());
+        } finally {
+            callers.shutdown();
+        }
+        assertEquals(0x7fff, parallel_histogram.resolveThreads(1_000_000));
+    }
+
+    // view ที่ stride > width และเริ่มกลางอาร์เรย์ (ขอบนอก view เป็นค่าที่ไม่ควรถูกนับ)
+    private static gray_image strided(int w, int h, Random rnd) {
+        int stride = w + 5, offset = 3 * stride + 2;
+        byte[] d = new byte[offset + h * stride];
+        Arrays.fill(d, (byte) 0xFF);
+        gray_image g = new gray_image(d, w, h, stride, offset);
+        for (int i = 0; i < h; i++)
+            for (int j = 0; j < w; j++) g.set(i, j, rnd.nextInt(255));
+        return g;
+    }
+
+    private static long sum(int[] h) {
+        long s = 0;
+        for (int v : h) s += v;
+        return s;
+    }
+}
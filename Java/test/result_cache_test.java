@@ -0,0 +1,143 @@
+// result_cache_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** LRU ตามงบ byte, กฎ channels, ชั้นดิสก์ (ผลเท่ากับการรันไม่ใช้ cache) และไฟล์เสียที่ต้องเป็น miss */
+class result_cache_test {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void lruEvictsLeastRecentlyUsedWithinByteBudget() throws Exception {
+        result_cache.Entry a = entry(40, 30, false, 1), b = entry(40, 30, false, 2), c = entry(40, 30, false, 3);
+        long one = a.bytes();
+        result_cache cache = new result_cache(null, 2 * one + one / 2);   // พอสำหรับ 2 entry
+        cache.put("a", a);
+        cache.put("b", b);
+        assertSame(a, cache.get("a", false));   // a ใช้ล่าสุด -> b เก่าสุด
+        cache.put("c", c);
+        assertNull(cache.get("b", false));
+        assertSame(a, cache.get("a", false));
+        assertSame(c, cache.get("c", false));
+        assertTrue(cache.stats().endsWith("in 2 entries"), cache.stats());
+
+        // entry ที่ใหญ่กว่างบทั้งก้อนไม่เก็บ และไม่ไล่ตัวอื่นออก
+        cache.put("big", entry(400, 300, false, 4));
+        assertNull(cache.get("big", false));
+        assertSame(a, cache.get("a", false));
+        assertSame(c, cache.get("c", false));
+    }
+
+    @Test
+    void channelsRequireRgbHistograms() throws Exception {
+        for (File d : new File[]{null, dir}) {
+            result_cache cache = new result_cache(d, 1 << 20);
+            cache.put("luma", entry(20, 10, false, 5));
+            cache.put("rgb", entry(20, 10, true, 6));
+            assertNotNull(cache.get("luma", false));
+            assertNull(cache.get("luma", true));
+            assertNotNull(cache.get("rgb", false));
+            assertNotNull(cache.get("rgb", true));
+        }
+        // จากดิสก์อย่างเดียว (งบหน่วยความจำ 0)
+        result_cache disk = new result_cache(dir, 0);
+        assertNull(disk.get("luma", true));
+        assertNotNull(disk.get("rgb", true));
+    }
+
+    @Test
+    void diskHitMatchesUncachedRun() throws Exception {
+        File in = new File(dir, "in.png");
+        ImageIO.write(rle_mask_test.randomGray(211, 97, new Random(20)).toBufferedImage(), "png", in);
+
+        histro_pipeline.Result plain = histro_pipeline.run(in, 128, 85, 170, new histro_pipeline.Options());
+        File store = new File(dir, "cache");
+        histro_pipeline.Options first = new histro_pipeline.Options();
+        first.cache = new result_cache(store, 0);   // ไม่เก็บในหน่วยความจำ -> ครั้งถัดไปต้องอ่านจากดิสก์
+        pipelineEq(plain, histro_pipeline.run(in, 128, 85, 170, first));
+
+        histro_pipeline.Options second = new histro_pipeline.Options();
+        second.cache = new result_cache(store, 0);
+        for (int T : new int[]{1, 128, 200}) pipelineEq(histro_pipeline.run(in, T, 85, 170, new histro_pipeline.Options()),
+                                                         histro_pipeline.run(in, T, 85, 170, second));
+        assertTrue(second.cache.stats().startsWith("hits=3 (disk 3), misses=0"), second.cache.stats());
+    }
+
+    @Test
+    void corruptFilesAreMisses() throws Exception {
+        result_cache.Entry e = entry(33, 17, true, 7);
+        new result_cache(dir, 0).put("k", e);
+        File f = new File(dir, "k.hcache");
+        byte[] good = Files.readAllBytes(f.toPath());
+        assertNotNull(new result_cache(dir, 0).get("k", true));
+
+        // I, J ผิด (ค่าลบ / ใหญ่มาก / ไม่ตรงกับความยาวไฟล์)
+        for (int[] ij : new int[][]{{-1, 17}, {33, -5}, {1 << 20, 1 << 20}, {34, 17}, {0, 0}}) {
+            try (RandomAccessFile r = new RandomAccessFile(f, "rw")) {
+                r.seek(8);
+                r.writeInt(ij[0]);
+                r.writeInt(ij[1]);
+            }
+            assertNull(new result_cache(dir, 0).get("k", false), ij[0] + "x" + ij[1]);
+            Files.write(f.toPath(), good);
+        }
+        // ตัดท้าย / ต่อท้าย
+        Files.write(f.toPath(), Arrays.copyOf(good, good.length - 1));
+        assertNull(new result_cache(dir, 0).get("k", false));
+        Files.write(f.toPath(), Arrays.copyOf(good, good.length + 1));
+        assertNull(new result_cache(dir, 0).get("k", false));
+        // mapEq นอกช่วง 0..255 (ใช้เป็น index) และ count ของ sweep ที่ไม่ตรงกับ histogram
+        byte[] bad = good.clone();
+        bad[18 + 1024] = 0x7F;
+        Files.write(f.toPath(), bad);
+        assertNull(new result_cache(dir, 0).get("k", false));
+        bad = good.clone();
+        bad[18 + 2048 + 3072] = 0x7F;
+        Files.write(f.toPath(), bad);
+        assertNull(new result_cache(dir, 0).get("k", false));
+
+        Files.write(f.toPath(), good);
+        result_cache.Entry back = new result_cache(dir, 0).get("k", true);
+        assertArrayEquals(e.h, back.h);
+        assertArrayEquals(e.hB, back.hB);
+        assertArrayEquals(e.eq.data, back.eq.data);
+    }
+
+    // ผลทุกขั้นตรงกัน
+    private static void pipelineEq(histro_pipeline.Result a, histro_pipeline.Result b) {
+        assertArrayEquals(a.hist.h, b.hist.h);
+        assertArrayEquals(a.hist.mapEq, b.hist.mapEq);
+        assertArrayEquals(a.hist.eq.data, b.hist.eq.data);
+        assertEquals(a.single.T, b.single.T);
+        rle_mask_test.assertGeo(a.single.oneWhite, b.single.oneWhite, "single white");
+        rle_mask_test.assertGeo(a.single.zeroBlack, b.single.zeroBlack, "single black");
+        rle_mask_test.assertGeo(a.band.whiteIn, b.band.whiteIn, "band in");
+        rle_mask_test.assertGeo(a.band.outBlack, b.band.outBlack, "band out");
+        assertArrayEquals(a.single.one().words, b.single.one().words);
+        assertEquals(a.moments.M00, b.moments.M00);
+        assertArrayEquals(a.moments.hu, b.moments.hu);
+    }
+
+    private static result_cache.Entry entry(int w, int h, boolean rgb, long seed) {
+        Random rnd = new Random(seed);
+        gray_image eq = rle_mask_test.randomGray(w, h, rnd);
+        int[] hist = parallel_histogram.histogram(eq, 1), map = new int[256];
+        for (int v = 0; v < 256; v++) map[v] = v;
+        return new result_cache.Entry(h, w, hist, map, true, rgb ? hist.clone() : null, rgb ? hist.clone() : null,
+                                      rgb ? hist.clone() : null, eq, geopros_sweep.of(eq));
+    }
+}
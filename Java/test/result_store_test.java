@@ -0,0 +1,144 @@
+// result_store_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** schema ของ result_store: BIN หลาย batch อ่านกลับผ่าน ints / reals / texts, CSV quoting, NaN -> null / ช่องว่าง */
+class result_store_test {
+
+    @TempDir
+    File dir;
+
+    // ชื่อที่ต้อง quote ใน CSV และ escape ใน JSON
+    private static final String[] NAMES = {"plain.png", "a,b.png", "say \"hi\".png", "ภาพ,\"ไทย\".png", "x.png"};
+
+    @Test
+    void binBatchesReadBackPerColumn() throws Exception {
+        histro_pipeline.Result[] r = results();
+        File f = new File(dir, "out.bin");
+        try (result_store s = new result_store(f, result_store.Format.BIN, 2)) {   // 5 ระเบียน -> batch 2 + 2 + 1
+            for (int k = 0; k < r.length; k++) s.add(NAMES[k], r[k]);
+            assertEquals(r.length, s.count());
+        }
+        assertEquals(Arrays.asList(NAMES), result_store.texts(f, "image"));
+        long[] w = result_store.ints(f, "width"), h = result_store.ints(f, "h"), t = result_store.ints(f, "t");
+        double[] mean = result_store.reals(f, "mean"), hu = result_store.reals(f, "hu"), cx = result_store.reals(f, "black_cx");
+        assertEquals(r.length * 256, h.length);
+        assertEquals(r.length * 7, hu.length);
+        for (int k = 0; k < r.length; k++) {
+            assertEquals(r[k].hist.J, w[k]);
+            assertEquals(r[k].single.T, t[k]);
+            assertEquals(r[k].hist.mean, mean[k]);
+            assertEquals(r[k].single.zeroBlack.cx, cx[k]);   // NaN เก็บเป็น NaN ใน BIN
+            for (int v = 0; v < 256; v++) assertEquals(r[k].hist.h[v], h[k * 256 + v], "record " + k + " h_" + v);
+            assertArrayEquals(r[k].moments.hu, Arrays.copyOfRange(hu, k * 7, k * 7 + 7));
+        }
+        assertTrue(Double.isNaN(cx[1]));
+        assertEquals(result_store.VERSION, result_store.ints(f, "schema")[0]);
+        assertThrows(IllegalArgumentException.class, () -> result_store.reals(f, "width"));
+        assertThrows(IllegalArgumentException.class, () -> result_store.ints(f, "no_such"));
+    }
+
+    @Test
+    void csvQuotesNamesAndLeavesNaNEmpty() throws Exception {
+        histro_pipeline.Result[] r = results();
+        File f = new File(dir, "out.csv");
+        try (result_store s = new result_store(f, result_store.Format.CSV, 2)) {
+            for (int k = 0; k < r.length; k++) s.add(NAMES[k], r[k]);
+        }
+        List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1 + r.length, lines.size());
+        List<String> header = csv(lines.get(0));
+        int image = header.indexOf("image"), cx = header.indexOf("black_cx"), h0 = header.indexOf("h_0");
+        assertEquals("hu_1", header.get(header.indexOf("hu_7") - 6));
+        for (int k = 0; k < r.length; k++) {
+            List<String> row = csv(lines.get(k + 1));
+            assertEquals(header.size(), row.size(), "record " + k);
+            assertEquals(NAMES[k], row.get(image));
+            assertEquals(Double.isNaN(r[k].single.zeroBlack.cx) ? "" : Double.toString(r[k].single.zeroBlack.cx), row.get(cx));
+            assertEquals(Integer.toString(r[k].hist.h[0]), row.get(h0));
+        }
+        assertEquals("", csv(lines.get(2)).get(cx));
+    }
+
+    @Test
+    void jsonlEscapesNamesAndWritesNaNAsNull() throws Exception {
+        histro_pipeline.Result[] r = results();
+        File f = new File(dir, "out.jsonl");
+        try (result_store s = result_store.open(f)) {
+            for (int k = 0; k < r.length; k++) s.add(NAMES[k], r[k]);
+        }
+        List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+        assertEquals(r.length, lines.size());
+        assertTrue(lines.get(1).contains("\"image\":\"a,b.png\""), lines.get(1));
+        assertTrue(lines.get(2).contains("\"image\":\"say \\\"hi\\\".png\""), lines.get(2));
+        assertTrue(lines.get(1).contains("\"black_cx\":null,"), lines.get(1));
+        for (String l : lines) assertTrue(!l.contains("NaN") && !l.contains("Infinity"), l);
+    }
+
+    @Test
+    void overlongNameIsRejectedForBinOnly() throws Exception {
+        histro_pipeline.Result[] r = results();
+        char[] c = new char[21846];   // 3 byte ต่อตัว -> 65538 byte
+        Arrays.fill(c, 'ก');
+        String name = new String(c);
+        assertEquals(65538, result_store.utfLength(name));
+        File f = new File(dir, "long.bin");
+        try (result_store s = new result_store(f, result_store.Format.BIN, 4)) {
+            s.add(NAMES[0], r[0]);
+            assertThrows(IllegalArgumentException.class, () -> s.add(name, r[1]));
+            s.add(name.substring(1), r[2]);   // 65535 byte พอดี
+        }
+        List<String> back = result_store.texts(f, "image");
+        assertEquals(2, back.size());
+        assertEquals(name.substring(1), back.get(1));
+        try (result_store s = new result_store(new File(dir, "long.jsonl"), result_store.Format.JSONL, 4)) {
+            s.add(name, r[1]);
+        }
+    }
+
+    // ภาพสุ่ม + ภาพค่าคงที่ (T สูงกว่าทุกพิกเซล -> ทุกพิกเซลอยู่ฝั่ง white, black ว่าง, centroid NaN) ที่ index 1
+    private histro_pipeline.Result[] results() throws Exception {
+        Random rnd = new Random(18);
+        histro_pipeline.Result[] r = new histro_pipeline.Result[NAMES.length];
+        for (int k = 0; k < r.length; k++) {
+            gray_image g = rle_mask_test.randomGray(20 + 13 * k, 9 + k, rnd);
+            if (k == 1) Arrays.fill(g.data, (byte) 50);
+            File in = new File(dir, "in" + k + ".png");
+            ImageIO.write(g.toBufferedImage(), "png", in);
+            r[k] = histro_pipeline.run(in, (k == 1) ? 255 : 128, 85, 170, new histro_pipeline.Options());
+        }
+        return r;
+    }
+
+    // แยกบรรทัด CSV ตาม RFC 4180 ("" ใน field ที่ quote = ")
+    private static List<String> csv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch != '"') cur.append(ch);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') { cur.append('"'); i++; }
+                else quoted = false;
+            } else if (ch == '"') quoted = true;
+            else if (ch == ',') { out.add(cur.toString()); cur.setLength(0); }
+            else cur.append(ch);
+        }
+        out.add(cur.toString());
+        return out;
+    }
+}
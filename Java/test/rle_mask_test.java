@@ -0,0 +1,86 @@
+// rle_mask_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** rle_mask เทียบกับ bit_mask ของภาพเดียวกัน */
+class rle_mask_test {
+
+    private static final int[][] SIZES = {{1, 1}, {63, 4}, {64, 5}, {65, 6}, {129, 33}, {300, 7}};
+
+    @Test
+    void roundTripsThroughBitMask() {
+        Random rnd = new Random(24);
+        for (int[] sz : SIZES) {
+            for (int mode = 0; mode < 3; mode++) {
+                bit_mask m = moment_sums_test.runs(sz[0], sz[1], mode, rnd);
+                rle_mask r = rle_mask.of(m);
+                String at = sz[0] + "x" + sz[1] + " mode=" + mode;
+                assertArrayEquals(m.words, r.toBitMask().words, at);
+                assertArrayEquals(m.not().words, r.not().toBitMask().words, at + " not");
+                assertEquals(m.area(), r.area(), at);
+            }
+        }
+        // ทั้งโล่งและทึบ
+        bit_mask empty = new bit_mask(70, 3);
+        assertEquals(0, rle_mask.of(empty).runCount());
+        assertArrayEquals(empty.not().words, rle_mask.of(empty.not()).toBitMask().words);
+        assertEquals(3, rle_mask.of(empty.not()).runCount());
+    }
+
+    @Test
+    void rangeMatchesBitMaskRange() {
+        Random rnd = new Random(7);
+        for (int[] sz : SIZES) {
+            gray_image g = randomGray(sz[0], sz[1], rnd);
+            for (int[] lh : new int[][]{{128, 255}, {85, 170}, {0, 255}, {200, 100}}) {
+                int[] h1 = new int[256], h2 = new int[256];
+                bit_mask m = bit_mask.range(g, lh[0], lh[1], h1);
+                rle_mask r = rle_mask.range(g, lh[0], lh[1], h2);
+                String at = sz[0] + "x" + sz[1] + " [" + lh[0] + "," + lh[1] + "]";
+                assertArrayEquals(m.words, r.toBitMask().words, at);
+                assertArrayEquals(h1, h2, at + " hist");
+                geopros.BothResult a = geopros.measureBoth(m), b = geopros.measureBoth(r);
+                assertGeo(a.white, b.white, at + " white");
+                assertGeo(a.black, b.black, at + " black");
+            }
+        }
+    }
+
+    @Test
+    void mappedRangeMatchesHeap(@TempDir Path dir) throws Exception {
+        gray_image g = randomGray(1500, 700, new Random(9));
+        File f = dir.resolve("g.pgm").toFile();
+        image_codec.writePgm(g, f);
+        gray_image back = image_codec.readPgm(f);
+        int[] h1 = new int[256], h2 = new int[256], h3 = new int[256];
+        bit_mask m = bit_mask.range(back, 60, 190, h1);
+        try (mapped_gray src = mapped_gray.open(f)) {
+            assertArrayEquals(m.words, src.range(60, 190, h2).words);
+            assertArrayEquals(m.words, rle_mask.range(src, 60, 190, h3).toBitMask().words);
+        }
+        assertArrayEquals(h1, h2);
+        assertArrayEquals(h1, h3);
+    }
+
+    static gray_image randomGray(int w, int h, Random rnd) {
+        gray_image g = new gray_image(w, h);
+        // แถวละ 2-3 ช่วงระดับเทาเรียบ + noise บางส่วน ให้มีทั้ง run ยาวและสั้น
+        for (int i = 0; i < h; i++)
+            for (int j = 0; j < w; j++)
+                g.data[i * w + j] = (byte) (rnd.nextInt(8) == 0 ? rnd.nextInt(256) : ((i * 7 + j / 16) * 37) & 0xFF);
+        return g;
+    }
+
+    static void assertGeo(geopros.Result a, geopros.Result b, String at) {
+        assertEquals(a.area, b.area, at);
+        assertEquals(a.cx, b.cx, 1e-9, at);
+        assertEquals(a.cy, b.cy, 1e-9, at);
+        assertArrayEquals(new int[]{a.minI, a.minJ, a.maxI, a.maxJ}, new int[]{b.minI, b.minJ, b.maxI, b.maxJ}, at);
+    }
+}
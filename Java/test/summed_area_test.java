@@ -0,0 +1,72 @@
+// summed_area_test.java
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** summed_area เทียบกับการวนพิกเซลใน ROI ตรง ๆ */
+class summed_area_test {
+
+    @Test
+    void regionMatchesDirectLoop() {
+        Random rnd = new Random(25);
+        for (int[] sz : new int[][]{{1, 1}, {17, 5}, {64, 64}, {131, 77}}) {
+            int w = sz[0], h = sz[1], thr = 128;
+            gray_image g = rle_mask_test.randomGray(w, h, rnd);
+            bit_mask m = bit_mask.range(g, thr, 255, null);
+            summed_area[] tables = {summed_area.of(g, thr), summed_area.of(g, m), summed_area.of(g, rle_mask.of(m))};
+            int n = 200;
+            int[] rects = new int[4 * n];
+            for (int k = 0; k < n; k++) {
+                int i0 = rnd.nextInt(h), j0 = rnd.nextInt(w);
+                rects[4 * k] = i0; rects[4 * k + 1] = j0;
+                rects[4 * k + 2] = i0 + rnd.nextInt(h - i0); rects[4 * k + 3] = j0 + rnd.nextInt(w - j0);
+            }
+            for (summed_area s : tables) {
+                summed_area.Region[] rs = s.query(rects);
+                long[] area = new long[n];
+                double[] cx = new double[n], cy = new double[n], mean = new double[n];
+                s.query(rects, area, cx, cy, mean);
+                for (int k = 0; k < n; k++) {
+                    summed_area.Region e = direct(g, m, rects[4 * k], rects[4 * k + 1], rects[4 * k + 2], rects[4 * k + 3]);
+                    String at = w + "x" + h + " roi " + k;
+                    assertRegion(e, rs[k], at);
+                    assertEquals(e.area, area[k], at);
+                    assertEquals(e.cx, cx[k], 1e-9, at);
+                    assertEquals(e.cy, cy[k], 1e-9, at);
+                    assertEquals(e.mean, mean[k], 1e-9, at);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsRoiOutsideImage() {
+        summed_area s = summed_area.of(new gray_image(10, 5), 128);
+        assertThrows(IllegalArgumentException.class, () -> s.region(0, 0, 5, 9));
+        assertThrows(IllegalArgumentException.class, () -> s.region(2, 3, 1, 3));
+        assertThrows(IllegalArgumentException.class, () -> s.query(new int[]{0, 0, 1}));
+    }
+
+    private static summed_area.Region direct(gray_image g, bit_mask m, int i0, int j0, int i1, int j1) {
+        long a = 0, sj = 0, si = 0, gs = 0;
+        for (int i = i0; i <= i1; i++) {
+            for (int j = j0; j <= j1; j++) {
+                gs += g.data[g.offset + i * g.stride + j] & 0xFF;
+                if (!m.get(i, j)) continue;
+                a++; sj += j; si += i;
+            }
+        }
+        double cx = (a == 0) ? Double.NaN : (double) sj / a, cy = (a == 0) ? Double.NaN : (double) si / a;
+        return new summed_area.Region(i0, j0, i1, j1, a, cx, cy, gs, (double) gs / ((long) (i1 - i0 + 1) * (j1 - j0 + 1)));
+    }
+
+    private static void assertRegion(summed_area.Region e, summed_area.Region r, String at) {
+        assertEquals(e.area, r.area, at);
+        assertEquals(e.cx, r.cx, 1e-9, at);
+        assertEquals(e.cy, r.cy, 1e-9, at);
+        assertEquals(e.graySum, r.graySum, at);
+        assertEquals(e.mean, r.mean, 1e-9, at);
+    }
+}
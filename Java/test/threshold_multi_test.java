@@ -0,0 +1,85 @@
+// threshold_multi_test.java
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** label map และ geoprops ต่อ class ของ threshold_multi เทียบกับการนับตรง ๆ / geopros ของ mask แต่ละช่วง */
+class threshold_multi_test {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void labelsAndClassesMatchPerRangeMasks() throws Exception {
+        Random rnd = new Random(21);
+        int[][] levels = {{128}, {0, 255}, {64, 128, 192}, {200, 10, 10, 90, 300, -5}, allLevels(255)};
+        for (int[] sz : new int[][]{{1, 1}, {37, 19}, {301, 67}}) {
+            gray_image g = rle_mask_test.randomGray(sz[0], sz[1], rnd);
+            for (int[] T : levels) {
+                threshold_multi.Result r = threshold_multi.run(g, "test", T, new histro_pipeline.Options());
+                int[] t = r.T;
+                String at = sz[0] + "x" + sz[1] + " K=" + t.length;
+                assertEquals(t.length + 1, r.classes.length, at);
+                for (int i = 0; i < g.height; i++) {
+                    for (int j = 0; j < g.width; j++) {
+                        int v = g.get(i, j), c = 0;
+                        for (int x : t) if (v >= x) c++;
+                        assertEquals(c, r.labels.get(i, j), at + " (" + i + "," + j + ")");
+                    }
+                }
+                assertArrayEquals(parallel_histogram.histogram(g, 1), r.hist, at);
+                for (int c = 0; c <= t.length; c++) {
+                    int lo = (c == 0) ? 0 : t[c - 1], hi = (c == t.length) ? 255 : t[c] - 1;
+                    if (lo > hi) { assertFalse(r.classes[c].hasObject(), at + " class " + c); continue; }
+                    geopros.Result e = geopros.measureBoth(bit_mask.range(g, lo, hi, null)).white;
+                    rle_mask_test.assertGeo(e, r.classes[c], at + " class " + c);
+                }
+                BufferedImage idx = threshold_multi.toIndexed(r);
+                assertEquals(g.width, idx.getWidth(), at);
+            }
+        }
+    }
+
+    @Test
+    void mappedMatchesHeapImage() throws Exception {
+        gray_image g = rle_mask_test.randomGray(513, 1200, new Random(22));   // หลายแถบ
+        File f = new File(dir, "in.raw");
+        Files.write(f.toPath(), g.data);
+        int[] T = {30, 100, 101, 220};
+        threshold_multi.Result a = threshold_multi.run(g, "heap", T, new histro_pipeline.Options());
+        try (mapped_gray m = mapped_gray.openRaw(f, g.width, g.height)) {
+            threshold_multi.Result b = threshold_multi.run(m, "mapped", T, new histro_pipeline.Options());
+            assertArrayEquals(a.labels.data, b.labels.data);
+            assertArrayEquals(a.hist, b.hist);
+            for (int c = 0; c < a.classes.length; c++) rle_mask_test.assertGeo(a.classes[c], b.classes[c], "class " + c);
+        }
+    }
+
+    @Test
+    void atMost255DistinctThresholds() {
+        assertEquals(255, threshold_multi.normalize(allLevels(255)).length);
+        int[] all = new int[256];
+        for (int v = 0; v < 256; v++) all[v] = v;
+        assertThrows(IllegalArgumentException.class, () -> threshold_multi.normalize(all));
+        assertThrows(IllegalArgumentException.class, () -> threshold_multi.normalize(new int[0]));
+        // ค่าซ้ำ / นอกช่วงถูกรวมก่อนนับ
+        int[] many = new int[1000];
+        for (int k = 0; k < many.length; k++) many[k] = 1 + k % 255;
+        assertEquals(255, threshold_multi.normalize(many).length);
+    }
+
+    // threshold 1..n -> class สูงสุด n (label 255 เมื่อ n = 255)
+    private static int[] allLevels(int n) {
+        int[] t = new int[n];
+        for (int k = 0; k < n; k++) t[k] = k + 1;
+        return t;
+    }
+}
@@ -4,9 +4,34 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import javax.imageio.ImageIO;
 
 public class threshold {
+    /** ผลของ single threshold (ส่งต่อให้ image_moment ในหน่วยความจำได้) */
+    public static class Result {
+        public final int T;
+        public final int[] hist;
+        public final bit_mask thrOne;        // gray>=T -> 1 (null ถ้าใช้ extras.rle และไม่ได้เขียน mask; ใช้ one())
+        public final bit_mask thrZero;       // gray<T  -> 1 (= NOT thrOne; ใช้ zero())
+        public final long countWhite, countBlack;
+        public final geopros.Result oneWhite;  // WHITE(1) = gray>=T
+        public final geopros.Result zeroBlack; // BLACK(0) = gray<T
+        public final result_extras extras;   // rle: gray>=T แบบ run-length, components: component ของ threshold_1
+        public Result(int T, int[] hist, bit_mask thrOne, bit_mask thrZero,
+                      long countWhite, long countBlack, geopros.Result oneWhite, geopros.Result zeroBlack) {
+            this(T, hist, thrOne, thrZero, countWhite, countBlack, oneWhite, zeroBlack, result_extras.NONE);
+        }
+        public Result(int T, int[] hist, bit_mask thrOne, bit_mask thrZero, long countWhite, long countBlack,
+                      geopros.Result oneWhite, geopros.Result zeroBlack, result_extras extras) {
+            this.T = T; this.hist = hist; this.thrOne = thrOne; this.thrZero = thrZero;
+            this.countWhite = countWhite; this.countBlack = countBlack;
+            this.oneWhite = oneWhite; this.zeroBlack = zeroBlack; this.extras = extras;
+        }
+        /** threshold_1 เป็น bit_mask (สร้างจาก extras.rle ถ้าไม่ได้เก็บไว้) */
+        public bit_mask one() { return (thrOne != null) ? thrOne : extras.rle.toBitMask(); }
+        /** threshold_0 เป็น bit_mask */
+        public bit_mask zero() { return (thrZero != null) ? thrZero : one().not(); }
+    }
+
     public static void main(String[] args) throws IOException {
         // ====== พารามิเตอร์ ======
         String inName = (args.length >= 1) ? args[0] : "equalized.png";
@@ -19,83 +44,154 @@ public class threshold {
                 T = 128;
             }
         }
+
+        // ====== อ่านรูป (PGM -> map ไฟล์ตรง ๆ ไม่ decode) ======
+        File in = new File(inName);
+        if (mapped_gray.canMap(in)) {
+            try (mapped_gray src = mapped_gray.open(in)) { run(src, inName, T, histro_pipeline.Options.cli()); }
+            return;
+        }
+        BufferedImage img = image_codec.read(in);
+        if (img == null) throw new IllegalArgumentException("Cannot read image: " + inName);
+        run(img, inName, T, histro_pipeline.Options.cli());
+    }
+
+    /** threshold บนภาพที่ decode แล้ว (inName ใช้เป็นชื่อในรายงานเท่านั้น) */
+    public static Result run(BufferedImage img, String inName, int T, histro_pipeline.Options opt) throws IOException {
+        return run(gray_image.of(img), null, img, null, inName, T, opt);
+    }
+
+    /** threshold บนภาพเทาในหน่วยความจำ (เช่น histogram.Result.eq) */
+    public static Result run(gray_image img, String inName, int T, histro_pipeline.Options opt) throws IOException {
+        return run(img, null, null, null, inName, T, opt);
+    }
+
+    /** เหมือน run(gray_image, ...) แต่ geoprops อ่านจาก sweep ของภาพเดียวกันใน O(1) (sweep = null -> วัดจาก mask) */
+    public static Result run(gray_image img, geopros_sweep sweep, String inName, int T,
+                             histro_pipeline.Options opt) throws IOException {
+        return run(img, null, null, sweep, inName, T, opt);
+    }
+
+    /** ภาพเทาที่ map จากไฟล์ PGM/RAW: threshold อ่านทีละแถบจาก mapping ไม่คัดลอกภาพทั้งภาพ */
+    public static Result run(mapped_gray src, String inName, int T, histro_pipeline.Options opt) throws IOException {
+        return run(null, src, null, null, inName, T, opt);
+    }
+
+    // view = ภาพต้นฉบับไว้วาดภาพเปรียบเทียบ (null -> สร้างจาก img/src เมื่อจำเป็น); img หรือ src อย่างใดอย่างหนึ่ง
+    private static Result run(gray_image img, mapped_gray src, BufferedImage view, geopros_sweep sweep,
+                              String inName, int T, histro_pipeline.Options opt) throws IOException {
         T = Math.max(0, Math.min(255, T));
-        final int GAP = 16;
 
         // ====== โฟลเดอร์ผลลัพธ์ ======
-        File outDir = new File("threshold_result/threshold_single");
-        if (!outDir.exists()) outDir.mkdirs();
-        File graphDir = new File("graph/threshold");
-        if (!graphDir.exists()) graphDir.mkdirs();
-        File gpDir = new File(outDir, "geoprops");
-        if (!gpDir.exists()) gpDir.mkdirs();
+        File outDir = opt.file("threshold_result/threshold_single");
+        if (opt.writeIntermediates || opt.cliSink) {
+            if (!outDir.exists()) outDir.mkdirs();
+        }
 
-        // ====== อ่านรูป ======
-        BufferedImage img = ImageIO.read(new File(inName));
-        if (img == null) throw new IllegalArgumentException("Cannot read image: " + inName);
-        int I = img.getHeight(), J = img.getWidth(), N = I * J;
-        System.out.println("Input: " + inName + "  Size: [" + I + ", " + J + "]  T=" + T);
+        int I = (img != null) ? img.height : src.height;
+        int J = (img != null) ? img.width : src.width;
+        long N = (long) I * J;
+        if (opt.cliSink) opt.log.println("Input: " + inName + "  Size: [" + I + ", " + J + "]  T=" + T);
 
-        // ====== Histogram ======
+        // ====== Histogram + Threshold ในรอบเดียว ======
+        // threshold_1: gray>=T -> 255, else 0 / threshold_0: gray<T -> 255, else 0
+        // เก็บเป็น bit_mask 1 บิตต่อพิกเซล; threshold_0 คือ NOT ของ threshold_1
+        // opt.extras.rleMasks: kernel ออก run ของ threshold_1 ตรง ๆ; bit_mask สร้างเฉพาะเมื่อต้องเขียนไฟล์
         int[] hist = new int[256];
-        for (int u = 0; u < I; u++) {
-            for (int v = 0; v < J; v++) {
-                int gray = img.getRGB(v, u) & 0xFF;
-                hist[gray]++;
+        bit_mask thrOne = null, thrZero = null;
+        rle_mask rleOne = null;
+        long countWhite, countBlack;
+        try (stage_metrics.Span s = opt.span(stage_metrics.Stage.THRESHOLD)) {
+            if (opt.extras.rleMasks) {
+                rleOne = (img != null) ? rle_mask.range(img, T, 255, hist) : rle_mask.range(src, T, 255, hist);
+                countWhite = rleOne.area();
+                if (opt.writeIntermediates) thrOne = rleOne.toBitMask();
+            } else {
+                thrOne = (img != null) ? bit_mask.range(img, T, 255, hist) : src.range(T, 255, hist);
+                countWhite = thrOne.area();     // บน threshold_1 (white=gray>=T)
+            }
+            if (thrOne != null) thrZero = thrOne.not();
+            countBlack = N - countWhite;
+            s.pixels(N).read(src != null ? N : 0);
+        }
+        if (opt.writeIntermediates) {
+            opt.writeMask(thrOne, outDir, "threshold_1");
+            opt.writeMask(thrZero, outDir, "threshold_0");
+        }
+
+        // ====== GeoProps: วัดทั้งสองภาพ โดย 1=ขาว(255), 0=ดำ(0) ======
+        // บน threshold_1
+        geopros.BothResult oneBR;
+        if (sweep != null) oneBR = sweep.at(T);
+        else {
+            try (stage_metrics.Span s = opt.span(stage_metrics.Stage.GEOPROPS)) {
+                oneBR = (rleOne != null) ? geopros.measureBoth(rleOne) : geopros.measureBoth(thrOne);
+                s.pixels(N);
             }
         }
+        geopros.Result oneWhite = oneBR.white; // WHITE(1) = gray>=T
+
+        // บน threshold_0: ขาวของ threshold_0 = ดำของ threshold_1 (mask กลับสีกัน) ไม่ต้องสแกนซ้ำ
+        geopros.Result zeroBlack = oneBR.black; // BLACK(0) (report) = gray<T
 
-        // ====== Threshold: gray>=T -> 255, else 0 (threshold_1) ======
-        BufferedImage thrOne = new BufferedImage(J, I, BufferedImage.TYPE_BYTE_GRAY);
-        long countWhite = 0, countBlack = 0; // บน threshold_1 (white=gray>=T)
-        for (int u = 0; u < I; u++) {
-            for (int v = 0; v < J; v++) {
-                int gray = img.getRGB(v, u) & 0xFF;
-                int bin = (gray >= T) ? 255 : 0;
-                if (bin == 255) countWhite++; else countBlack++;
-                thrOne.setRGB(v, u, 0xFF000000 | (bin<<16) | (bin<<8) | bin);
+        // ====== Connected components ของ threshold_1 (ถ้าสั่งไว้) ======
+        geopros_components blobs = null;
+        if (opt.extras.components != 0) {
+            try (stage_metrics.Span s = opt.span(stage_metrics.Stage.GEOPROPS)) {
+                blobs = (rleOne != null) ? geopros.components(rleOne, opt.extras.components, true)
+                                         : geopros.components(thrOne, opt.extras.components, true);
+                s.pixels(N);
             }
         }
-        ImageIO.write(thrOne, "png", new File(outDir, "threshold_1.png"));
-
-        // ====== Threshold (inverted): gray<T -> 255, else 0 (threshold_0) ======
-        BufferedImage thrZero = new BufferedImage(J, I, BufferedImage.TYPE_BYTE_GRAY);
-        for (int u = 0; u < I; u++) {
-            for (int v = 0; v < J; v++) {
-                int gray = img.getRGB(v, u) & 0xFF;
-                int bin = (gray < T) ? 255 : 0;
-                thrZero.setRGB(v, u, 0xFF000000 | (bin<<16) | (bin<<8) | bin);
+
+        Result res = new Result(T, hist, thrOne, thrZero, countWhite, countBlack, oneWhite, zeroBlack,
+                                result_extras.NONE.withRle(rleOne).withComponents(blobs));
+        if (opt.cliSink) writeReport(res, inName, I, J, opt);
+        if (opt.render) {
+            stage_metrics.Span s = opt.span(stage_metrics.Stage.RENDER);
+            try {
+                BufferedImage eq = null;
+                if (isEqualized(inName)) eq = (view != null) ? view : ((img != null) ? img : src.toGray()).toBufferedImage();
+                render(res, eq, opt);
+            } finally {
+                s.close();
             }
         }
-        ImageIO.write(thrZero, "png", new File(outDir, "threshold_0.png"));
+        return res;
+    }
 
-        // ====== GeoProps: วัดทั้งสองภาพ โดย 1=ขาว(255), 0=ดำ(0) ======
-        final int BIN_THR = 128; // แยก 0/255
-        // บน threshold_1
-        geopros.BothResult oneBR = geopros.measureBoth(thrOne, BIN_THR);
-        geopros.Result oneWhite = oneBR.white; // WHITE(1) = gray>=T
+    /** ภาพ equalized จาก histogram (นามสกุลใดก็ได้) -> ใช้เป็นภาพซ้ายของ compare ได้เลย */
+    static boolean isEqualized(String inName) {
+        return inName.toLowerCase(java.util.Locale.ROOT).startsWith("equalized.");
+    }
 
-        // บน threshold_0 (สลับเพื่อให้ .black หมายถึง gray<T ตามที่ต้องการรายงาน)
-        geopros.BothResult zeroBR_raw = geopros.measureBoth(thrZero, BIN_THR);
-        geopros.BothResult zeroBR = geopros.swap(zeroBR_raw);
-        geopros.Result zeroBlack = zeroBR.black; // BLACK(0) (report) = gray<T
+    // ===== console + threshold_report.txt (CLI sink) =====
+    private static void writeReport(Result res, String inName, int I, int J,
+                                    histro_pipeline.Options opt) throws IOException {
+        int T = res.T;
+        long N = (long) I * J, countWhite = res.countWhite, countBlack = res.countBlack;
+        geopros.Result oneWhite = res.oneWhite, zeroBlack = res.zeroBlack;
+        File outDir = opt.file("threshold_result/threshold_single");
 
         // Console log (ยืนยันผล)
-        System.out.printf("[threshold_1] WHITE(1) area=%d, centroid=(%.3f, %.3f)%n",
+        opt.log.printf("[threshold_1] WHITE(1) area=%d, centroid=(%.3f, %.3f)%n",
                 oneWhite.area, oneWhite.cx, oneWhite.cy);
-        System.out.printf("[threshold_0] BLACK(0) area=%d, centroid=(%.3f, %.3f)%n",
+        opt.log.printf("[threshold_0] BLACK(0) area=%d, centroid=(%.3f, %.3f)%n",
                 zeroBlack.area, zeroBlack.cx, zeroBlack.cy);
 
+        if (res.extras.components != null)
+            opt.log.printf("[threshold_1] components=%d (%d-connectivity)%n", res.extras.components.count, res.extras.components.connectivity);
+
         // invariants check
         if (oneWhite.area != countWhite)
-            System.out.printf("WARN: threshold_1 WHITE area=%d but counted=%d%n", oneWhite.area, countWhite);
+            opt.log.printf("WARN: threshold_1 WHITE area=%d but counted=%d%n", oneWhite.area, countWhite);
         if (zeroBlack.area != countBlack)
-            System.out.printf("WARN: threshold_0 BLACK area=%d but expected=%d%n", zeroBlack.area, countBlack);
+            opt.log.printf("WARN: threshold_0 BLACK area=%d but expected=%d%n", zeroBlack.area, countBlack);
 
         // ====== สรุปผลลงไฟล์ ======
         File resultDir = new File(outDir, "txt_result");
         if (!resultDir.exists()) resultDir.mkdirs();
-        try (PrintWriter pw = new PrintWriter(new File(resultDir, "threshold_report.txt"))) {
+        opt.writeText(new File(resultDir, "threshold_report.txt"), pw -> {
             pw.println("Input file: " + inName);
             pw.println("Size (I,J): " + I + ", " + J);
             pw.println("N (pixels): " + N);
@@ -117,22 +213,45 @@ public class threshold {
             // threshold_0
             pw.println("=== Geometric Properties on threshold_0 (0=black=gray<T) ===");
             writeGeo(pw, "BLACK (0)", zeroBlack);
-        }
+        });
+        if (res.extras.components != null) writeComponents(res.extras.components, new File(resultDir, "components.txt"), opt);
+    }
+
+    /**
+     * ภาพ geoprops, ภาพเปรียบเทียบ และกราฟ histogram (Graphics2D ทั้งหมด)
+     * เรียกทีหลังจากผลที่คำนวณไว้แล้วได้; eq = ภาพซ้ายของ compare (null -> อ่านไฟล์ equalized ตาม opt.codec)
+     */
+    public static void render(Result res, BufferedImage eq, histro_pipeline.Options opt) throws IOException {
+        final int GAP = 16;
+        int T = res.T;
+        int[] hist = res.hist;
+        long countWhite = res.countWhite, countBlack = res.countBlack;
+        geopros.Result oneWhite = res.oneWhite, zeroBlack = res.zeroBlack;
+
+        File outDir = opt.file("threshold_result/threshold_single");
+        File graphDir = opt.file("graph/threshold");
+        File gpDir = new File(outDir, "geoprops");
+        if (!graphDir.exists()) graphDir.mkdirs();
+        if (!gpDir.exists()) gpDir.mkdirs();
 
         // ====== วาดภาพ centroid แยกไฟล์ (geoprops) ======
-        BufferedImage thrOneAnn  = deepCopy(thrOne);
-        BufferedImage thrZeroAnn = deepCopy(thrZero);
+        bit_mask one = res.one();
+        BufferedImage thrOneImg  = one.toBufferedImage();
+        BufferedImage thrZeroImg = res.zero().toBufferedImage();
+        BufferedImage thrOneAnn  = deepCopy(thrOneImg);
+        BufferedImage thrZeroAnn = deepCopy(thrZeroImg);
         drawCentroid(thrOneAnn,  oneWhite.cx,  oneWhite.cy,  new Color(0, 200, 0),   "Centroid WHITE(1)");
         drawCentroid(thrZeroAnn, zeroBlack.cx, zeroBlack.cy, new Color(220, 60, 60), "Centroid BLACK(0)");
-        ImageIO.write(thrOneAnn,  "png", new File(gpDir, "thereshold_1gp.png"));
-        ImageIO.write(thrZeroAnn, "png", new File(gpDir, "thereshold_0gp.png"));
+        if (res.extras.components != null) drawBoxes(thrOneAnn, res.extras.components);
+        opt.writePng(thrOneAnn, new File(gpDir, "thereshold_1gp.png"));
+        opt.writePng(thrZeroAnn, new File(gpDir, "thereshold_0gp.png"));
 
         // ====== ทำภาพรวม 3 รูป (โชว์ Equalized + 2 threshold) ======
-        BufferedImage eq = inName.equalsIgnoreCase("equalized.png") ? img : ImageIO.read(new File("equalized.png"));
+        if (eq == null) eq = image_codec.read(opt.file("equalized" + opt.codec.gray.ext), one.width, one.height);
         saveTripleSideBySide(
-                eq, thrOne, thrZero, GAP,
+                eq, thrOneImg, thrZeroImg, GAP,
                 "Equalized", "Thr (>=T → WHITE=1)", "Thr (<T → WHITE=1) / Report BLACK(0)",
-                new File(outDir, "compare_eq_thr.png").getAbsolutePath()
+                new File(outDir, "compare_eq_thr.png").getAbsolutePath(), opt
         );
 
         // === ภาพคู่: threshold ที่มี centroid (เก็บใน geoprops) ===
@@ -140,16 +259,16 @@ public class threshold {
                 thrOneAnn, thrZeroAnn, GAP,
                 "Thr (>=T → WHITE=1)  [Centroid WHITE(1)]",
                 "Thr (<T → WHITE=1)  [Report BLACK(0) Centroid]",
-                new File(gpDir, "compare_thr_centroids.png").getAbsolutePath()
+                new File(gpDir, "compare_thr_centroids.png").getAbsolutePath(), opt
         );
-        System.out.println("Saved: " + new File(gpDir, "compare_thr_centroids.png").getPath());
+        opt.log.println("Saved: " + new File(gpDir, "compare_thr_centroids.png").getPath());
 
 
         // ====== วาดกราฟ Histogram + เส้น Threshold + คำอธิบาย 0/1 และขนาด White/Black ======
-        drawHistogramWithThresholdStyled(hist, T, countWhite, countBlack, new File(graphDir, "single_threshold.png"));
-        System.out.println("Saved Graph in: graph/threshold/single_threshold.png");
-        System.out.println("Saved: " + new File(gpDir, "thereshold_1gp.png").getPath());
-        System.out.println("Saved: " + new File(gpDir, "thereshold_0gp.png").getPath());
+        drawHistogramWithThresholdStyled(hist, T, countWhite, countBlack, new File(graphDir, "single_threshold.png"), opt);
+        opt.log.println("Saved Graph in: " + new File(graphDir, "single_threshold.png").getPath());
+        opt.log.println("Saved: " + new File(gpDir, "thereshold_1gp.png").getPath());
+        opt.log.println("Saved: " + new File(gpDir, "thereshold_0gp.png").getPath());
     }
 
     // === helper: เขียน GeoProps ทีละเซ็ต ===
@@ -167,10 +286,23 @@ public class threshold {
         }
     }
 
+    // === ตาราง component ของ threshold_1 (1 บรรทัดต่อ component) ===
+    private static void writeComponents(geopros_components c, File f, histro_pipeline.Options opt) throws IOException {
+        opt.writeText(f, pw -> {
+            pw.println("# Connected components on threshold_1 (" + c.connectivity + "-connectivity): " + c.count);
+            pw.println("# id area cx cy i_min j_min i_max j_max mu20 mu11 mu02 orientation_rad");
+            for (int k = 0; k < c.count; k++) {
+                pw.println(String.format(java.util.Locale.ROOT, "%d %d %.3f %.3f %d %d %d %d %.3f %.3f %.3f %.5f",
+                        k, c.area[k], c.cx[k], c.cy[k], c.minI[k], c.minJ[k], c.maxI[k], c.maxJ[k],
+                        c.mu20[k], c.mu11[k], c.mu02[k], c.orientation(k)));
+            }
+        });
+    }
+
     // === รวม 3 รูป ===
     private static void saveTripleSideBySide(BufferedImage left, BufferedImage mid, BufferedImage right,
                                              int gap, String leftLabel, String midLabel, String rightLabel,
-                                             String outPath) throws IOException {
+                                             String outPath, histro_pipeline.Options opt) throws IOException {
         int h = Math.max(left.getHeight(), Math.max(mid.getHeight(), right.getHeight()));
         int w = left.getWidth() + gap + mid.getWidth() + gap + right.getWidth();
 
@@ -194,13 +326,13 @@ public class threshold {
         g2.drawString(rightLabel, xRight + 8, 16);
 
         g2.dispose();
-        ImageIO.write(out, "png", new File(outPath));
+        opt.writePng(out, new File(outPath));
     }
 
     // === รวม 2 รูป (สำหรับเวอร์ชันที่มี centroid) ===
     private static void saveDoubleSideBySide(BufferedImage left, BufferedImage right,
                                             int gap, String leftLabel, String rightLabel,
-                                            String outPath) throws IOException {
+                                            String outPath, histro_pipeline.Options opt) throws IOException {
         int h = Math.max(left.getHeight(), right.getHeight());
         int w = left.getWidth() + gap + right.getWidth();
 
@@ -224,7 +356,7 @@ public class threshold {
         g2.drawString(rightLabel, xRight + 8, 16);
 
         g2.dispose();
-        ImageIO.write(out, "png", new File(outPath));
+        opt.writePng(out, new File(outPath));
     }
 
     // === helper: copy ภาพแบบลึกเพื่อวาดทับโดยไม่ทำลายต้นฉบับ ===
@@ -236,6 +368,15 @@ public class threshold {
         return copy;
     }
 
+    // === helper: กรอบ bbox ของทุก component (สีเหลือง) ===
+    private static void drawBoxes(BufferedImage img, geopros_components c) {
+        Graphics2D g2 = img.createGraphics();
+        g2.setColor(new Color(255, 200, 0));
+        for (int k = 0; k < c.count; k++)
+            g2.drawRect(c.minJ[k], c.minI[k], c.maxJ[k] - c.minJ[k], c.maxI[k] - c.minI[k]);
+        g2.dispose();
+    }
+
     // === helper: วาดกากบาท + วงกลมเล็กที่ตำแหน่ง (cx, cy) ===
     private static void drawCentroid(BufferedImage img, double cx, double cy, Color color, String label) {
         if (Double.isNaN(cx) || Double.isNaN(cy)) return;
@@ -273,7 +414,7 @@ public class threshold {
     }
 
     // === วาด Histogram + Threshold + คำอธิบาย 0/1 + ขนาด White/Black ===
-    private static void drawHistogramWithThresholdStyled(int[] h, int T, long whiteCount, long blackCount, File outFile) throws IOException {
+    private static void drawHistogramWithThresholdStyled(int[] h, int T, long whiteCount, long blackCount, File outFile, histro_pipeline.Options opt) throws IOException {
     int K = 256, barW = 2, margin = 50;
     int chartW = K * barW, chartH = 300;
     int width = chartW + margin * 2, height = chartH + margin * 2 + 36; // ขยับเพิ่มนิดหน่อย
@@ -354,7 +495,7 @@ public class threshold {
 
 
     g2.dispose();
-    ImageIO.write(out, "png", outFile);
+    opt.writePng(out, outFile);
 }
 
     private static int maxOf(int[] a) {
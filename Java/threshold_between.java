@@ -4,91 +4,164 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import javax.imageio.ImageIO;
 
 public class threshold_between {
+    /** ผลของ double threshold (ช่วงรวมปลาย T1 <= gray <= T2) */
+    public static class Result {
+        public final int T1, T2;
+        public final int[] hist;
+        public final bit_mask betweenOne;        // ในช่วง -> 1 (null ถ้าใช้ extras.rle และไม่ได้เขียน mask; ใช้ one())
+        public final bit_mask betweenZero;       // นอกช่วง -> 1 (= NOT betweenOne; ใช้ zero())
+        public final long countIn, countOut;
+        public final geopros.Result whiteIn;     // ในช่วงเป็น 1 (ขาว)
+        public final geopros.Result outBlack;    // นอกช่วงเป็นดำ(0)
+        public final result_extras extras;       // rle: ในช่วงแบบ run-length (opt.extras.rleMasks)
+        public Result(int T1, int T2, int[] hist, bit_mask betweenOne, bit_mask betweenZero,
+                      long countIn, long countOut, geopros.Result whiteIn, geopros.Result outBlack) {
+            this(T1, T2, hist, betweenOne, betweenZero, countIn, countOut, whiteIn, outBlack, result_extras.NONE);
+        }
+        public Result(int T1, int T2, int[] hist, bit_mask betweenOne, bit_mask betweenZero, long countIn,
+                      long countOut, geopros.Result whiteIn, geopros.Result outBlack, result_extras extras) {
+            this.T1 = T1; this.T2 = T2; this.hist = hist;
+            this.betweenOne = betweenOne; this.betweenZero = betweenZero;
+            this.countIn = countIn; this.countOut = countOut;
+            this.whiteIn = whiteIn; this.outBlack = outBlack; this.extras = extras;
+        }
+        /** between_1 เป็น bit_mask (สร้างจาก extras.rle ถ้าไม่ได้เก็บไว้) */
+        public bit_mask one() { return (betweenOne != null) ? betweenOne : extras.rle.toBitMask(); }
+        /** between_0 เป็น bit_mask */
+        public bit_mask zero() { return (betweenZero != null) ? betweenZero : one().not(); }
+    }
+
     public static void main(String[] args) throws IOException {
         // ====== พารามิเตอร์ ======
         String inName = (args.length >= 1) ? args[0] : "equalized.png";
         int T1 = (args.length >= 2) ? parseOrDefault(args[1], 85)  : 85;
         int T2 = (args.length >= 3) ? parseOrDefault(args[2], 170) : 170;
 
-        // clamp 0..255 และบังคับ T1 < T2
-        T1 = clamp8(T1);
-        T2 = clamp8(T2);
-        if (T1 >= T2) {
-            int tmp = T1;
-            T1 = Math.max(0, Math.min(254, T2 - 1));
-            T2 = Math.min(255, Math.max(1, tmp + 1));
-            System.out.println("Note: swapped/adjusted thresholds to enforce T1<T2");
+        // ====== อ่านรูป (PGM -> map ไฟล์ตรง ๆ ไม่ decode) ======
+        File in = new File(inName);
+        if (mapped_gray.canMap(in)) {
+            try (mapped_gray src = mapped_gray.open(in)) { run(src, inName, T1, T2, histro_pipeline.Options.cli()); }
+            return;
         }
-        final int GAP = 16;
+        BufferedImage img = image_codec.read(in);
+        if (img == null) throw new IllegalArgumentException("Cannot read image: " + inName);
+        run(img, inName, T1, T2, histro_pipeline.Options.cli());
+    }
+
+    /** band threshold บนภาพที่ decode แล้ว (inName ใช้เป็นชื่อในรายงานเท่านั้น) */
+    public static Result run(BufferedImage img, String inName, int T1, int T2, histro_pipeline.Options opt) throws IOException {
+        return run(gray_image.of(img), null, img, null, inName, T1, T2, opt);
+    }
+
+    /** band threshold บนภาพเทาในหน่วยความจำ (เช่น histogram.Result.eq) */
+    public static Result run(gray_image img, String inName, int T1, int T2, histro_pipeline.Options opt) throws IOException {
+        return run(img, null, null, null, inName, T1, T2, opt);
+    }
+
+    /** เหมือน run(gray_image, ...) แต่ geoprops อ่านจาก sweep ของภาพเดียวกัน (sweep = null -> วัดจาก mask) */
+    public static Result run(gray_image img, geopros_sweep sweep, String inName, int T1, int T2,
+                             histro_pipeline.Options opt) throws IOException {
+        return run(img, null, null, sweep, inName, T1, T2, opt);
+    }
+
+    /** ภาพเทาที่ map จากไฟล์ PGM/RAW: threshold อ่านทีละแถบจาก mapping ไม่คัดลอกภาพทั้งภาพ */
+    public static Result run(mapped_gray src, String inName, int T1, int T2, histro_pipeline.Options opt) throws IOException {
+        return run(null, src, null, null, inName, T1, T2, opt);
+    }
+
+    // img หรือ src อย่างใดอย่างหนึ่ง; view = ภาพไว้วาดภาพเปรียบเทียบ (null -> สร้างเมื่อจำเป็น)
+    private static Result run(gray_image img, mapped_gray src, BufferedImage view, geopros_sweep sweep,
+                              String inName, int T1, int T2, histro_pipeline.Options opt) throws IOException {
+        int[] tt = band(T1, T2, opt);
+        if (opt.cliSink && !opt.autoBand && clamp8(T1) >= clamp8(T2)) opt.log.println("Note: swapped/adjusted thresholds to enforce T1<T2");
+        T1 = tt[0];
+        T2 = tt[1];
 
         // ====== โฟลเดอร์ผลลัพธ์ ======
-        File outDir = new File("threshold_result/threshold_double");
-        if (!outDir.exists()) outDir.mkdirs();
-        File graphDir = new File("graph/threshold");
-        if (!graphDir.exists()) graphDir.mkdirs();
-        File gpDir = new File(outDir, "geoprops");
-        if (!gpDir.exists()) gpDir.mkdirs();
+        File outDir = opt.file("threshold_result/threshold_double");
+        if (opt.writeIntermediates || opt.cliSink) {
+            if (!outDir.exists()) outDir.mkdirs();
+        }
 
-        // ====== อ่านรูป ======
-        BufferedImage img = ImageIO.read(new File(inName));
-        if (img == null) throw new IllegalArgumentException("Cannot read image: " + inName);
-        int I = img.getHeight(), J = img.getWidth(), N = I * J;
-        System.out.println("Input: " + inName + "  Size: [" + I + ", " + J + "]  T1=" + T1 + "  T2=" + T2);
-        System.out.println("Rule: white=255 for T1 <= gray <= T2 (inclusive interval)");
+        int I = (img != null) ? img.height : src.height;
+        int J = (img != null) ? img.width : src.width;
+        long N = (long) I * J;
+        if (opt.cliSink) {
+            opt.log.println("Input: " + inName + "  Size: [" + I + ", " + J + "]  T1=" + T1 + "  T2=" + T2);
+            opt.log.println("Rule: white=255 for T1 <= gray <= T2 (inclusive interval)");
+        }
 
-        // ====== Histogram ======
+        // ====== Histogram + Band-pass/Band-stop ในรอบเดียว ======
+        // between_1: T1 <= x <= T2 => white (รวมปลาย) / between_0: นอกช่วง => white
         int[] hist = new int[256];
-        for (int u = 0; u < I; u++)
-            for (int v = 0; v < J; v++)
-                hist[img.getRGB(v, u) & 0xFF]++;
-
-        // ====== Band-pass (T1 <= x <= T2 => white) ======
-        BufferedImage betweenOne = new BufferedImage(J, I, BufferedImage.TYPE_BYTE_GRAY);
-        long countIn = 0, countOut = 0;
-        for (int u = 0; u < I; u++) {
-            for (int v = 0; v < J; v++) {
-                int gray = img.getRGB(v, u) & 0xFF;
-                boolean inRange = (gray >= T1) && (gray <= T2);   // <-- รวมปลาย
-                int bin = inRange ? 255 : 0;
-                if (inRange) countIn++; else countOut++;
-                betweenOne.setRGB(v, u, 0xFF000000 | (bin<<16) | (bin<<8) | bin);
+        bit_mask betweenOne = null, betweenZero = null;
+        rle_mask rleIn = null;
+        long countIn, countOut;
+        try (stage_metrics.Span s = opt.span(stage_metrics.Stage.THRESHOLD)) {
+            if (opt.extras.rleMasks) {
+                rleIn = (img != null) ? rle_mask.range(img, T1, T2, hist) : rle_mask.range(src, T1, T2, hist);
+                countIn = rleIn.area();
+                if (opt.writeIntermediates) betweenOne = rleIn.toBitMask();
+            } else {
+                betweenOne = (img != null) ? bit_mask.range(img, T1, T2, hist) : src.range(T1, T2, hist);
+                countIn = betweenOne.area();
             }
+            if (betweenOne != null) betweenZero = betweenOne.not();
+            countOut = N - countIn;
+            s.pixels(N).read(src != null ? N : 0);
         }
-        ImageIO.write(betweenOne, "png", new File(outDir, "between_1.png"));
-
-        // ====== Band-stop (complement): นอกช่วง => white ======
-        BufferedImage betweenZero = new BufferedImage(J, I, BufferedImage.TYPE_BYTE_GRAY);
-        for (int u = 0; u < I; u++) {
-            for (int v = 0; v < J; v++) {
-                int gray = img.getRGB(v, u) & 0xFF;
-                boolean outRange = (gray < T1) || (gray > T2);    // <-- ตรงข้ามแบบรวมปลาย
-                int bin = outRange ? 255 : 0;
-                betweenZero.setRGB(v, u, 0xFF000000 | (bin<<16) | (bin<<8) | bin);
-            }
+        if (opt.writeIntermediates) {
+            opt.writeMask(betweenOne, outDir, "between_1");
+            opt.writeMask(betweenZero, outDir, "between_0");
         }
-        ImageIO.write(betweenZero, "png", new File(outDir, "between_0.png"));
 
         // ====== GeoProps ======
-        final int BIN_THR = 128;
-        geopros.BothResult brOne  = geopros.measureBoth(betweenOne, BIN_THR);
+        geopros.BothResult brOne;
+        if (sweep != null) brOne = sweep.band(T1, T2);
+        else {
+            try (stage_metrics.Span s = opt.span(stage_metrics.Stage.GEOPROPS)) {
+                brOne = (rleIn != null) ? geopros.measureBoth(rleIn) : geopros.measureBoth(betweenOne);
+                s.pixels(N);
+            }
+        }
         geopros.Result whiteIn    = brOne.white;               // พิกเซลในช่วงเป็น 1 (ขาว)
-        geopros.BothResult brZeroRaw = geopros.measureBoth(betweenZero, 128);
-        geopros.BothResult brZero    = geopros.swap(brZeroRaw);
-        geopros.Result outBlack      = brZero.black; // นอกช่วงเป็นดำ(0)
+        geopros.Result outBlack   = brOne.black;  // นอกช่วงเป็นดำ(0) = ขาวของ between_0
+
+        Result res = new Result(T1, T2, hist, betweenOne, betweenZero, countIn, countOut, whiteIn, outBlack,
+                                result_extras.NONE.withRle(rleIn));
+        if (opt.cliSink) writeReport(res, inName, I, J, opt);
+        if (opt.render) {
+            stage_metrics.Span s = opt.span(stage_metrics.Stage.RENDER);
+            try {
+                BufferedImage eq = null;
+                if (threshold.isEqualized(inName)) eq = (view != null) ? view : ((img != null) ? img : src.toGray()).toBufferedImage();
+                render(res, eq, opt);
+            } finally {
+                s.close();
+            }
+        }
+        return res;
+    }
 
+    // ===== console + threshold_between_report.txt (CLI sink) =====
+    private static void writeReport(Result res, String inName, int I, int J,
+                                    histro_pipeline.Options opt) throws IOException {
+        int T1 = res.T1, T2 = res.T2;
+        long N = (long) I * J, countIn = res.countIn, countOut = res.countOut;
+        geopros.Result whiteIn = res.whiteIn, outBlack = res.outBlack;
+        File outDir = opt.file("threshold_result/threshold_double");
 
-        System.out.printf("[between_1] WHITE(1, T1<=x<=T2) area=%d, centroid=(%.3f, %.3f)%n",
+        opt.log.printf("[between_1] WHITE(1, T1<=x<=T2) area=%d, centroid=(%.3f, %.3f)%n",
                 whiteIn.area, whiteIn.cx, whiteIn.cy);
-        System.out.printf("[between_0] BLACK(0, outside) area=%d, centroid=(%.3f, %.3f)%n",
+        opt.log.printf("[between_0] BLACK(0, outside) area=%d, centroid=(%.3f, %.3f)%n",
                 outBlack.area, outBlack.cx, outBlack.cy);
 
         // ====== Report ======
         File resultDir = new File(outDir, "txt_result");
         if (!resultDir.exists()) resultDir.mkdirs();
-        try (PrintWriter pw = new PrintWriter(new File(resultDir, "threshold_between_report.txt"))) {
+        opt.writeText(new File(resultDir, "threshold_between_report.txt"), pw -> {
             pw.println("Input file: " + inName);
             pw.println("Size (I,J): " + I + ", " + J);
             pw.println("N (pixels): " + N);
@@ -103,34 +176,74 @@ public class threshold_between {
             pw.println();
             pw.println("=== Geometric Properties on between_0 (outside, black=0) ===");
             writeGeo(pw, "BLACK (0)", outBlack);
-        }
+        });
+    }
+
+    /**
+     * ภาพ geoprops, ภาพเปรียบเทียบ และกราฟ histogram ของแถบ T1..T2 (Graphics2D ทั้งหมด)
+     * eq = ภาพซ้ายของ compare (null -> อ่านไฟล์ equalized ตาม opt.codec)
+     */
+    public static void render(Result res, BufferedImage eq, histro_pipeline.Options opt) throws IOException {
+        final int GAP = 16;
+        int T1 = res.T1, T2 = res.T2;
+        long countIn = res.countIn, countOut = res.countOut;
+        geopros.Result whiteIn = res.whiteIn, outBlack = res.outBlack;
+
+        File outDir = opt.file("threshold_result/threshold_double");
+        File graphDir = opt.file("graph/threshold");
+        File gpDir = new File(outDir, "geoprops");
+        if (!graphDir.exists()) graphDir.mkdirs();
+        if (!gpDir.exists()) gpDir.mkdirs();
 
         // ====== Annotated Centroid Images ======
-        BufferedImage oneAnn  = deepCopy(betweenOne);
-        BufferedImage zeroAnn = deepCopy(betweenZero);
+        bit_mask one = res.one();
+        BufferedImage oneImg  = one.toBufferedImage();
+        BufferedImage zeroImg = res.zero().toBufferedImage();
+        BufferedImage oneAnn  = deepCopy(oneImg);
+        BufferedImage zeroAnn = deepCopy(zeroImg);
         drawCentroid(oneAnn,  whiteIn.cx,  whiteIn.cy,  new Color(0,200,0),   "Centroid IN(1)");
         drawCentroid(zeroAnn, outBlack.cx, outBlack.cy, new Color(220,60,60), "Centroid OUT(0)");
-        ImageIO.write(oneAnn,  "png", new File(gpDir, "between_1gp.png"));
-        ImageIO.write(zeroAnn, "png", new File(gpDir, "between_0gp.png"));
+        opt.writePng(oneAnn, new File(gpDir, "between_1gp.png"));
+        opt.writePng(zeroAnn, new File(gpDir, "between_0gp.png"));
 
         // ====== Compare Images ======
-        BufferedImage eq = inName.equalsIgnoreCase("equalized.png") ? img : ImageIO.read(new File("equalized.png"));
+        if (eq == null) eq = image_codec.read(opt.file("equalized" + opt.codec.gray.ext), one.width, one.height);
         saveTripleSideBySide(
-                eq, betweenOne, betweenZero, GAP,
+                eq, oneImg, zeroImg, GAP,
                 "Equalized",
                 "Between (T1≤gray≤T2)",
                 "Outside (gray<T1 or gray>T2)",
-                new File(outDir, "compare_eq_between.png").getAbsolutePath()
+                new File(outDir, "compare_eq_between.png").getAbsolutePath(), opt
         );
         saveDoubleSideBySide(
                 oneAnn, zeroAnn, GAP,
                 "Between (IN) [Centroid]",
                 "Outside [Centroid]",
-                new File(gpDir, "compare_between_centroids.png").getAbsolutePath()
+                new File(gpDir, "compare_between_centroids.png").getAbsolutePath(), opt
         );
 
         // ====== Histogram Graph (แสดงขนาด In/Out ด้วย) ======
-        drawHistogramWithDoubleThresholdStyled(hist, T1, T2, countIn, countOut, new File(graphDir, "double_threshold.png"));
+        drawHistogramWithDoubleThresholdStyled(res.hist, T1, T2, countIn, countOut, new File(graphDir, "double_threshold.png"), opt);
+    }
+
+    /**
+     * {T1, T2} ที่ใช้จริง: แถบจาก multi-Otsu (opt.autoBand) เป็นช่วงที่เลือกมาแล้ว T1 == T2 ได้ (แถบระดับเดียว)
+     * จึงแค่ clamp; ค่าที่ผู้ใช้ป้อนผ่าน normalize แบบเดิม
+     */
+    static int[] band(int T1, int T2, histro_pipeline.Options opt) {
+        return opt.autoBand ? new int[]{clamp8(T1), clamp8(T2)} : normalize(T1, T2);
+    }
+
+    /** clamp 0..255 และบังคับ T1 < T2 -> {T1, T2} ที่ใช้จริง */
+    static int[] normalize(int T1, int T2) {
+        T1 = clamp8(T1);
+        T2 = clamp8(T2);
+        if (T1 >= T2) {
+            int tmp = T1;
+            T1 = Math.max(0, Math.min(254, T2 - 1));
+            T2 = Math.min(255, Math.max(1, tmp + 1));
+        }
+        return new int[]{T1, T2};
     }
 
     private static int clamp8(int x) { return Math.max(0, Math.min(255, x)); }
@@ -176,7 +289,7 @@ public class threshold_between {
     }
 
     private static void saveTripleSideBySide(BufferedImage left, BufferedImage mid, BufferedImage right,
-                                             int gap, String l, String m, String r, String outPath) throws IOException {
+                                             int gap, String l, String m, String r, String outPath, histro_pipeline.Options opt) throws IOException {
         int h = Math.max(left.getHeight(), Math.max(mid.getHeight(), right.getHeight()));
         int w = left.getWidth() + gap + mid.getWidth() + gap + right.getWidth();
         BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
@@ -192,11 +305,11 @@ public class threshold_between {
         g2.drawImage(right, xRight, 0, null);
         g2.setColor(Color.WHITE);
         g2.drawString(l, 8, 16); g2.drawString(m, xMid + 8, 16); g2.drawString(r, xRight + 8, 16);
-        g2.dispose(); ImageIO.write(out, "png", new File(outPath));
+        g2.dispose(); opt.writePng(out, new File(outPath));
     }
 
     private static void saveDoubleSideBySide(BufferedImage left, BufferedImage right,
-                                             int gap, String l, String r, String outPath) throws IOException {
+                                             int gap, String l, String r, String outPath, histro_pipeline.Options opt) throws IOException {
         int h = Math.max(left.getHeight(), right.getHeight());
         int w = left.getWidth() + gap + right.getWidth();
         BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
@@ -209,10 +322,10 @@ public class threshold_between {
         g2.drawImage(right, xRight, 0, null);
         g2.setColor(Color.WHITE);
         g2.drawString(l, 8, 16); g2.drawString(r, xRight + 8, 16);
-        g2.dispose(); ImageIO.write(out, "png", new File(outPath));
+        g2.dispose(); opt.writePng(out, new File(outPath));
     }
 
-    private static void drawHistogramWithDoubleThresholdStyled(int[] h, int T1, int T2, long inCount, long outCount, File outFile) throws IOException {
+    private static void drawHistogramWithDoubleThresholdStyled(int[] h, int T1, int T2, long inCount, long outCount, File outFile, histro_pipeline.Options opt) throws IOException {
         int K=256, barW=2, margin=50, chartH=300;
         int chartW=K*barW, width=chartW+margin*2, height=chartH+margin*2+36;
         int max=maxOf(h); if(max==0) max=1;
@@ -285,7 +398,7 @@ public class threshold_between {
         g2.drawString("Histogram (0..255) with Double Threshold (inclusive)", x0+chartW/2-150, height-10);
 
         g2.dispose();
-        ImageIO.write(out, "png", outFile);
+        opt.writePng(out, outFile);
     }
 
     private static int maxOf(int[] a){int m=0; for(int x:a) if(x>m) m=x; return m;}
@@ -0,0 +1,280 @@
+// threshold_multi.java  (K thresholds -> K+1 classes: class c = จำนวน T[k] ที่ gray >= T[k])
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * แบ่งระดับเทาเป็นหลาย class ด้วย threshold K ค่า (เช่น 3..7 ค่า -> 4..8 class) ในการสแกนภาพรอบเดียว
+ * แต่ละพิกเซลได้ label ผ่าน LUT 256 ช่อง และสะสม area / centroid / bounding box ของทุก class ไปพร้อมกัน
+ * ผลเป็น label map ภาพเดียว (ค่า 0..K, K <= 255 เพราะ label เป็น byte) แทนภาพ binary แยกต่อ class
+ *   class 0: gray < T[0], class k: T[k-1] <= gray < T[k], class K: gray >= T[K-1]
+ */
+public class threshold_multi {
+    /** ผลของ multi threshold */
+    public static class Result {
+        public final int[] T;                   // threshold ที่ใช้จริง (เรียงจากน้อยไปมาก ไม่ซ้ำ)
+        public final int[] hist;                // histogram ของภาพ input
+        public final gray_image labels;         // label map: 0..K ต่อพิกเซล
+        public final geopros.Result[] classes;  // geoprops ของ class 0..K
+        public Result(int[] T, int[] hist, gray_image labels, geopros.Result[] classes) {
+            this.T = T; this.hist = hist; this.labels = labels; this.classes = classes;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // args[0] = input (default: equalized.png), args[1..] = T1 T2 ... (default: 64 128 192)
+        String inName = (args.length >= 1) ? args[0] : "equalized.png";
+        int[] T = new int[Math.max(0, args.length - 1)];
+        int n = 0;
+        for (int k = 1; k < args.length; k++) {
+            int t = parseOrDefault(args[k], Integer.MIN_VALUE);
+            if (t == Integer.MIN_VALUE) System.out.println("Invalid T '" + args[k] + "', skipped");
+            else T[n++] = t;
+        }
+        T = (n > 0) ? Arrays.copyOf(T, n) : new int[]{64, 128, 192};
+
+        File in = new File(inName);
+        if (mapped_gray.canMap(in)) {
+            try (mapped_gray src = mapped_gray.open(in)) { run(src, inName, T, histro_pipeline.Options.cli()); }
+            return;
+        }
+        BufferedImage img = image_codec.read(in);
+        if (img == null) throw new IllegalArgumentException("Cannot read image: " + inName);
+        run(gray_image.of(img), inName, T, histro_pipeline.Options.cli());
+    }
+
+    /** multi threshold บนภาพเทาในหน่วยความจำ (เช่น histogram.Result.eq) */
+    public static Result run(gray_image img, String inName, int[] T, histro_pipeline.Options opt) throws IOException {
+        return run(img, null, inName, T, opt);
+    }
+
+    /** ภาพเทาที่ map จากไฟล์ PGM/RAW: อ่านทีละแถบจาก mapping */
+    public static Result run(mapped_gray src, String inName, int[] T, histro_pipeline.Options opt) throws IOException {
+        return run(null, src, inName, T, opt);
+    }
+
+    private static Result run(gray_image img, mapped_gray src, String inName, int[] T,
+                              histro_pipeline.Options opt) throws IOException {
+        int[] t = normalize(T);
+        if (opt.cliSink && !Arrays.equals(t, T)) opt.log.println("Note: sorted/clamped/deduplicated thresholds to " + Arrays.toString(t));
+
+        File outDir = opt.file("threshold_result/threshold_multi");
+        if (opt.writeIntermediates || opt.cliSink) {
+            if (!outDir.exists()) outDir.mkdirs();
+        }
+        int I = (img != null) ? img.height : src.height;
+        int J = (img != null) ? img.width : src.width;
+        long N = (long) I * J;
+        if (opt.cliSink) opt.log.println("Input: " + inName + "  Size: [" + I + ", " + J + "]  T=" + Arrays.toString(t)
+                                         + "  classes=" + (t.length + 1));
+
+        // ====== label + histogram + geoprops ทุก class ในรอบเดียว ======
+        Result res;
+        try (stage_metrics.Span s = opt.span(stage_metrics.Stage.THRESHOLD)) {
+            Scan sc = new Scan(t, I, J);
+            if (img != null) sc.add(img, 0);
+            else {
+                int rows = src.stripRows();
+                byte[] scratch = new byte[rows * J];
+                for (int y = 0; y < I; y += rows) sc.add(src.strip(y, Math.min(rows, I - y), scratch), y);
+            }
+            res = sc.result();
+            s.pixels(N).read(src != null ? N : 0);
+        }
+
+        if (opt.writeIntermediates) {
+            // PNG: palette 8 บิต (sample = label, สีเทาไล่ตาม class) เพราะ PNG เทาเก็บระดับต่ำ ๆ ไม่ครบ
+            if (opt.codec.gray == image_codec.Format.PNG) opt.writePng(toIndexed(res), new File(outDir, "labels.png"));
+            else opt.writeGray(res.labels, outDir, "labels");
+        }
+        if (opt.cliSink) writeReport(res, inName, I, J, opt);
+        if (opt.render) {
+            stage_metrics.Span s = opt.span(stage_metrics.Stage.RENDER);
+            try {
+                render(res, opt);
+            } finally {
+                s.close();
+            }
+        }
+        return res;
+    }
+
+    /** label เป็น byte: threshold ไม่ซ้ำได้ไม่เกิน 255 ค่า (class 0..255) */
+    public static final int MAX_THRESHOLDS = 255;
+
+    /** เรียง, clamp 0..255 และตัดค่าซ้ำ; ต้องเหลือ 1..MAX_THRESHOLDS ค่า */
+    static int[] normalize(int[] T) {
+        if (T == null || T.length == 0) throw new IllegalArgumentException("Need at least one threshold");
+        int[] t = T.clone();
+        for (int k = 0; k < t.length; k++) t[k] = Math.max(0, Math.min(255, t[k]));
+        Arrays.sort(t);
+        int n = 0;
+        for (int k = 0; k < t.length; k++) if (n == 0 || t[k] != t[n - 1]) t[n++] = t[k];
+        if (n > MAX_THRESHOLDS)
+            throw new IllegalArgumentException("At most " + MAX_THRESHOLDS + " distinct thresholds (labels are one byte), got " + n);
+        return Arrays.copyOf(t, n);
+    }
+
+    /** LUT ระดับเทา -> class */
+    static byte[] labelLut(int[] T) {
+        byte[] lut = new byte[256];
+        int c = 0;
+        for (int v = 0; v < 256; v++) {
+            while (c < T.length && v >= T[c]) c++;
+            lut[v] = (byte) c;
+        }
+        return lut;
+    }
+
+    // ตัวสะสมทีละแถบ: row0 = แถวของภาพเต็มที่ตรงกับแถว 0 ของแถบ
+    private static final class Scan {
+        final int[] T;
+        final int K1;
+        final byte[] lut;
+        final int[] hist = new int[256];
+        final gray_image labels;
+        final long[] area, sumJ, sumI, rowCnt;
+        final int[] minI, minJ, maxI, maxJ;
+
+        Scan(int[] T, int I, int J) {
+            this.T = T; this.K1 = T.length + 1; this.lut = labelLut(T);
+            labels = new gray_image(J, I);
+            area = new long[K1]; sumJ = new long[K1]; sumI = new long[K1]; rowCnt = new long[K1];
+            minI = new int[K1]; minJ = new int[K1]; maxI = new int[K1]; maxJ = new int[K1];
+            Arrays.fill(minI, Integer.MAX_VALUE);
+            Arrays.fill(minJ, Integer.MAX_VALUE);
+            Arrays.fill(maxI, -1);
+            Arrays.fill(maxJ, -1);
+        }
+
+        void add(gray_image g, int row0) {
+            final byte[] d = g.data, o = labels.data, l = lut;
+            final int J = g.width;
+            final int[] h = hist, mnJ = minJ, mxJ = maxJ;
+            final long[] sj = sumJ, rc = rowCnt;
+            for (int r = 0; r < g.height; r++) {
+                int p = g.offset + r * g.stride, q = (row0 + r) * J;
+                for (int j = 0; j < J; j++) {
+                    int v = d[p + j] & 0xFF;
+                    int c = l[v] & 0xFF;
+                    h[v]++;
+                    o[q + j] = (byte) c;
+                    rc[c]++;
+                    sj[c] += j;
+                    if (j < mnJ[c]) mnJ[c] = j;
+                    if (j > mxJ[c]) mxJ[c] = j;
+                }
+                // แถว i: Σi และขอบบน/ล่างครั้งเดียวต่อ class ที่พบในแถวนี้
+                int i = row0 + r;
+                for (int c = 0; c < K1; c++) {
+                    long n = rc[c];
+                    if (n == 0) continue;
+                    area[c] += n;
+                    sumI[c] += n * i;
+                    if (minI[c] == Integer.MAX_VALUE) minI[c] = i;
+                    maxI[c] = i;
+                    rc[c] = 0;
+                }
+            }
+        }
+
+        Result result() {
+            geopros.Result[] cls = new geopros.Result[K1];
+            for (int c = 0; c < K1; c++)
+                cls[c] = geopros.result(area[c], sumJ[c], sumI[c], minI[c], minJ[c], maxI[c], maxJ[c]);
+            return new Result(T, hist, labels, cls);
+        }
+    }
+
+    /** label map เป็น PNG palette: sample = label, สี = เทาไล่ 0..255 ตาม class (ใช้ byte[] ของ labels ร่วมกัน) */
+    public static BufferedImage toIndexed(Result res) {
+        gray_image g = res.labels;
+        int K = res.T.length;
+        byte[] pal = new byte[256];
+        for (int c = 0; c <= K; c++) pal[c] = (byte) (c * 255 / K);
+        IndexColorModel cm = new IndexColorModel(8, 256, pal, pal, pal);
+        DataBufferByte db = new DataBufferByte(g.data, g.data.length);
+        WritableRaster wr = Raster.createInterleavedRaster(db, g.width, g.height, g.stride, 1, new int[]{g.offset}, null);
+        return new BufferedImage(cm, wr, false, null);
+    }
+
+    // ===== console + threshold_multi_report.txt (CLI sink) =====
+    private static void writeReport(Result res, String inName, int I, int J,
+                                    histro_pipeline.Options opt) throws IOException {
+        File resultDir = opt.file("threshold_result/threshold_multi/txt_result");
+        if (!resultDir.exists()) resultDir.mkdirs();
+        for (int c = 0; c < res.classes.length; c++) {
+            geopros.Result r = res.classes[c];
+            opt.log.printf("[class %d] %s area=%d, centroid=(%.3f, %.3f)%n", c, range(res.T, c), r.area, r.cx, r.cy);
+        }
+        opt.writeText(new File(resultDir, "threshold_multi_report.txt"), pw -> {
+            pw.println("Input file: " + inName);
+            pw.println("Size (I,J): " + I + ", " + J);
+            pw.println("N (pixels): " + (long) I * J);
+            pw.println("Thresholds: " + Arrays.toString(res.T) + "  classes=" + res.classes.length);
+            pw.println("Label of a pixel = number of thresholds T[k] with gray >= T[k]");
+            for (int c = 0; c < res.classes.length; c++) {
+                pw.println();
+                pw.println("=== Class " + c + " (" + range(res.T, c) + ") ===");
+                writeGeo(pw, res.classes[c]);
+            }
+        });
+    }
+
+    // ช่วงระดับเทาของ class c เช่น "64<=gray<128"
+    private static String range(int[] T, int c) {
+        if (c == 0) return "gray<" + T[0];
+        if (c == T.length) return "gray>=" + T[c - 1];
+        return T[c - 1] + "<=gray<" + T[c];
+    }
+
+    private static int parseOrDefault(String s, int def) {
+        try { return Integer.parseInt(s); }
+        catch (NumberFormatException e) { return def; }
+    }
+
+    private static void writeGeo(PrintWriter pw, geopros.Result r) {
+        if (!r.hasObject()) {
+            pw.println("     Area: 0 (no object)");
+            pw.println("     Centroid: N/A");
+            pw.println("     Bounding Box: N/A");
+        } else {
+            pw.println("     Area: " + r.area + " pixels");
+            pw.printf ("     Centroid: (x=%.3f, y=%.3f)%n", r.cx, r.cy);
+            pw.printf ("     BBox: [i_min=%d, j_min=%d] .. [i_max=%d, j_max=%d]%n",
+                       r.minI, r.minJ, r.maxI, r.maxJ);
+        }
+    }
+
+    /** label map (เทาไล่ตาม class) + centroid ของทุก class -> threshold_multi/labels_centroids.png */
+    public static void render(Result res, histro_pipeline.Options opt) throws IOException {
+        File outDir = opt.file("threshold_result/threshold_multi");
+        if (!outDir.exists()) outDir.mkdirs();
+        BufferedImage idx = toIndexed(res);
+        BufferedImage out = new BufferedImage(idx.getWidth(), idx.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = out.createGraphics();
+        g2.drawImage(idx, 0, 0, null);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setStroke(new BasicStroke(2f));
+        g2.setFont(g2.getFont().deriveFont(Font.BOLD, 12f));
+        for (int c = 0; c < res.classes.length; c++) {
+            geopros.Result r = res.classes[c];
+            if (!r.hasObject()) continue;
+            int x = (int) Math.round(r.cx), y = (int) Math.round(r.cy);
+            g2.setColor(Color.getHSBColor(c / (float) res.classes.length, 0.9f, 1f));
+            g2.drawLine(x - 8, y, x + 8, y); g2.drawLine(x, y - 8, x, y + 8);
+            g2.drawOval(x - 5, y - 5, 10, 10);
+            g2.drawString("class " + c, x + 12, y - 6);
+        }
+        g2.dispose();
+        opt.writePng(out, new File(outDir, "labels_centroids.png"));
+        opt.log.println("Saved: " + new File(outDir, "labels_centroids.png").getPath());
+    }
+}